@@ -52,6 +52,7 @@ dependencies {
     runtimeOnly("ai.djl.android:onnxruntime")
 
     testImplementation(libs.junit)
+    testImplementation(libs.gson)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
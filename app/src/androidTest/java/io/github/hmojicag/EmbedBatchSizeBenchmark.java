@@ -0,0 +1,72 @@
+package io.github.hmojicag;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Images/sec of feature extraction on the device CPU at several batch sizes, through
+ * {@link PredictorPool#batchPredict(List)} as the embed stage calls it.
+ * Results are logged under the EmbedBatchSizeBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EmbedBatchSizeBenchmark {
+    private static final String TAG = "EmbedBatchSizeBenchmark";
+    private static final int IMAGES = 128;
+    private static final int[] BATCH_SIZES = {1, 4, 8, 16, 32};
+
+    @Test
+    public void imagesPerSecondByBatchSize() throws Exception {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        DjlFaceRecognitionTest djlFaceRecognitionTest = new DjlFaceRecognitionTest(appContext);
+        // The model loads in the background
+        djlFaceRecognitionTest.getReady().get();
+        List<Image> images = syntheticFaces(IMAGES);
+        // The pool warms its predictor up, so native initialisation stays outside of the timings
+        try (PredictorPool<Image, float[]> pool =
+                     new PredictorPool<>(djlFaceRecognitionTest.getModel(), 1, images.get(0))) {
+            float[] reference = pool.predict(images.get(0));
+            for (int batchSize : BATCH_SIZES) {
+                long start = System.nanoTime();
+                List<float[]> features = new ArrayList<>(IMAGES);
+                for (int from = 0; from < IMAGES; from += batchSize) {
+                    features.addAll(pool.batchPredict(images.subList(from, Math.min(from + batchSize, IMAGES))));
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                assertEquals(IMAGES, features.size());
+                // Batching must not change the embeddings
+                assertTrue(Similarity.calculateSimilitude(reference, features.get(0)) > 0.9999f);
+                Log.i(TAG, String.format("batchSize=%d %.1f images/sec", batchSize, IMAGES / seconds));
+            }
+        }
+    }
+
+    private static List<Image> syntheticFaces(int count) {
+        Random random = new Random(7);
+        List<Image> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Crops come in all sizes, the translator resizes them to 160x160
+            int size = 120 + random.nextInt(200);
+            Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            bitmap.eraseColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            images.add(ImageFactory.getInstance().fromImage(bitmap));
+        }
+        return images;
+    }
+}
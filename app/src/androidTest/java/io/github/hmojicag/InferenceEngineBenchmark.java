@@ -0,0 +1,96 @@
+package io.github.hmojicag;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Model load time, per-image latency and memory of every {@link InferenceEngine} on the device
+ * CPU, and whether they produce the same embeddings. Needs every engine's model in the assets.
+ * Results are logged under the InferenceEngineBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InferenceEngineBenchmark {
+    private static final String TAG = "InferenceEngineBenchmark";
+    private static final int IMAGES = 64;
+
+    @Test
+    public void compareEngines() throws Exception {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        List<Image> images = syntheticFaces(IMAGES);
+        List<float[]> reference = null;
+        for (InferenceEngine engine : InferenceEngine.values()) {
+            ModelSettings modelSettings = ModelSettings.defaults();
+            modelSettings.setEngine(engine);
+            Runtime runtime = Runtime.getRuntime();
+            long nativeHeap = Debug.getNativeHeapAllocatedSize();
+            long javaHeap = runtime.totalMemory() - runtime.freeMemory();
+            DjlFaceRecognitionTest djlFaceRecognitionTest =
+                    new DjlFaceRecognitionTest(appContext, PipelineSettings.defaults(), modelSettings);
+            djlFaceRecognitionTest.getReady().get();
+            long nativeHeapKb = (Debug.getNativeHeapAllocatedSize() - nativeHeap) / 1024;
+            long javaHeapKb = (runtime.totalMemory() - runtime.freeMemory() - javaHeap) / 1024;
+
+            LatencyHistogram latency = new LatencyHistogram();
+            List<float[]> features = new ArrayList<>(IMAGES);
+            try (Predictor<Image, float[]> predictor = djlFaceRecognitionTest.getModel().newPredictor()) {
+                // Warm up native initialisation outside of the timings
+                predictor.predict(images.get(0));
+                for (Image image : images) {
+                    long start = System.nanoTime();
+                    features.add(predictor.predict(image));
+                    latency.recordNanos(System.nanoTime() - start);
+                }
+            }
+            Log.i(TAG, String.format("%s load=%d ms nativeHeap=+%d KB javaHeap=+%d KB latency %s",
+                    engine, djlFaceRecognitionTest.getStartupMetrics().get("load_model"),
+                    nativeHeapKb, javaHeapKb, latency));
+            djlFaceRecognitionTest.getModel().close();
+
+            if (reference == null) {
+                reference = features;
+            } else {
+                EmbeddingComparison comparison = EmbeddingComparison.compare(reference, features);
+                Log.i(TAG, String.format("%s vs %s: %s", InferenceEngine.values()[0], engine, comparison));
+                assertTrue(comparison.toString(), comparison.isEquivalent());
+            }
+        }
+    }
+
+    /**
+     * Seeded 160x160 noise images, the same on every run.
+     */
+    static List<Image> syntheticFaces(int count) {
+        Random random = new Random(7);
+        List<Image> images = new ArrayList<>(count);
+        int size = FaceFeatureTranslator.INPUT_SIZE;
+        int[] pixels = new int[size * size];
+        for (int i = 0; i < count; i++) {
+            // Noise rather than flat colors, so differences between engines can show
+            for (int p = 0; p < pixels.length; p++) {
+                pixels[p] = Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+            }
+            Bitmap bitmap = Bitmap.createBitmap(pixels, size, size, Bitmap.Config.ARGB_8888);
+            images.add(ImageFactory.getInstance().fromImage(bitmap));
+        }
+        return images;
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.hmojicag;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+
+import static org.junit.Assert.*;
+
+/**
+ * Accuracy gate for the INT8 model: embeds the labelled BioPhotos and AttPhotos on the device with
+ * the FP32 and the INT8 model, and fails unless {@link QuantizationGate} accepts INT8 within the
+ * budget of {@link ModelSettings#defaults()}. Also reports model size and per-image latency of both.
+ * Results are logged under the QuantizedModelAccuracyTest tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuantizedModelAccuracyTest {
+    private static final String TAG = "QuantizedModelAccuracyTest";
+    private static final int LATENCY_IMAGES = 64;
+
+    @Test
+    public void int8StaysWithinAccuracyBudget() throws Exception {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        DjlFaceRecognitionTest reference = load(appContext, ModelPrecision.FP32);
+        DjlFaceRecognitionTest candidate = load(appContext, ModelPrecision.INT8);
+
+        List<BioPhoto> gallery = new ArrayList<>();
+        List<BioPhoto> candidateGallery = new ArrayList<>();
+        align(reference.loadPhotosByPath(false), candidate.loadPhotosByPath(false), gallery, candidateGallery);
+        List<BioPhoto> probes = new ArrayList<>();
+        List<BioPhoto> candidateProbes = new ArrayList<>();
+        align(reference.loadPhotosByPath(true), candidate.loadPhotosByPath(true), probes, candidateProbes);
+        assertFalse("No labelled photos to evaluate", gallery.isEmpty() || probes.isEmpty());
+
+        QuantizationGate gate = new QuantizationGate(DjlFaceRecognitionTest.featureThresholdForMatch,
+                DjlFaceRecognitionTest.SCORE_MODE, ModelSettings.defaults());
+        QuantizationGate.Result result = gate.evaluate(gallery, candidateGallery, probes, candidateProbes);
+        Log.i(TAG, "INT8 vs FP32: " + result);
+        logSizeAndLatency(ModelPrecision.FP32, reference);
+        logSizeAndLatency(ModelPrecision.INT8, candidate);
+        assertTrue(result.toString(), result.isAccepted());
+    }
+
+    private static DjlFaceRecognitionTest load(Context context, ModelPrecision precision) throws Exception {
+        ModelSettings modelSettings = ModelSettings.defaults();
+        modelSettings.setPrecision(precision);
+        DjlFaceRecognitionTest djlFaceRecognitionTest =
+                new DjlFaceRecognitionTest(context, PipelineSettings.defaults(), modelSettings);
+        djlFaceRecognitionTest.getReady().get();
+        return djlFaceRecognitionTest;
+    }
+
+    /**
+     * Keeps the photos both models found a face in, in the same order for both.
+     */
+    private static void align(Map<String, BioPhoto> reference, Map<String, BioPhoto> candidate,
+                              List<BioPhoto> outReference, List<BioPhoto> outCandidate) {
+        for (Map.Entry<String, BioPhoto> entry : new TreeMap<>(reference).entrySet()) {
+            BioPhoto other = candidate.get(entry.getKey());
+            if (other != null) {
+                outReference.add(entry.getValue());
+                outCandidate.add(other);
+            }
+        }
+        int dropped = reference.size() + candidate.size() - 2 * outReference.size();
+        if (dropped > 0) {
+            Log.i(TAG, String.format("%d photos had a face for only one of the models", dropped));
+        }
+    }
+
+    private static void logSizeAndLatency(ModelPrecision precision, DjlFaceRecognitionTest djlFaceRecognitionTest)
+            throws Exception {
+        List<Image> images = InferenceEngineBenchmark.syntheticFaces(LATENCY_IMAGES);
+        LatencyHistogram latency = new LatencyHistogram();
+        try (Predictor<Image, float[]> predictor = djlFaceRecognitionTest.getModel().newPredictor()) {
+            // Warm up native initialisation outside of the timings
+            predictor.predict(images.get(0));
+            for (Image image : images) {
+                long start = System.nanoTime();
+                predictor.predict(image);
+                latency.recordNanos(System.nanoTime() - start);
+            }
+        }
+        Log.i(TAG, String.format("%s size=%d KB load=%d ms latency %s", precision,
+                Files.size(djlFaceRecognitionTest.getModelPath()) / 1024,
+                djlFaceRecognitionTest.getStartupMetrics().get("load_model"), latency));
+    }
+}
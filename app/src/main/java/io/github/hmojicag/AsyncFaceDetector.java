@@ -0,0 +1,17 @@
+package io.github.hmojicag;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Face detection that doesn't block the caller. The future completes on the detector's own
+ * thread, so many detections can be in flight without a waiting thread for each.
+ * @param <I> What the detector reads faces from, e.g. ML Kit's InputImage
+ */
+public interface AsyncFaceDetector<I> {
+
+    /**
+     * @return left, top, right, bottom of every face found in input, empty if there are none
+     */
+    CompletableFuture<List<int[]>> detect(I input);
+}
@@ -0,0 +1,98 @@
+package io.github.hmojicag;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded set of mutable ARGB_8888 bitmaps decoded photos can be decoded into through
+ * BitmapFactory.Options.inBitmap, so bulk loading doesn't allocate a multi-megabyte bitmap
+ * per photo. Bitmaps given back when the pool is full are recycled.
+ * <p>
+ * Counts the bytes of every decoded bitmap as either freshly allocated or reused from the pool.
+ */
+public class BitmapPool {
+    private final int maxSize;
+    private final Deque<Bitmap> pool = new ArrayDeque<>();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong reusedBytes = new AtomicLong();
+    private final AtomicLong decodes = new AtomicLong();
+
+    public BitmapPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Takes out a bitmap large enough for width x height ARGB_8888 pixels.
+     * @return null if there is none, the decoder then allocates a new one
+     */
+    public synchronized Bitmap acquire(int width, int height) {
+        long bytes = 4L * width * height;
+        Iterator<Bitmap> iterator = pool.iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.getAllocationByteCount() >= bytes) {
+                iterator.remove();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records a decode, decoded being the same bitmap as candidate when the decoder reused it.
+     */
+    public void recordDecode(Bitmap decoded, Bitmap candidate) {
+        decodes.incrementAndGet();
+        if (decoded == candidate) {
+            reusedBytes.addAndGet(decoded.getAllocationByteCount());
+        } else {
+            allocatedBytes.addAndGet(decoded.getAllocationByteCount());
+            if (candidate != null) {
+                release(candidate);
+            }
+        }
+    }
+
+    /**
+     * Gives a bitmap back. It must not be used by the caller afterwards.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        synchronized (this) {
+            if (bitmap.isMutable() && bitmap.getConfig() == Bitmap.Config.ARGB_8888 && pool.size() < maxSize) {
+                pool.push(bitmap);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    public synchronized int size() {
+        return pool.size();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getReusedBytes() {
+        return reusedBytes.get();
+    }
+
+    public long getDecodes() {
+        return decodes.get();
+    }
+
+    @Override
+    public String toString() {
+        long count = Math.max(1, decodes.get());
+        return String.format("decodes=%d allocated=%d KB/photo reused=%d KB/photo pooled=%d",
+                decodes.get(), allocatedBytes.get() / count / 1024, reusedBytes.get() / count / 1024, size());
+    }
+}
@@ -2,308 +2,699 @@ package io.github.hmojicag;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.RectF;
-import android.net.Uri;
+import android.os.Debug;
 import android.os.Environment;
-import android.text.TextUtils;
 import android.util.Log;
-import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.Tasks;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceDetection;
-import com.google.mlkit.vision.face.FaceDetector;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.lang.reflect.Type;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import ai.djl.inference.Predictor;
 import ai.djl.modality.cv.Image;
 import ai.djl.modality.cv.ImageFactory;
-import ai.djl.modality.cv.transform.Normalize;
-import ai.djl.modality.cv.transform.Resize;
-import ai.djl.modality.cv.transform.ToTensor;
-import ai.djl.ndarray.NDArray;
-import ai.djl.ndarray.NDList;
 import ai.djl.repository.zoo.Criteria;
 import ai.djl.repository.zoo.ZooModel;
-import ai.djl.training.util.ProgressBar;
-import ai.djl.translate.Pipeline;
-import ai.djl.translate.Translator;
-import ai.djl.translate.TranslatorContext;
+import ai.djl.translate.TranslateException;
 
 public class DjlFaceRecognitionTest {
     private static final String TAG = "DjlFaceRecognitionTest";
-    private static final String MODEL_ZIP_DOWNLOAD_FILENAME = "face_feature.zip";
-    private static final String CACHED_BIOPHOTOS_JSON = "biophotos.json";
-    private static final String CACHED_ATTPHOTOS_JSON = "attphotos.json";
-    private static final float featureThresholdForMatch = 0.70f;
+    private static final String ENROLLMENT_LOG = "enrollment";
+    // Log size beyond which the log is folded into the snapshot on a background thread,
+    // around 2000 records of 512 features
+    private static final long ENROLLMENT_LOG_COMPACT_BYTES = 4L << 20;
+    private static final String FEATURE_CACHE_FILENAME = "features.cache";
+    static final float featureThresholdForMatch = 0.70f;
+    // How an employee with several BioPhotos is scored
+    static final PartitionedGallery.ScoreMode SCORE_MODE = PartitionedGallery.ScoreMode.MAX;
+    // Scan one centroid per employee instead of every BioPhoto, see FusedGallery
+    private static final boolean TEMPLATE_FUSION = true;
+    // BioPhotos this far from the rest of their employee's are left out of the centroid
+    private static final float FUSION_OUTLIER_SIMILITUDE = 0.60f;
+    // Employees whose centroids score best are re-scored against their BioPhotos
+    private static final int FUSION_RESCORE_CANDIDATES = 3;
+    private static final int RECENT_MATCH_CACHE_SIZE = 256;
+    private static final long RECENT_MATCH_TTL_MILLIS = 10 * 60 * 1000;
+    // Punch to punch similitude for a recent employee to be verified 1:1 instead
+    private static final float RECENT_MATCH_SIMILITUDE = 0.90f;
+    private static final DateTimeFormatter PUNCH_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    // TAR/FAR are reported from featureThresholdForMatch - span to + span
+    private static final float EVALUATION_SWEEP_SPAN = 0.10f;
+    private static final float EVALUATION_SWEEP_STEP = 0.02f;
+    // Fraction of the face box added on each side when cropping, 0 crops the detected box as is
+    private static final float FACE_CROP_MARGIN = 0.0f;
     private Context context;
-    private FaceDetector faceDetector;
+    private AsyncFaceDetector<InputImage> faceDetector;
     private Criteria<Image, float[]> criteria;
+    private Path modelPath;
     private ZooModel<Image, float[]> model;
-    private Predictor<Image, float[]> predictor;
+    private PredictorPool<Image, float[]> predictorPool;
+    private PipelineSettings pipelineSettings;
+    private ModelSettings modelSettings;
+    private FeatureCache featureCache;
+    private final StartupMetrics startupMetrics = new StartupMetrics();
+    private final RecognitionMetrics metrics;
+    // Crop stage threads each keep their own region and 160x160 target buffers
+    private final ThreadLocal<FaceCropper> faceCropper = ThreadLocal.withInitial(
+            () -> new FaceCropper(FaceFeatureTranslator.INPUT_SIZE, FACE_CROP_MARGIN));
+    // Completes once the model, predictors and feature cache are loaded
+    private final CompletableFuture<Void> ready;
+    // Scratch for top-1 searches, AttPhotos are matched on the pipeline's single sink thread
+    private final int[] matchEmpleado = new int[1];
+    private final float[] matchScore = new float[1];
+    // Kept across runs, entries of employees whose enrollment changes are dropped by the log
+    private final RecentMatchCache recentMatches = new RecentMatchCache(RECENT_MATCH_CACHE_SIZE,
+            RECENT_MATCH_TTL_MILLIS, RECENT_MATCH_SIMILITUDE);
 
     public DjlFaceRecognitionTest(Context context) {
+        this(context, PipelineSettings.defaults(), ModelSettings.defaults());
+    }
+
+    /**
+     * Returns right away, the model is loaded on a background thread.
+     * Use {@link #getReady()} to know when it is usable.
+     */
+    public DjlFaceRecognitionTest(Context context, PipelineSettings pipelineSettings, ModelSettings modelSettings) {
         this.context = context;
-        faceDetector = FaceDetection.getClient();
+        this.pipelineSettings = pipelineSettings;
+        this.modelSettings = modelSettings;
+        this.metrics = new RecognitionMetrics(pipelineSettings.isMetricsEnabled());
+        faceDetector = new MlKitFaceDetector(FaceDetection.getClient());
         System.setProperty("ai.djl.offline", "true");
-        copyPytorchModelFromAssetsToFileSystem();
-        criteria = buildCriteria();
+        ExecutorService startupExecutor = Executors.newSingleThreadExecutor();
+        ready = CompletableFuture.runAsync(this::loadModel, startupExecutor);
+        startupExecutor.shutdown();
+    }
+
+    public CompletableFuture<Void> getReady() {
+        return ready;
+    }
+
+    public StartupMetrics getStartupMetrics() {
+        return startupMetrics;
+    }
+
+    public RecognitionMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void loadModel() {
+        long begin = startupMetrics.begin();
+        modelPath = copyModelFromAssetsToFileSystem(modelSettings);
+        startupMetrics.end("copy_model", begin);
+        begin = startupMetrics.begin();
+        criteria = buildCriteria(modelSettings, modelPath);
+        startupMetrics.end("build_criteria", begin);
+        begin = startupMetrics.begin();
         model = loadZooModel(criteria);
-        predictor = createPredictor(model);
+        startupMetrics.end("load_model", begin);
+        begin = startupMetrics.begin();
+        predictorPool = createPredictorPool(model, pipelineSettings.getEmbed().getParallelism());
+        startupMetrics.end("warm_up_predictors", begin);
+        begin = startupMetrics.begin();
+        // One cache per precision, so running both for the QuantizationGate keeps both caches
+        String featureCacheFileName = modelSettings.getPrecision().applyTo(FEATURE_CACHE_FILENAME);
+        featureCache = FeatureCache.load(Paths.get(context.getFilesDir().getPath(), featureCacheFileName),
+                modelSettings.getModelId(), preprocessingFingerprint());
+        startupMetrics.end("load_feature_cache", begin);
+        startupMetrics.markSinceStart("ready");
+        Log.i(TAG, startupMetrics.toString());
+    }
+
+    /**
+     * Everything between the photo file and the model input that changes the embedding: the
+     * decode subsampling, the crop size and margin and the resampler. Cached features are only
+     * reused while it stays the same.
+     */
+    private String preprocessingFingerprint() {
+        return String.format(Locale.ROOT, "decode%d-crop%d-margin%.3f-bilinear",
+                pipelineSettings.getDecodeMinShortSide(), FaceFeatureTranslator.INPUT_SIZE, FACE_CROP_MARGIN);
     }
 
     public void runTest() {
         Executors.newSingleThreadExecutor().execute(() -> {
-            List<BioPhoto> allBioPhotos = loadAllBioPhotos();
-            List<AttPhoto> allAttPhotos = loadAllAttPhotos();
-            Log.i(TAG, "Finished loading photos");
-            List<String> goodMatch = new ArrayList<>();
-            List<String> mismatch = new ArrayList<>();
-            List<String> noMatch = new ArrayList<>();
-            List<String> ignoreNoMatch = new ArrayList<>();
-            for(AttPhoto attPhoto : allAttPhotos) {
-                BioPhoto bioPhoto = getBioPhotoMatch(attPhoto, allBioPhotos);
-                if (bioPhoto == null) {
-                    // No match? Check if there exist a BioPhoto for that employee
-                    boolean bpExist = allBioPhotos.stream().anyMatch(bp ->
-                            bp.getEmpresa() == attPhoto.getEmpresa() && bp.getEmpleado() == attPhoto.getEmpleado());
-                    if (bpExist) {
-                        noMatch.add(String.format("No Match %s", attPhoto));
-                    } else {
-                        ignoreNoMatch.add(String.format("No BioPhoto for %s", attPhoto));
-                    }
-                } else if(attPhoto.getEmpresa() == bioPhoto.getEmpresa() && attPhoto.getEmpleado() == bioPhoto.getEmpleado()) {
-                    goodMatch.add(String.format("Good %s %s", bioPhoto, attPhoto));
-                } else {
-                    mismatch.add(String.format("Mismatch %s %s", bioPhoto, attPhoto));
-                }
+            try {
+                ready.get();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                Log.i(TAG, "Model failed to load, can't run the test");
+                return;
             }
-            String goodMatchStr = TextUtils.join("\n", goodMatch);
-            String mismatchStr = TextUtils.join("\n", mismatch);
-            String noMatchStr = TextUtils.join("\n", noMatch);
-            String ignoreNoMatchStr = TextUtils.join("\n", ignoreNoMatch);
-            float totalAttPhotos = allAttPhotos.size();
-            float goodMatches = goodMatch.size();
-            float pSuccess = totalAttPhotos - goodMatches / totalAttPhotos;
+            List<BioPhoto> allBioPhotos = syncEnrollmentLog(loadAllBioPhotos());
+            PartitionedGallery gallery = buildGallery(allBioPhotos);
+            FusedGallery fusedGallery = TEMPLATE_FUSION ? buildFusedGallery(allBioPhotos) : null;
+            MatchEvaluator evaluator = new MatchEvaluator(featureThresholdForMatch);
+            evaluateAllAttPhotos(gallery, fusedGallery, allBioPhotos, evaluator);
+            Log.i(TAG, "Finished matching photos");
+            Log.i(TAG, evaluator.report(EVALUATION_SWEEP_SPAN, EVALUATION_SWEEP_STEP));
+            Log.i(TAG, startupMetrics.toString());
+            Log.i(TAG, "Metrics " + metrics.toJson());
             Log.i(TAG, "Complete.");
         });
     }
 
-    private List<BioPhoto> loadAllBioPhotos() {
+    private static Path bioPhotosDir() {
         // Ex. "/storage/emulated/0/Download/BioPhotos/1-1430.jpg"
-        Path pathBioPhotosDir = Paths.get(Environment.getExternalStorageDirectory().toString(), "Download", "BioPhotos");
-        File bioPhotosDir = new File(pathBioPhotosDir.toString());
-        File[] bioPhotoFiles = bioPhotosDir.listFiles();
+        return Paths.get(Environment.getExternalStorageDirectory().toString(), "Download", "BioPhotos");
+    }
+
+    private static Path attPhotosDir() {
+        // Ex. "/storage/emulated/0/Download/AttPhotos/52-20240619082918-62157.jpg"
+        return Paths.get(Environment.getExternalStorageDirectory().toString(), "Download", "AttPhotos");
+    }
+
+    private List<BioPhoto> loadAllBioPhotos() {
         List<BioPhoto> bioPhotos = new ArrayList<>();
-        for(File bioPhotoFile : bioPhotoFiles) {
-            // Ex. "file:///storage/emulated/0/Download/BioPhotos/1-1430.jpg"
-            String fileUriPath = String.format("file://%s", bioPhotoFile.getPath());
-            BioPhoto bioPhoto = getBioPhoto(fileUriPath);
+        runPhotoPipeline(bioPhotosDir(), false, photoJob -> {
+            BioPhoto bioPhoto = getBioPhoto(photoJob);
             if (bioPhoto != null) {
                 bioPhotos.add(bioPhoto);
             }
-        }
+        });
         return bioPhotos;
     }
 
-    private List<BioPhoto> loadAllBioPhotosFromJson() {
-        try {
-            Path bioPhotosPath = Paths.get(context.getFilesDir().getPath(), CACHED_BIOPHOTOS_JSON);
-            if (Files.exists(bioPhotosPath)) {
-                Gson gson = new Gson();
-                Type listType = new TypeToken<ArrayList<BioPhoto>>(){}.getType();
-                String bioPhotosStr = new String(Files.readAllBytes(bioPhotosPath));
-                return gson.fromJson(bioPhotosStr, listType);
+    /**
+     * BioPhotos, or AttPhotos, of the test directories keyed by file path, so the features two
+     * models produce can be compared photo by photo. Blocks until the model is ready.
+     */
+    Map<String, BioPhoto> loadPhotosByPath(boolean attPhotos) throws InterruptedException, ExecutionException {
+        ready.get();
+        Map<String, BioPhoto> photos = new HashMap<>();
+        runPhotoPipeline(attPhotos ? attPhotosDir() : bioPhotosDir(), false, photoJob -> {
+            BioPhoto photo = attPhotos ? getAttPhoto(photoJob) : getBioPhoto(photoJob);
+            if (photo != null) {
+                photos.put(photoJob.filePath, photo);
+            }
+        });
+        return photos;
+    }
+
+    /**
+     * Brings the enrollment log in line with the scanned BioPhotos: employees whose templates changed
+     * are rewritten and employees no longer in the directory are deleted. An unchanged directory
+     * writes nothing.
+     * @return the enrolled templates as replayed and synced in the log, which the galleries are
+     *         built from, or bioPhotos as scanned if the log can't be used
+     */
+    private List<BioPhoto> syncEnrollmentLog(List<BioPhoto> bioPhotos) {
+        if (bioPhotos.isEmpty()) {
+            return bioPhotos;
+        }
+        long time = System.currentTimeMillis();
+        Map<Long, List<float[]>> scanned = new LinkedHashMap<>();
+        for (BioPhoto bioPhoto : bioPhotos) {
+            long key = PartitionedGallery.employeeKey(bioPhoto.getEmpresa(), bioPhoto.getEmpleado());
+            List<float[]> templates = scanned.get(key);
+            if (templates == null) {
+                templates = new ArrayList<>(1);
+                scanned.put(key, templates);
+            }
+            templates.add(bioPhoto.getFeatures());
+        }
+        Path basePath = Paths.get(context.getFilesDir().getPath(), ENROLLMENT_LOG);
+        int dimension = bioPhotos.get(0).getFeatures().length;
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, modelSettings.getModelId(), dimension, false)) {
+            Log.i(TAG, String.format("Enrollment log replay of %d records took %d ms, %d bytes truncated,"
+                            + " %d bytes of snapshot dropped",
+                    log.getLogRecords(), log.getReplayMillis(), log.getTruncatedBytes(),
+                    log.getDroppedSnapshotBytes()));
+            log.setChangeListener(recentMatches::invalidate);
+            log.setCompactThresholdBytes(ENROLLMENT_LOG_COMPACT_BYTES);
+            int changes = 0;
+            for (Map.Entry<Long, List<float[]>> entry : scanned.entrySet()) {
+                int empresa = (int) (entry.getKey() >> 32);
+                int empleado = (int) (long) entry.getKey();
+                List<float[]> templates = entry.getValue();
+                if (sameTemplates(log.getTemplates(empresa, empleado), templates)) {
+                    continue;
+                }
+                log.update(empresa, empleado, templates.get(0));
+                for (int i = 1; i < templates.size(); i++) {
+                    log.add(empresa, empleado, templates.get(i));
+                }
+                changes++;
             }
+            for (BioPhoto enrolled : log.getBioPhotos()) {
+                if (!scanned.containsKey(PartitionedGallery.employeeKey(enrolled.getEmpresa(), enrolled.getEmpleado()))
+                        && log.delete(enrolled.getEmpresa(), enrolled.getEmpleado())) {
+                    changes++;
+                }
+            }
+            Log.i(TAG, String.format("Syncing %d BioPhotos changed %d employees in %d ms",
+                    bioPhotos.size(), changes, System.currentTimeMillis() - time));
+            return log.getBioPhotos();
         } catch (Exception ex) {
             ex.printStackTrace();
         }
-        return null;
+        return bioPhotos;
     }
 
-    private void saveBioPhotosList(List<BioPhoto> bioPhotos) {
-        try {
-            Path bioPhotosPath = Paths.get(context.getFilesDir().getPath(), CACHED_BIOPHOTOS_JSON);
-            if (!Files.exists(bioPhotosPath)) {
-                Gson gson = new Gson();
-                byte[] jsonBioPhotos = gson.toJson(bioPhotos).getBytes();
-                Files.write(bioPhotosPath, jsonBioPhotos);
+    /**
+     * Whether both lists hold the same templates, in any order.
+     */
+    private static boolean sameTemplates(List<float[]> enrolled, List<float[]> scanned) {
+        if (enrolled.size() != scanned.size()) {
+            return false;
+        }
+        boolean[] used = new boolean[enrolled.size()];
+        for (float[] features : scanned) {
+            boolean found = false;
+            for (int i = 0; i < enrolled.size() && !found; i++) {
+                if (!used[i] && Arrays.equals(enrolled.get(i), features)) {
+                    used[i] = true;
+                    found = true;
+                }
+            }
+            if (!found) {
+                return false;
             }
-        } catch (Exception ex) {
-            ex.printStackTrace();
         }
+        return true;
     }
 
+    /**
+     * Matches every AttPhoto as it comes out of the pipeline and records the outcome in evaluator.
+     * AttPhotos aren't kept, so memory doesn't depend on how many there are.
+     * In multi-face mode each face of a photo is matched, see {@link #evaluateFaces}.
+     */
+    private void evaluateAllAttPhotos(PartitionedGallery gallery, FusedGallery fusedGallery, List<BioPhoto> bioPhotos,
+                                      MatchEvaluator evaluator) {
+        long time = System.currentTimeMillis();
+        int[] photosAndFaces = new int[2];
+        runPhotoPipeline(attPhotosDir(), pipelineSettings.isMultiFaceEnabled(), photoJob -> {
+            AttPhoto attPhoto = getAttPhoto(photoJob);
+            if (attPhoto == null) {
+                return;
+            }
+            photosAndFaces[0]++;
+            if (photoJob.faceFeatures != null && photoJob.faceFeatures.size() > 1) {
+                photosAndFaces[1] += photoJob.faceFeatures.size();
+                evaluateFaces(attPhoto, photoJob, gallery, evaluator);
+                return;
+            }
+            photosAndFaces[1]++;
+            long start = metrics.start();
+            BioPhoto candidate = getBestCandidate(attPhoto, gallery, fusedGallery, bioPhotos);
+            metrics.stop(RecognitionMetrics.Stage.MATCH, start);
+            startupMetrics.markSinceStart("first_match");
+            float score = matchScore[0];
+            boolean isCorrect = candidate != null
+                    && attPhoto.getEmpresa() == candidate.getEmpresa()
+                    && attPhoto.getEmpleado() == candidate.getEmpleado();
+            boolean isEnrolled = gallery != null && gallery.isEnrolled(attPhoto.getEmpresa(), attPhoto.getEmpleado());
+            evaluator.record(isEnrolled, candidate != null, isCorrect, score);
+            if (candidate != null && !isCorrect && score >= featureThresholdForMatch) {
+                Log.i(TAG, String.format("Mismatch %s %s %.4f", candidate, attPhoto, score));
+            }
+        });
+        double seconds = Math.max(1, System.currentTimeMillis() - time) / 1000.0;
+        Log.i(TAG, String.format("Matched %d faces in %d AttPhotos, %.1f faces/sec",
+                photosAndFaces[1], photosAndFaces[0], photosAndFaces[1] / seconds));
+        if (pipelineSettings.isRecentMatchCacheEnabled()) {
+            Log.i(TAG, String.format("Recent match cache: %d hits, %d verified, %d misses, %d employees",
+                    recentMatches.getHits(), recentMatches.getVerifiedHits(), recentMatches.getMisses(),
+                    recentMatches.size()));
+        }
+    }
 
-    private List<AttPhoto> loadAllAttPhotos() {
-        // Ex. "/storage/emulated/0/Download/AttPhotos/52-20240619082918-62157.jpg"
-        Path pathAttPhotosDir = Paths.get(Environment.getExternalStorageDirectory().toString(), "Download", "AttPhotos");
-        File attPhotosDir = new File(pathAttPhotosDir.toString());
-        File[] attPhotoFiles = attPhotosDir.listFiles();
-        List<AttPhoto> attPhotos = new ArrayList<>();
-        for(File attPhotoFile : attPhotoFiles) {
-            // Ex. "file:///storage/emulated/0/Download/AttPhotos/52-20240619082918-62157.jpg"
-            String fileUriPath = String.format("file://%s", attPhotoFile.getPath());
-            AttPhoto attPhoto = getAttPhoto(fileUriPath);
-            if (attPhoto != null) {
-                attPhotos.add(attPhoto);
+    /**
+     * Matches every face of a multi-face AttPhoto in one pass over its company's templates.
+     * The photo's label names a single employee, so the evaluator gets the face matched to that
+     * employee if any, otherwise the best scoring face.
+     */
+    private void evaluateFaces(AttPhoto attPhoto, PhotoJob photoJob, PartitionedGallery gallery,
+                               MatchEvaluator evaluator) {
+        long start = metrics.start();
+        List<FaceMatch> matches = FaceMatch.matchAll(gallery, attPhoto.getEmpresa(), photoJob.faceBoxes,
+                photoJob.faceFeatures, SCORE_MODE);
+        metrics.recordShared(RecognitionMetrics.Stage.MATCH, start, matches.size());
+        startupMetrics.markSinceStart("first_match");
+        FaceMatch recorded = null;
+        for (FaceMatch match : matches) {
+            if (match.hasCandidate() && match.getEmpleado() == attPhoto.getEmpleado()) {
+                recorded = match;
+                break;
+            }
+            if (recorded == null || match.getScore() > recorded.getScore()) {
+                recorded = match;
+            }
+        }
+        boolean isEnrolled = gallery != null && gallery.isEnrolled(attPhoto.getEmpresa(), attPhoto.getEmpleado());
+        boolean isCorrect = recorded.hasCandidate() && recorded.getEmpleado() == attPhoto.getEmpleado();
+        evaluator.record(isEnrolled, recorded.hasCandidate(), isCorrect, recorded.getScore());
+        Log.i(TAG, String.format("%d faces in %s: %s", matches.size(), photoJob.fileUriPath, matches));
+    }
+
+    /**
+     * Lists every photo in photosDir and hands it to sink on the calling thread.
+     * Photos unchanged since the last run come straight from the feature cache, the rest are
+     * decoded, detected, cropped and embedded concurrently.
+     * Photos without exactly one face never reach sink, unless multiFace is set: photos then
+     * reach it with every face of at least {@link PipelineSettings#getMinFaceSize()} cropped
+     * and embedded. The cache keeps what the detector found regardless of the mode: photos where
+     * it found exactly one face, and photos skipped for no or several faces. Skips that only come
+     * from the size filter aren't cached, and the filter is applied to cached faces in multiFace
+     * mode, so both modes see the same photos whether cached or not.
+     */
+    private void runPhotoPipeline(Path photosDir, boolean multiFace, Consumer<PhotoJob> sink) {
+        long time = System.currentTimeMillis();
+        List<PhotoJob> pendingJobs = new ArrayList<>();
+        Set<String> seenPaths = new HashSet<>();
+        int cacheHits = 0;
+        try (DirectoryStream<Path> photoPaths = Files.newDirectoryStream(photosDir)) {
+            for (Path photoPath : photoPaths) {
+                BasicFileAttributes attributes = Files.readAttributes(photoPath, BasicFileAttributes.class);
+                long fileSize = attributes.size();
+                long lastModified = attributes.lastModifiedTime().toMillis();
+                // Ex. "file:///storage/emulated/0/Download/AttPhotos/52-20240619082918-62157.jpg"
+                PhotoJob photoJob = new PhotoJob(String.format("file://%s", photoPath), photoPath.toString(),
+                        fileSize, lastModified);
+                seenPaths.add(photoJob.filePath);
+                FeatureCache.Entry cached = featureCache.get(photoJob.filePath, fileSize, lastModified);
+                // A photo skipped in single-face mode may have several faces to match now
+                if (cached == null || (multiFace && !cached.hasFace())) {
+                    pendingJobs.add(photoJob);
+                    continue;
+                }
+                cacheHits++;
+                if (cached.hasFace() && (!multiFace || isLargeFace(cached.getBox(), 1))) {
+                    photoJob.features = cached.getFeatures();
+                    sink.accept(photoJob);
+                }
             }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return;
         }
-        return attPhotos;
+        int evicted = featureCache.evictMissing(photosDir, seenPaths);
+        Log.i(TAG, String.format("%s: %d cached, %d to process, %d evicted from cache",
+                photosDir, cacheHits, pendingJobs.size(), evicted));
+
+        try {
+            PipelineSettings.StageSettings decode = pipelineSettings.getDecode();
+            PipelineSettings.StageSettings detect = pipelineSettings.getDetect();
+            PipelineSettings.StageSettings crop = pipelineSettings.getCrop();
+            PipelineSettings.StageSettings embed = pipelineSettings.getEmbed();
+            // Enough idle bitmaps for every decode and crop worker to hand one over to the next decode
+            BitmapPool bitmapPool = new BitmapPool(decode.getParallelism() + crop.getParallelism());
+            PhotoDecoder photoDecoder = new PhotoDecoder(bitmapPool, pipelineSettings.getDecodeMinShortSide());
+            long gcTime = runtimeStat("art.gc.gc-time");
+            long bytesAllocated = runtimeStat("art.gc.bytes-allocated");
+            StagedPipeline pipeline = StagedPipeline.source("list", pendingJobs.iterator())
+                    .then("decode", decode.getParallelism(), decode.getQueueDepth(),
+                            photoJob -> decodePhoto(photoDecoder, photoJob))
+                    .thenAsync("detect", detect.getParallelism(), detect.getQueueDepth(),
+                            photoJob -> detectFaces(bitmapPool, multiFace, photoJob))
+                    .then("crop", crop.getParallelism(), crop.getQueueDepth(),
+                            photoJob -> cropFaces(bitmapPool, photoJob))
+                    .thenBatched("embed", embed.getParallelism(), embed.getQueueDepth(),
+                            pipelineSettings.getEmbedBatchSize(), pipelineSettings.getEmbedMaxWaitMillis(),
+                            this::extractFeatures)
+                    .to(photoJob -> {
+                        if (photoJob.detectedFaces == 1 && photoJob.faceFeatures.size() == 1) {
+                            featureCache.put(photoJob.filePath, photoJob.fileSize, photoJob.lastModified,
+                                    photoJob.faceBoxes.get(0), photoJob.features);
+                        }
+                        sink.accept(photoJob);
+                    });
+            pipeline.run();
+            for (StagedPipeline.StageStats stageStats : pipeline.getStats()) {
+                Log.i(TAG, stageStats.toString());
+            }
+            Log.i(TAG, "Predictor wait " + predictorPool.getWaitHistogram());
+            Log.i(TAG, "Predictor batch latency " + predictorPool.getLatencyHistogram());
+            int photos = Math.max(1, pendingJobs.size());
+            Log.i(TAG, String.format("Bitmaps %s, ART allocated %d KB/photo, GC %d ms",
+                    bitmapPool, (runtimeStat("art.gc.bytes-allocated") - bytesAllocated) / photos / 1024,
+                    runtimeStat("art.gc.gc-time") - gcTime));
+            featureCache.save();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        Log.i(TAG, String.format("Loading %s took %d ms", photosDir, System.currentTimeMillis() - time));
     }
 
-    private BioPhoto getBioPhoto(String fileUriPath) {
-        Log.i(TAG, String.format("Getting BioPhoto for %s", fileUriPath));
-        FeaturesResult featuresResult = loadPhotoAndExtractFeatures(fileUriPath);
-        if (featuresResult != null) {
+    private BioPhoto getBioPhoto(PhotoJob photoJob) {
+        Log.i(TAG, String.format("Getting BioPhoto for %s", photoJob.fileUriPath));
+        if (photoJob.features != null) {
             try {
-                String fileName = Paths.get(fileUriPath).getFileName().toString();
+                String fileName = Paths.get(photoJob.fileUriPath).getFileName().toString();
                 String[] empresaEmpleado = fileName.split("\\.")[0].split("-");
                 int empresa = Integer.parseInt(empresaEmpleado[0]);
                 int empleado = Integer.parseInt(empresaEmpleado[1]);
-                //return new BioPhoto(empresa, empleado, featuresResult.fullPhoto, featuresResult.croppedPhoto, featuresResult.features);
-                return new BioPhoto(empresa, empleado, null, null, featuresResult.features);
+                //return new BioPhoto(empresa, empleado, photoJob.fullPhoto, photoJob.croppedPhoto, photoJob.features);
+                return new BioPhoto(empresa, empleado, null, null, photoJob.features);
             } catch (Exception ex) {
                 ex.printStackTrace();
+                metrics.skip(RecognitionMetrics.SkipReason.PARSE_FAILURE);
             }
         }
         return null;
     }
 
-    private AttPhoto getAttPhoto(String fileUriPath) {
-        Log.i(TAG, String.format("Getting AttPhoto for %s", fileUriPath));
-        FeaturesResult featuresResult = loadPhotoAndExtractFeatures(fileUriPath);
-        if (featuresResult != null) {
+    private AttPhoto getAttPhoto(PhotoJob photoJob) {
+        Log.i(TAG, String.format("Getting AttPhoto for %s", photoJob.fileUriPath));
+        if (photoJob.features != null) {
             try {
-                String fileName = Paths.get(fileUriPath).getFileName().toString();
+                String fileName = Paths.get(photoJob.fileUriPath).getFileName().toString();
                 String[] empresaEmpleado = fileName.split("\\.")[0].split("-");
                 int empresa = Integer.parseInt(empresaEmpleado[0]);
                 long randomId = Long.parseLong(empresaEmpleado[1]);
                 int empleado = Integer.parseInt(empresaEmpleado[2]);
-                //return new AttPhoto(empresa, empleado, featuresResult.fullPhoto, featuresResult.croppedPhoto, featuresResult.features, randomId);
-                return new AttPhoto(empresa, empleado, null, null, featuresResult.features, randomId);
+                //return new AttPhoto(empresa, empleado, photoJob.fullPhoto, photoJob.croppedPhoto, photoJob.features, randomId);
+                return new AttPhoto(empresa, empleado, null, null, photoJob.features, randomId);
             } catch (Exception ex) {
                 ex.printStackTrace();
+                metrics.skip(RecognitionMetrics.SkipReason.PARSE_FAILURE);
             }
         }
         return null;
     }
 
-    private FeaturesResult loadPhotoAndExtractFeatures(String fileUriPath) {
-        PhotosResult photosResult = loadPhoto(fileUriPath);
-        if (photosResult != null) {
-            try {
-                Image image = ImageFactory.getInstance().fromImage(photosResult.croppedPhoto);
-                float[] features = predictor.predict(image);
-                return new FeaturesResult(photosResult.fullPhoto, photosResult.croppedPhoto, features);
-            } catch (Exception ex) {
-                ex.printStackTrace();
+    /**
+     * Decodes subsampled for detection into a pooled bitmap, see {@link PhotoDecoder}.
+     */
+    private PhotoJob decodePhoto(PhotoDecoder photoDecoder, PhotoJob photoJob) {
+        long start = metrics.start();
+        try {
+            PhotoDecoder.DecodedPhoto decoded = photoDecoder.decode(photoJob.filePath);
+            if (decoded == null) {
+                Log.i(TAG, String.format("Could not decode %s", photoJob.fileUriPath));
+                metrics.skip(RecognitionMetrics.SkipReason.DECODE_FAILURE);
+                return null;
             }
+            photoJob.fullPhoto = decoded.getBitmap();
+            photoJob.sampleSize = decoded.getSampleSize();
+            photoJob.inputImage = InputImage.fromBitmap(photoJob.fullPhoto, 0);
+            return photoJob;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            Log.i(TAG, String.format("There was a problem decoding %s", photoJob.fileUriPath));
+            metrics.skip(RecognitionMetrics.SkipReason.DECODE_FAILURE);
+        } finally {
+            metrics.stop(RecognitionMetrics.Stage.DECODE, start);
         }
         return null;
     }
 
-    private PhotosResult loadPhoto(String fileUriPath) {
-        FacesResult facesResult = getFacesFromInputImage(fileUriPath);
-        if (facesResult == null) {
-            Log.i(TAG, String.format("There was a problem identifying faces on %s", fileUriPath));
+    /**
+     * Starts detection and returns right away, the result is checked on ML Kit's thread once it
+     * completes. In multiFace mode, keeps the faces of at least {@link PipelineSettings#getMinFaceSize()}
+     * instead of skipping photos with more than one face.
+     */
+    private CompletableFuture<PhotoJob> detectFaces(BitmapPool bitmapPool, boolean multiFace, PhotoJob photoJob) {
+        long start = metrics.start();
+        return faceDetector.detect(photoJob.inputImage).handle((faces, error) -> {
+            metrics.stop(RecognitionMetrics.Stage.DETECT, start);
+            photoJob.inputImage = null;
+            if (error != null) {
+                error.printStackTrace();
+                Log.i(TAG, String.format("There was a problem identifying faces on %s", photoJob.fileUriPath));
+                metrics.skip(RecognitionMetrics.SkipReason.DETECTION_FAILURE);
+                bitmapPool.release(photoJob.fullPhoto);
+                return null;
+            }
+            photoJob.detectedFaces = faces.size();
+            photoJob.faces = multiFace ? largeFaces(faces, photoJob.sampleSize) : faces;
+            return checkFaceCount(bitmapPool, multiFace, photoJob);
+        });
+    }
+
+    private PhotoJob checkFaceCount(BitmapPool bitmapPool, boolean multiFace, PhotoJob photoJob) {
+        if (photoJob.faces.isEmpty()) {
+            if (photoJob.detectedFaces == 0) {
+                Log.i(TAG, String.format("No faces identified, skipping %s", photoJob.fileUriPath));
+                featureCache.putSkipped(photoJob.filePath, photoJob.fileSize, photoJob.lastModified);
+            } else {
+                // Not cached, a single-face run still has to match the photo's only face
+                Log.i(TAG, String.format("No faces of at least %d px, skipping %s",
+                        pipelineSettings.getMinFaceSize(), photoJob.fileUriPath));
+            }
+            metrics.skip(RecognitionMetrics.SkipReason.NO_FACE);
+            bitmapPool.release(photoJob.fullPhoto);
             return null;
         }
-        List<Face> faces = facesResult.faces;
-        Bitmap fullPhoto = facesResult.fullPhoto;
-        if (faces == null || faces.isEmpty()) {
-            Log.i(TAG, String.format("No faces identified, skipping %s", fileUriPath));
+        if (photoJob.faces.size() > 1 && !multiFace) {
+            Log.i(TAG, String.format("More than one face identified, skipping %s", photoJob.fileUriPath));
+            metrics.skip(RecognitionMetrics.SkipReason.MULTIPLE_FACES);
+            featureCache.putSkipped(photoJob.filePath, photoJob.fileSize, photoJob.lastModified);
+            bitmapPool.release(photoJob.fullPhoto);
             return null;
         }
-        if (faces.size() > 1) {
-            Log.i(TAG, String.format("More than one face identified, skipping %s", fileUriPath));
-            return null;
+        return photoJob;
+    }
+
+    /**
+     * Faces whose box is at least the minimum face size in the original photo.
+     */
+    private List<int[]> largeFaces(List<int[]> faces, int sampleSize) {
+        List<int[]> largeFaces = new ArrayList<>(faces.size());
+        for (int[] box : faces) {
+            if (isLargeFace(box, sampleSize)) {
+                largeFaces.add(box);
+            }
         }
-        // Crop the original image to just the face
+        return largeFaces;
+    }
+
+    /**
+     * Whether box, in a bitmap decoded with sampleSize, is at least the minimum face size in the
+     * original photo.
+     */
+    private boolean isLargeFace(int[] box, int sampleSize) {
+        int minSize = pipelineSettings.getMinFaceSize();
+        return (box[2] - box[0]) * sampleSize >= minSize && (box[3] - box[1]) * sampleSize >= minSize;
+    }
+
+    /**
+     * Crops every face, grown by FACE_CROP_MARGIN, straight into a 160x160 buffer and gives the
+     * decoded bitmap back to the pool. Faces outside of the photo are dropped.
+     */
+    private PhotoJob cropFaces(BitmapPool bitmapPool, PhotoJob photoJob) {
+        long start = metrics.start();
+        Bitmap fullPhoto = photoJob.fullPhoto;
+        photoJob.fullPhoto = null;
         try {
-            Face face = faces.get(0);
-            /**
-             * left	    int: The X coordinate of the left side of the rectangle
-             * top	    int: The Y coordinate of the top of the rectangle
-             * right	int: The X coordinate of the right side of the rectangle
-             * bottom	int: The Y coordinate of the bottom of the rectangle
-             */
-            RectF boundingBox = new RectF(
-                    Math.max(face.getBoundingBox().left, 0),
-                    Math.max(face.getBoundingBox().top, 0),
-                    Math.min(face.getBoundingBox().right, fullPhoto.getWidth()),
-                    Math.min(face.getBoundingBox().bottom, fullPhoto.getHeight())
-            );
-            Bitmap croppedPhoto = Bitmap.createBitmap(fullPhoto,
-                    (int) boundingBox.left,
-                    (int) boundingBox.top,
-                    (int) boundingBox.width(),
-                    (int) boundingBox.height());
-            return new PhotosResult(fullPhoto, croppedPhoto);
+            FaceCropper cropper = faceCropper.get();
+            photoJob.faceImages = new ArrayList<>(photoJob.faces.size());
+            photoJob.faceBoxes = new ArrayList<>(photoJob.faces.size());
+            for (int[] box : photoJob.faces) {
+                if (!cropper.setBox(box[0], box[1], box[2], box[3], fullPhoto.getWidth(), fullPhoto.getHeight())) {
+                    continue;
+                }
+                fullPhoto.getPixels(cropper.getRegionPixels(), 0, cropper.getWidth(),
+                        cropper.getLeft(), cropper.getTop(), cropper.getWidth(), cropper.getHeight());
+                // fromPixels copies the buffer, which the next crop on this thread overwrites
+                photoJob.faceImages.add(ImageFactory.getInstance().fromPixels(
+                        cropper.crop(), cropper.getTargetSize(), cropper.getTargetSize()));
+                // In the original photo's coordinates
+                int scale = photoJob.sampleSize;
+                photoJob.faceBoxes.add(new int[] {box[0] * scale, box[1] * scale, box[2] * scale, box[3] * scale});
+            }
+            photoJob.faces = null;
+            if (photoJob.faceImages.isEmpty()) {
+                Log.i(TAG, String.format("Face outside of the photo, skipping %s", photoJob.fileUriPath));
+                metrics.skip(RecognitionMetrics.SkipReason.CROP_FAILURE);
+                return null;
+            }
+            return photoJob;
         } catch (Exception ex) {
             ex.printStackTrace();
+            metrics.skip(RecognitionMetrics.SkipReason.CROP_FAILURE);
+        } finally {
+            bitmapPool.release(fullPhoto);
+            metrics.stop(RecognitionMetrics.Stage.CROP, start);
         }
         return null;
     }
 
-    private FacesResult getFacesFromInputImage(String fileUriPath) {
+    /**
+     * ART counter from Debug.getRuntimeStat, e.g. "art.gc.gc-time", -1 if unavailable.
+     */
+    private static long runtimeStat(String name) {
         try {
-            InputImage image = InputImage.fromFilePath(context, Uri.parse(fileUriPath));
-            Task<List<Face>> result = faceDetector.process(image);
-            Tasks.await(result);
-            return new FacesResult(result.getResult(), image.getBitmapInternal());
-        } catch (Exception e) {
-            e.printStackTrace();
+            return Long.parseLong(Debug.getRuntimeStat(name));
+        } catch (NumberFormatException ex) {
+            return -1;
         }
-        return null;
     }
 
-    private void copyPytorchModelFromAssetsToFileSystem() {
+    /**
+     * Embeds the cropped faces of a batch of photos, all of them in one batch, with one predictor
+     * borrowed from the pool.
+     */
+    private List<PhotoJob> extractFeatures(List<PhotoJob> photoJobs) throws Exception {
+        List<Image> images = new ArrayList<>(photoJobs.size());
+        for (PhotoJob photoJob : photoJobs) {
+            images.addAll(photoJob.faceImages);
+        }
+        long start = metrics.start();
+        List<float[]> features = predictorPool.batchPredict(images);
+        metrics.recordShared(RecognitionMetrics.Stage.EMBED, start, images.size());
+        int next = 0;
+        for (PhotoJob photoJob : photoJobs) {
+            int faces = photoJob.faceImages.size();
+            photoJob.faceFeatures = features.subList(next, next + faces);
+            photoJob.features = photoJob.faceFeatures.get(0);
+            photoJob.faceImages = null;
+            next += faces;
+        }
+        return photoJobs;
+    }
+
+    /**
+     * Copies the model out of the APK on first run and after every app update, see {@link ModelInstaller}.
+     */
+    private Path copyModelFromAssetsToFileSystem(ModelSettings settings) {
         try {
-            Path modelPath = Paths.get(context.getFilesDir().getPath(), MODEL_ZIP_DOWNLOAD_FILENAME);
-            if (!Files.exists(modelPath)) {
-                try(InputStream inputStream = context.getAssets().open("pytorch_models/face_feature.zip")) {
-                    // Files.copy(inputStream, modelPath, StandardCopyOption.REPLACE_EXISTING);
-                    try (FileOutputStream fos = context.openFileOutput(MODEL_ZIP_DOWNLOAD_FILENAME, Context.MODE_PRIVATE)) {
-                        byte[] buffer = new byte[8192];
-                        int length;
-                        while( (length = inputStream.read(buffer)) != -1) {
-                            fos.write(buffer, 0, length);
-                        }
-                    }
-                }
-            }
+            Path modelPath = Paths.get(context.getFilesDir().getPath(), settings.getModelFileName());
+            // Assets can only change with an app update
+            long lastUpdateTime = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+            ModelInstaller modelInstaller = new ModelInstaller(modelPath);
+            boolean copied = modelInstaller.install(
+                    () -> context.getAssets().open(settings.getAssetPath()),
+                    Long.toString(lastUpdateTime));
+            Log.i(TAG, copied ? "Model copied from assets" : "Model already installed");
+            return modelPath;
         } catch (Exception ex) {
             ex.printStackTrace();
             throw new RuntimeException(ex);
         }
     }
 
-    private Criteria<Image, float[]> buildCriteria() {
+    private Criteria<Image, float[]> buildCriteria(ModelSettings settings, Path modelPath) {
         try {
-            Log.i(TAG, "Building Criteria face_feature with Engine PyTorch");
+            Log.i(TAG, String.format("Building Criteria face_feature %s with Engine %s",
+                    settings.getPrecision(), settings.getEngine().getEngineName()));
             long time = System.currentTimeMillis();
-            Criteria<Image, float[]> criteria =
-                    Criteria.builder()
-                            .setTypes(Image.class, float[].class)
-                            .optModelPath(new File(context.getFilesDir(), MODEL_ZIP_DOWNLOAD_FILENAME).toPath())
-                            .optModelName("face_feature") // specify model file prefix
-                            .optTranslator(new FaceFeatureTranslator())
-                            .optProgress(new ProgressBar())
-                            .optEngine("PyTorch") // Use PyTorch engine
-                            .build();
+            Criteria<Image, float[]> criteria = FaceFeatureModels.criteria(settings.getEngine(), modelPath);
             Log.i(TAG, "Loading criteria took " + (System.currentTimeMillis()-time) + " ms");
             return criteria;
         } catch (Exception ex) {
@@ -316,8 +707,10 @@ public class DjlFaceRecognitionTest {
         try {
             Log.i(TAG, "Loading ZooModel");
             long time = System.currentTimeMillis();
+            long nativeHeap = Debug.getNativeHeapAllocatedSize();
             ZooModel<Image, float[]> model = criteria.loadModel();
-            Log.i(TAG, "Loading ZooModel took " + (System.currentTimeMillis()-time) + " ms");
+            Log.i(TAG, String.format("Loading ZooModel took %d ms, native heap +%d KB",
+                    System.currentTimeMillis() - time, (Debug.getNativeHeapAllocatedSize() - nativeHeap) / 1024));
             return model;
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -325,126 +718,172 @@ public class DjlFaceRecognitionTest {
         }
     }
 
-    private Predictor<Image, float[]> createPredictor(ZooModel<Image, float[]> model) {
-        Log.i(TAG, "Create Predictor");
-        long time = System.currentTimeMillis();
-        Predictor<Image, float[]> predictor = model.newPredictor();
-        Log.i(TAG, "Create Predictor took " + (System.currentTimeMillis()-time) + " ms");
-        return predictor;
+    /**
+     * Embeds faces with the configured engine and with other, and compares the embeddings.
+     * The other engine's model is loaded for the comparison only and closed afterwards.
+     * See {@link EmbeddingComparison#isEquivalent()}.
+     */
+    public CompletableFuture<EmbeddingComparison> compareEngine(InferenceEngine other, List<Image> faces) {
+        ModelSettings otherSettings = ModelSettings.defaults();
+        otherSettings.setEngine(other);
+        otherSettings.setPrecision(modelSettings.getPrecision());
+        return ready.thenApplyAsync(ignored -> {
+            Path modelPath = copyModelFromAssetsToFileSystem(otherSettings);
+            try (ZooModel<Image, float[]> otherModel = loadZooModel(buildCriteria(otherSettings, modelPath));
+                 Predictor<Image, float[]> otherPredictor = otherModel.newPredictor()) {
+                List<float[]> expected = predictorPool.batchPredict(faces);
+                List<float[]> actual = otherPredictor.batchPredict(faces);
+                EmbeddingComparison comparison = EmbeddingComparison.compare(expected, actual);
+                Log.i(TAG, String.format("%s vs %s: %s, equivalent=%b", modelSettings.getEngine(), other,
+                        comparison, comparison.isEquivalent()));
+                return comparison;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(ex);
+            } catch (TranslateException ex) {
+                throw new CompletionException(ex);
+            }
+        });
     }
 
-    class FacesResult {
-        List<Face> faces;
-        Bitmap fullPhoto;
-        public FacesResult(List<Face> faces, Bitmap fullPhoto) {
-            this.faces = faces;
-            this.fullPhoto = fullPhoto;
-        }
+    ZooModel<Image, float[]> getModel() {
+        return model;
     }
 
-    class PhotosResult {
-        Bitmap fullPhoto;
-        Bitmap croppedPhoto;
-        public PhotosResult(Bitmap fullPhoto, Bitmap croppedPhoto) {
-            this.fullPhoto = fullPhoto;
-            this.croppedPhoto = croppedPhoto;
-        }
+    /**
+     * The installed zipped model, null until the model is ready.
+     */
+    Path getModelPath() {
+        return modelPath;
     }
 
-    class FeaturesResult extends PhotosResult {
-        float[] features;
-        public FeaturesResult(Bitmap fullPhoto, Bitmap croppedPhoto, float[] features) {
-            super(fullPhoto, croppedPhoto);
-            this.features = features;
-        }
+    /**
+     * Embeds a cropped face on one of the pooled predictors once the model is ready. Safe to call from any thread,
+     * concurrent calls run in parallel up to the pool size.
+     */
+    public CompletableFuture<float[]> embed(Image croppedFace) {
+        return ready.thenCompose(ignored -> predictorPool.predictAsync(croppedFace));
     }
 
-    private final class FaceFeatureTranslator implements Translator<Image, float[]> {
-
-        FaceFeatureTranslator() {}
-
-        /** {@inheritDoc} */
-        @Override
-        public NDList processInput(TranslatorContext ctx, Image input) {
-            NDArray array = input.toNDArray(ctx.getNDManager(), Image.Flag.COLOR);
-            Pipeline pipeline = new Pipeline();
-            pipeline
-                    .add(new Resize(160))
-                    .add(new ToTensor())
-                    .add(
-                            new Normalize(
-                                    new float[] {127.5f / 255.0f, 127.5f / 255.0f, 127.5f / 255.0f},
-                                    new float[] {
-                                            128.0f / 255.0f, 128.0f / 255.0f, 128.0f / 255.0f
-                                    }));
+    private PredictorPool<Image, float[]> createPredictorPool(ZooModel<Image, float[]> model, int size) {
+        Log.i(TAG, "Create PredictorPool of " + size);
+        long time = System.currentTimeMillis();
+        // Blank face-sized image, enough to trigger the native initialisation of each predictor
+        Image warmUpImage = ImageFactory.getInstance().fromPixels(
+                new int[FaceFeatureTranslator.INPUT_SIZE * FaceFeatureTranslator.INPUT_SIZE],
+                FaceFeatureTranslator.INPUT_SIZE, FaceFeatureTranslator.INPUT_SIZE);
+        PredictorPool<Image, float[]> predictorPool = new PredictorPool<>(model, size, warmUpImage);
+        Log.i(TAG, "Create PredictorPool took " + (System.currentTimeMillis()-time) + " ms");
+        return predictorPool;
+    }
 
-            return pipeline.transform(new NDList(array));
+    /**
+     * One photo travelling through the loading pipeline, each stage fills in its part.
+     */
+    class PhotoJob {
+        final String fileUriPath;
+        final String filePath;
+        final long fileSize;
+        final long lastModified;
+        InputImage inputImage;
+        // Boxes in the decoded bitmap's coordinates
+        List<int[]> faces;
+        // Faces the detector found, before the multi-face size filter
+        int detectedFaces;
+        // Decoded subsampled, released to the pool once cropped
+        Bitmap fullPhoto;
+        Bitmap croppedPhoto;
+        int sampleSize = 1;
+        // Every cropped face, with its box in the original photo and its embedding
+        List<Image> faceImages;
+        List<int[]> faceBoxes;
+        List<float[]> faceFeatures;
+        // The first face's, the only one outside of multi-face mode
+        float[] features;
+        public PhotoJob(String fileUriPath, String filePath, long fileSize, long lastModified) {
+            this.fileUriPath = fileUriPath;
+            this.filePath = filePath;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
         }
+    }
 
-        /** {@inheritDoc} */
-        @Override
-        public float[] processOutput(TranslatorContext ctx, NDList list) {
-            NDList result = new NDList();
-            long numOutputs = list.singletonOrThrow().getShape().get(0);
-            for (int i = 0; i < numOutputs; i++) {
-                result.add(list.singletonOrThrow().get(i));
-            }
-            float[][] embeddings =
-                    result.stream().map(NDArray::toFloatArray).toArray(float[][]::new);
-            float[] feature = new float[embeddings.length];
-            for (int i = 0; i < embeddings.length; i++) {
-                feature[i] = embeddings[i][0];
-            }
-            return feature;
+    /**
+     * Indexes bioPhotos using each photo's position in the list as its id.
+     * Returns null for an empty list.
+     */
+    private PartitionedGallery buildGallery(List<BioPhoto> bioPhotos) {
+        long time = System.currentTimeMillis();
+        PartitionedGallery gallery = PartitionedGallery.fromBioPhotos(bioPhotos);
+        if (gallery != null) {
+            Log.i(TAG, String.format("Building gallery with %d templates of %d employees took %d ms",
+                    gallery.size(), gallery.getEmployeeCount(), System.currentTimeMillis() - time));
         }
+        return gallery;
     }
 
     /**
-     * Returns the biophoto that makes match with the sampleBioPhoto passed as parameter.
-     * Returns null if sampleBioPhoto is not found in the dataset
-     * @param attPhoto The sample photo to compare against the data set
-     * @param bioPhotos The dataset
-     * @return
+     * One centroid per employee, null for an empty list.
      */
-    private BioPhoto getBioPhotoMatch(AttPhoto attPhoto, List<BioPhoto> bioPhotos) {
-        List<BioPhotoMatch> matchedPhotos = new ArrayList<>();
-        for(BioPhoto bioPhoto: bioPhotos) {
-            float result = calculateSimilitude(attPhoto.getFeatures(), bioPhoto.getFeatures());
-            if (result >= featureThresholdForMatch) {
-                matchedPhotos.add(new BioPhotoMatch(result, bioPhoto));
-            }
+    private FusedGallery buildFusedGallery(List<BioPhoto> bioPhotos) {
+        long time = System.currentTimeMillis();
+        FusedGallery fusedGallery = FusedGallery.fromBioPhotos(bioPhotos, FUSION_OUTLIER_SIMILITUDE,
+                FUSION_RESCORE_CANDIDATES);
+        if (fusedGallery != null) {
+            Log.i(TAG, String.format("Fusing %d templates into %d took %d ms, %d outliers left out",
+                    fusedGallery.getRaw().size(), fusedGallery.getCentroids().size(),
+                    System.currentTimeMillis() - time, fusedGallery.getRejectedTemplates()));
         }
+        return fusedGallery;
+    }
 
-        if (matchedPhotos.isEmpty()) {
-            Log.i(TAG, "Not match");
+    /**
+     * Returns a BioPhoto of the closest employee in the AttPhoto's company regardless of threshold,
+     * with its similitude in matchScore[0], so the evaluator can tell how the outcome changes at
+     * other thresholds. Only the company's templates are scanned, or only its centroids with
+     * fusedGallery. With {@link PipelineSettings#isRecentMatchCacheEnabled()}, a punch close to a
+     * recent accepted one of the same company is verified 1:1 against that employee first, and
+     * only scans the company if that can't prove the employee is the best match, see
+     * {@link RecentMatchCache#lookup}. The cache's clock is the punch time, so replaying old
+     * AttPhotos expires entries as the terminal would have.
+     */
+    private BioPhoto getBestCandidate(AttPhoto attPhoto, PartitionedGallery gallery, FusedGallery fusedGallery,
+                                      List<BioPhoto> bioPhotos) {
+        int empresa = attPhoto.getEmpresa();
+        boolean recentMatchCache = pipelineSettings.isRecentMatchCacheEnabled();
+        long punchMillis = recentMatchCache ? punchMillis(attPhoto) : 0;
+        if (recentMatchCache && gallery != null
+                && recentMatches.lookup(empresa, attPhoto.getFeatures(), punchMillis, gallery, SCORE_MODE,
+                featureThresholdForMatch, matchEmpleado, matchScore)) {
+            return bioPhotos.get(gallery.getFirstSourceIndex(empresa, matchEmpleado[0]));
+        }
+        int count;
+        if (fusedGallery != null) {
+            count = fusedGallery.searchCompany(empresa, attPhoto.getFeatures(), 0.0f, SCORE_MODE,
+                    matchEmpleado, matchScore);
+        } else {
+            count = gallery == null ? 0 : gallery.searchCompany(empresa, attPhoto.getFeatures(), 0.0f,
+                    1, SCORE_MODE, matchEmpleado, matchScore);
+        }
+        if (count == 0) {
             return null;
         }
-
-        if (matchedPhotos.size() == 1) {
-            Log.i(TAG, "Single match");
-            return matchedPhotos.get(0).getBioPhoto();
+        if (recentMatchCache && matchScore[0] >= featureThresholdForMatch) {
+            recentMatches.put(empresa, matchEmpleado[0], attPhoto.getFeatures(), gallery, punchMillis);
         }
+        return bioPhotos.get(gallery.getFirstSourceIndex(empresa, matchEmpleado[0]));
+    }
 
-        // Resolve collision
-        Log.i(TAG, "Multiple match, resolving collision");
-        return matchedPhotos
-                .stream()
-                .sorted()
-                .findFirst()
-                .map(matchedPhoto -> matchedPhoto.getBioPhoto())
-                .orElse(null);
-    }
-
-    private static float calculateSimilitude(float[] feature1, float[] feature2) {
-        float ret = 0.0f;
-        float mod1 = 0.0f;
-        float mod2 = 0.0f;
-        int length = feature1.length;
-        for (int i = 0; i < length; ++i) {
-            ret += feature1[i] * feature2[i];
-            mod1 += feature1[i] * feature1[i];
-            mod2 += feature2[i] * feature2[i];
+    /**
+     * When the AttPhoto was taken, from its id, e.g. 20240619082918 in "52-20240619082918-62157.jpg".
+     * Falls back to now for ids that aren't a timestamp.
+     */
+    private static long punchMillis(AttPhoto attPhoto) {
+        try {
+            return LocalDateTime.parse(Long.toString(attPhoto.getId()), PUNCH_TIME_FORMAT)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return System.currentTimeMillis();
         }
-        return (float) ((ret / Math.sqrt(mod1) / Math.sqrt(mod2) + 1) / 2.0f);
     }
 }
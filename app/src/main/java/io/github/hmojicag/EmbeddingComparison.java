@@ -0,0 +1,91 @@
+package io.github.hmojicag;
+
+import java.util.List;
+
+/**
+ * Cosine similarity between the embeddings two models produced for the same inputs, e.g. the
+ * same network on two engines. Matching only depends on the direction of each embedding, so
+ * a minimum cosine close to 1 means the models are interchangeable.
+ */
+public class EmbeddingComparison {
+    /** Minimum cosine for two engines running the same network to be considered equivalent */
+    public static final float EQUIVALENCE_THRESHOLD = 0.999f;
+
+    private final int count;
+    private final float minCosine;
+    private final float meanCosine;
+    private final int minIndex;
+
+    private EmbeddingComparison(int count, float minCosine, float meanCosine, int minIndex) {
+        this.count = count;
+        this.minCosine = minCosine;
+        this.meanCosine = meanCosine;
+        this.minIndex = minIndex;
+    }
+
+    /**
+     * @param expected Embeddings of the reference model
+     * @param actual Embeddings of the other model, same order and length
+     */
+    public static EmbeddingComparison compare(List<float[]> expected, List<float[]> actual) {
+        if (expected.size() != actual.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d embeddings but got %d", expected.size(), actual.size()));
+        }
+        float min = 1.0f;
+        int minIndex = -1;
+        double sum = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            float[] a = expected.get(i);
+            float[] b = actual.get(i);
+            if (a.length != b.length) {
+                throw new IllegalArgumentException(String.format(
+                        "Embedding %d has %d features instead of %d", i, b.length, a.length));
+            }
+            float normA = Similarity.norm(a);
+            float normB = Similarity.norm(b);
+            float cosine = normA == 0.0f || normB == 0.0f
+                    ? 0.0f : Similarity.dot(a, 0, b, 0, a.length) / (normA * normB);
+            sum += cosine;
+            if (minIndex < 0 || cosine < min) {
+                min = cosine;
+                minIndex = i;
+            }
+        }
+        float mean = expected.isEmpty() ? 1.0f : (float) (sum / expected.size());
+        return new EmbeddingComparison(expected.size(), min, mean, minIndex);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public float getMinCosine() {
+        return minCosine;
+    }
+
+    public float getMeanCosine() {
+        return meanCosine;
+    }
+
+    /**
+     * Index of the least similar pair, -1 if there were none.
+     */
+    public int getMinIndex() {
+        return minIndex;
+    }
+
+    public boolean isEquivalent() {
+        return isEquivalent(EQUIVALENCE_THRESHOLD);
+    }
+
+    public boolean isEquivalent(float minCosineThreshold) {
+        return minCosine >= minCosineThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d minCosine=%.6f meanCosine=%.6f minIndex=%d",
+                count, minCosine, meanCosine, minIndex);
+    }
+}
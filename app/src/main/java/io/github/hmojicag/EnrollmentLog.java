@@ -0,0 +1,628 @@
+package io.github.hmojicag;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe enrolled templates: a snapshot plus an append-only log of the changes made since.
+ * <pre>
+ * log (little endian)
+ *   header: int magic, int version, int dimension, short modelIdLength, byte[] modelId (UTF-8)
+ *   records: int payloadLength, int crc32(payload),
+ *            payload: long seq, byte type, int empresa, int empleado, float[dimension] features
+ *                     (no features for DELETE)
+ * snapshot (little endian)
+ *   header as the log's with another magic, long lastSeq, int count,
+ *   count x (int empresa, int empleado, float[dimension] features), int crc32(everything before)
+ * </pre>
+ * Snapshot entries are fixed width, so open maps the snapshot and copies the features of each
+ * entry straight out of the mapping, with no read buffer in between.
+ * Every change is one log record, so enrolling an employee costs one small append. Replay on
+ * open applies the records newer than the snapshot and stops at the first torn or corrupt
+ * record, which is cut off: a crash loses at most the change being written. A truncated or
+ * corrupt snapshot, which only a failing storage can produce since it is moved into place once
+ * complete, is dropped and the log replayed on its own, see {@link #getDroppedSnapshotBytes()}.
+ * <p>
+ * {@link #compact()} folds the log into a new snapshot. The templates are copied under the lock,
+ * the snapshot is written without it, and only the records appended meanwhile are copied to a
+ * new log under the lock again, so changes and reads wait at most for that short copy. Both
+ * files are replaced with atomic moves, and the snapshot's lastSeq makes replay skip records it
+ * already holds, so a crash at any point of a compaction loses nothing.
+ * Thread-safe.
+ */
+public class EnrollmentLog implements Closeable {
+    static final int LOG_MAGIC = 0x4c415746; // "FWAL" read little endian
+    static final int SNAPSHOT_MAGIC = 0x464e5346; // "FSNF"
+    static final int VERSION = 1;
+    static final byte ADD = 1;
+    static final byte UPDATE = 2;
+    static final byte DELETE = 3;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int PAYLOAD_HEADER_SIZE = 17;
+    private static final int IO_BUFFER_SIZE = 1 << 20;
+
+    private final Path logPath;
+    private final Path snapshotPath;
+    private final String modelId;
+    private final int dimension;
+    private final boolean syncWrites;
+    // Templates of each employee by PartitionedGallery.employeeKey, in enrollment order
+    private final Map<Long, List<float[]>> templates = new LinkedHashMap<>();
+    private final ByteBuffer recordBuffer;
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long nextSeq = 1;
+    private int logRecords;
+    private long truncatedBytes;
+    private long droppedSnapshotBytes;
+    private long replayMillis;
+    private long compactThresholdBytes = Long.MAX_VALUE;
+    private ExecutorService compactor;
+    private boolean compacting;
+    private boolean compactScheduled;
+    private ChangeListener changeListener;
+
+    /**
+     * Told about every add, update and delete once it is logged, not about replayed records.
+     */
+    public interface ChangeListener {
+        /**
+         * Called with the log's lock held, keep it short.
+         */
+        void onEnrollmentChanged(int empresa, int empleado);
+    }
+
+    private EnrollmentLog(Path basePath, String modelId, int dimension, boolean syncWrites) {
+        this.logPath = basePath.resolveSibling(basePath.getFileName() + ".log");
+        this.snapshotPath = basePath.resolveSibling(basePath.getFileName() + ".snapshot");
+        this.modelId = modelId;
+        this.dimension = dimension;
+        this.syncWrites = syncWrites;
+        this.recordBuffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + PAYLOAD_HEADER_SIZE + 4 * dimension)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Loads the snapshot and replays the log. Files written for a different model id or dimension
+     * are discarded, starting an empty log.
+     * @param basePath The files are basePath + ".snapshot" and basePath + ".log"
+     * @param syncWrites Force every record to storage before returning. Without it a crash of the
+     *                   device, not just of the app, may lose the most recent changes.
+     */
+    public static EnrollmentLog open(Path basePath, String modelId, int dimension, boolean syncWrites)
+            throws IOException {
+        EnrollmentLog log = new EnrollmentLog(basePath, modelId, dimension, syncWrites);
+        long time = System.currentTimeMillis();
+        long lastSeq = log.readSnapshot();
+        log.replay(lastSeq);
+        log.replayMillis = System.currentTimeMillis() - time;
+        return log;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Time open took to load the snapshot and replay the log.
+     */
+    public long getReplayMillis() {
+        return replayMillis;
+    }
+
+    /**
+     * Bytes of torn or corrupt records cut off the log's tail when it was opened.
+     */
+    public long getTruncatedBytes() {
+        return truncatedBytes;
+    }
+
+    /**
+     * Size of a truncated or corrupt snapshot dropped when the log was opened, 0 if there was
+     * none. The log then only holds the changes made since that snapshot, the caller has to
+     * enroll the rest again.
+     */
+    public long getDroppedSnapshotBytes() {
+        return droppedSnapshotBytes;
+    }
+
+    /**
+     * Records in the log, i.e. changes not folded into the snapshot yet.
+     */
+    public synchronized int getLogRecords() {
+        return logRecords;
+    }
+
+    public synchronized long getLogBytes() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Compacts on a background thread whenever the log grows past thresholdBytes.
+     */
+    public synchronized void setCompactThresholdBytes(long thresholdBytes) {
+        this.compactThresholdBytes = thresholdBytes;
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "enrollment-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public synchronized void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Adds a template to the employee's.
+     */
+    public synchronized void add(int empresa, int empleado, float[] features) throws IOException {
+        float[] copy = checkedCopy(features);
+        append(ADD, empresa, empleado, copy);
+        apply(ADD, empresa, empleado, copy);
+        notifyChanged(empresa, empleado);
+    }
+
+    /**
+     * Replaces every template of the employee with this one.
+     */
+    public synchronized void update(int empresa, int empleado, float[] features) throws IOException {
+        float[] copy = checkedCopy(features);
+        append(UPDATE, empresa, empleado, copy);
+        apply(UPDATE, empresa, empleado, copy);
+        notifyChanged(empresa, empleado);
+    }
+
+    /**
+     * Removes every template of the employee.
+     * @return false if the employee wasn't enrolled, nothing is logged then
+     */
+    public synchronized boolean delete(int empresa, int empleado) throws IOException {
+        if (!templates.containsKey(PartitionedGallery.employeeKey(empresa, empleado))) {
+            return false;
+        }
+        append(DELETE, empresa, empleado, null);
+        apply(DELETE, empresa, empleado, null);
+        notifyChanged(empresa, empleado);
+        return true;
+    }
+
+    /**
+     * The employee's templates, empty if not enrolled. The arrays must not be modified.
+     */
+    public synchronized List<float[]> getTemplates(int empresa, int empleado) {
+        List<float[]> list = templates.get(PartitionedGallery.employeeKey(empresa, empleado));
+        return list == null ? Collections.<float[]>emptyList() : new ArrayList<>(list);
+    }
+
+    public synchronized int getEmployeeCount() {
+        return templates.size();
+    }
+
+    /**
+     * Every enrolled template, employee by employee. The features must not be modified.
+     */
+    public synchronized List<BioPhoto> getBioPhotos() {
+        List<BioPhoto> bioPhotos = new ArrayList<>();
+        for (Map.Entry<Long, List<float[]>> entry : templates.entrySet()) {
+            int empresa = (int) (entry.getKey() >> 32);
+            int empleado = (int) (long) entry.getKey();
+            for (float[] features : entry.getValue()) {
+                bioPhotos.add(new BioPhoto(empresa, empleado, null, null, features));
+            }
+        }
+        return bioPhotos;
+    }
+
+    /**
+     * Forces appended records to storage, for logs opened without syncWrites.
+     */
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Writes a snapshot of the current templates and drops the log records it covers.
+     * Appends and reads keep working while the snapshot is written. Does nothing if another
+     * compaction is running.
+     */
+    public void compact() throws IOException {
+        Map<Long, List<float[]>> snapshot;
+        long lastSeq;
+        long logOffset;
+        synchronized (this) {
+            if (compacting || channel == null) {
+                return;
+            }
+            compacting = true;
+            snapshot = new LinkedHashMap<>();
+            for (Map.Entry<Long, List<float[]>> entry : templates.entrySet()) {
+                snapshot.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            lastSeq = nextSeq - 1;
+            logOffset = channel.size();
+        }
+        try {
+            writeSnapshot(snapshot, lastSeq);
+            synchronized (this) {
+                rewriteLogFrom(logOffset);
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = compactor;
+            compactor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private float[] checkedCopy(float[] features) {
+        if (features.length != dimension) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d features but got %d", dimension, features.length));
+        }
+        return Arrays.copyOf(features, dimension);
+    }
+
+    private void notifyChanged(int empresa, int empleado) {
+        if (changeListener != null) {
+            changeListener.onEnrollmentChanged(empresa, empleado);
+        }
+    }
+
+    private void apply(byte type, int empresa, int empleado, float[] features) {
+        long key = PartitionedGallery.employeeKey(empresa, empleado);
+        if (type == DELETE) {
+            templates.remove(key);
+            return;
+        }
+        List<float[]> list = templates.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            templates.put(key, list);
+        } else if (type == UPDATE) {
+            list.clear();
+        }
+        list.add(features);
+    }
+
+    private void append(byte type, int empresa, int empleado, float[] features) throws IOException {
+        ByteBuffer buffer = recordBuffer;
+        buffer.clear();
+        buffer.position(RECORD_HEADER_SIZE);
+        buffer.putLong(nextSeq).put(type).putInt(empresa).putInt(empleado);
+        if (features != null) {
+            for (float feature : features) {
+                buffer.putFloat(feature);
+            }
+        }
+        int payloadLength = buffer.position() - RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(buffer.array(), RECORD_HEADER_SIZE, payloadLength);
+        buffer.putInt(0, payloadLength);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        long end = channel.size();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, end + buffer.position());
+            }
+            if (syncWrites) {
+                channel.force(false);
+            }
+        } catch (IOException ex) {
+            // Don't leave half a record for the next append to be written after
+            channel.truncate(end);
+            throw ex;
+        }
+        nextSeq++;
+        logRecords++;
+        if (channel.size() > compactThresholdBytes && compactor != null && !compacting && !compactScheduled) {
+            compactScheduled = true;
+            compactor.execute(() -> {
+                synchronized (this) {
+                    compactScheduled = false;
+                }
+                try {
+                    compact();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Maps the snapshot and copies each fixed-width entry's features straight out of the mapping.
+     * @return the lastSeq of the snapshot, 0 without a usable one
+     */
+    private long readSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+        ByteBuffer header = header(SNAPSHOT_MAGIC);
+        ByteBuffer data;
+        try (FileChannel in = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            // The mapping stays valid once the channel is closed
+            data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (data.capacity() < header.remaining() + 16) {
+            return dropSnapshot(data.capacity());
+        }
+        if (!header.equals(data.slice().limit(header.remaining()))) {
+            // Another model's templates, they can't be matched against this model's
+            Files.delete(snapshotPath);
+            Files.deleteIfExists(logPath);
+            return 0;
+        }
+        int entrySize = 8 + 4 * dimension;
+        data.position(header.remaining());
+        long lastSeq = data.getLong();
+        int count = data.getInt();
+        int checksumOffset = data.capacity() - 4;
+        if (count < 0 || (long) data.position() + (long) count * entrySize != checksumOffset) {
+            return dropSnapshot(data.capacity());
+        }
+        ByteBuffer covered = data.duplicate();
+        covered.position(0);
+        covered.limit(checksumOffset);
+        CRC32 checksum = new CRC32();
+        checksum.update(covered);
+        if (data.getInt(checksumOffset) != (int) checksum.getValue()) {
+            return dropSnapshot(data.capacity());
+        }
+        for (int i = 0; i < count; i++) {
+            int empresa = data.getInt();
+            int empleado = data.getInt();
+            float[] features = new float[dimension];
+            data.asFloatBuffer().get(features);
+            data.position(data.position() + 4 * dimension);
+            apply(ADD, empresa, empleado, features);
+        }
+        nextSeq = lastSeq + 1;
+        return lastSeq;
+    }
+
+    /**
+     * Deletes a truncated or corrupt snapshot, so the log is replayed on its own and the next
+     * compaction writes a good one. The templates only the snapshot held are gone.
+     * @return 0, the lastSeq to replay the log from
+     */
+    private long dropSnapshot(long size) throws IOException {
+        droppedSnapshotBytes = size;
+        Files.delete(snapshotPath);
+        return 0;
+    }
+
+    private void writeSnapshot(Map<Long, List<float[]>> snapshot, long lastSeq) throws IOException {
+        Path tmpPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        int count = 0;
+        for (List<float[]> list : snapshot.values()) {
+            count += list.size();
+        }
+        int entrySize = 8 + 4 * dimension;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(IO_BUFFER_SIZE, entrySize + 4)).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 checksum = new CRC32();
+        try (FileChannel out = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.put(header(SNAPSHOT_MAGIC)).putLong(lastSeq).putInt(count);
+            for (Map.Entry<Long, List<float[]>> entry : snapshot.entrySet()) {
+                for (float[] features : entry.getValue()) {
+                    if (buffer.remaining() < entrySize) {
+                        flush(out, buffer, checksum);
+                    }
+                    buffer.putInt((int) (entry.getKey() >> 32)).putInt((int) (long) entry.getKey());
+                    buffer.asFloatBuffer().put(features);
+                    buffer.position(buffer.position() + 4 * dimension);
+                }
+            }
+            flush(out, buffer, checksum);
+            buffer.putInt((int) checksum.getValue());
+            flush(out, buffer, null);
+            out.force(true);
+        }
+        Files.move(tmpPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buffer, CRC32 checksum) throws IOException {
+        buffer.flip();
+        if (checksum != null) {
+            checksum.update(buffer.array(), 0, buffer.limit());
+        }
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Opens the log, applies its records newer than lastSeq and cuts off a torn or corrupt tail.
+     */
+    private void replay(long lastSeq) throws IOException {
+        channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = channel.size();
+        ByteBuffer header = header(LOG_MAGIC);
+        int maxPayload = PAYLOAD_HEADER_SIZE + 4 * dimension;
+        ChunkReader reader = new ChunkReader(channel, Math.max(IO_BUFFER_SIZE, RECORD_HEADER_SIZE + maxPayload));
+        ByteBuffer data = reader.buffer;
+        if (!reader.fill(header.remaining()) || !header.equals(data.slice().limit(header.remaining()))) {
+            // New, foreign or torn header: start a fresh log
+            writeHeader(channel);
+            return;
+        }
+        data.position(data.position() + header.remaining());
+        long validEnd = header.remaining();
+        while (reader.fill(RECORD_HEADER_SIZE)) {
+            int payloadLength = data.getInt(data.position());
+            int expectedCrc = data.getInt(data.position() + 4);
+            if (payloadLength < PAYLOAD_HEADER_SIZE || payloadLength > maxPayload
+                    || !reader.fill(RECORD_HEADER_SIZE + payloadLength)) {
+                break;
+            }
+            int start = data.position();
+            crc.reset();
+            crc.update(data.array(), start + RECORD_HEADER_SIZE, payloadLength);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            data.position(start + RECORD_HEADER_SIZE);
+            long seq = data.getLong();
+            byte type = data.get();
+            int empresa = data.getInt();
+            int empleado = data.getInt();
+            boolean hasFeatures = type == ADD || type == UPDATE;
+            if ((!hasFeatures && type != DELETE) || hasFeatures != (payloadLength == maxPayload)) {
+                data.position(start);
+                break;
+            }
+            float[] features = null;
+            if (hasFeatures) {
+                features = new float[dimension];
+                data.asFloatBuffer().get(features);
+                data.position(data.position() + 4 * dimension);
+            }
+            logRecords++;
+            validEnd += RECORD_HEADER_SIZE + payloadLength;
+            if (seq > lastSeq) {
+                apply(type, empresa, empleado, features);
+                nextSeq = Math.max(nextSeq, seq + 1);
+            }
+        }
+        if (validEnd < size) {
+            truncatedBytes = size - validEnd;
+            channel.truncate(validEnd);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Replaces the log with one holding only the records from offset on.
+     */
+    private void rewriteLogFrom(long offset) throws IOException {
+        Path tmpPath = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+        int tailRecords = 0;
+        ByteBuffer tail = read(offset, (int) (channel.size() - offset));
+        for (int position = 0; position < tail.limit(); tailRecords++) {
+            position += RECORD_HEADER_SIZE + tail.getInt(position);
+        }
+        try (FileChannel out = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out);
+            long position = out.size();
+            while (tail.hasRemaining()) {
+                position += out.write(tail, position);
+            }
+            out.force(false);
+        }
+        channel.close();
+        Files.move(tmpPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logRecords = tailRecords;
+    }
+
+    private ByteBuffer header(int magic) {
+        byte[] modelIdBytes = modelId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(14 + modelIdBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(magic).putInt(VERSION).putInt(dimension)
+                .putShort((short) modelIdBytes.length).put(modelIdBytes);
+        header.flip();
+        return header;
+    }
+
+    private void writeHeader(FileChannel out) throws IOException {
+        out.truncate(0);
+        ByteBuffer header = header(LOG_MAGIC);
+        while (header.hasRemaining()) {
+            out.write(header, header.position());
+        }
+        out.force(false);
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+            // Keep reading until full or end of file
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Sequential reads of a file through a buffer that is refilled as it is consumed.
+     */
+    private static class ChunkReader {
+        final ByteBuffer buffer;
+        private final FileChannel in;
+        private long position;
+
+        ChunkReader(FileChannel in, int capacity) {
+            this.in = in;
+            this.buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+        }
+
+        /**
+         * Makes at least bytes bytes remaining in the buffer, moving them to its start if needed.
+         * @return false if the file ends first
+         */
+        boolean fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            buffer.compact();
+            int read;
+            while (buffer.hasRemaining() && (read = in.read(buffer, position)) > 0) {
+                position += read;
+            }
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+    }
+}
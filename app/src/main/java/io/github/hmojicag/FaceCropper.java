@@ -0,0 +1,134 @@
+package io.github.hmojicag;
+
+/**
+ * Crops a face box out of ARGB pixels straight into a fixed-size square target buffer, so the
+ * crop never exists as a bitmap of its own and the model's input doesn't have to be resized again.
+ * <p>
+ * The box is grown by margin times its width/height on every side, then clamped to the image.
+ * The region's pixels are read into a reusable buffer (e.g. with Bitmap.getPixels) and bilinearly
+ * resampled into the target, which is also reused, so a cropper allocates only when it meets a
+ * larger region than before. Not thread-safe, use one per thread.
+ */
+public class FaceCropper {
+    private final int targetSize;
+    private final float margin;
+    private final int[] target;
+    private int[] regionPixels = new int[0];
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+
+    /**
+     * @param targetSize Side of the square output, FaceFeatureTranslator.INPUT_SIZE for the model
+     * @param margin Fraction of the box's width/height added on each side, 0 crops the box as is
+     */
+    public FaceCropper(int targetSize, float margin) {
+        if (targetSize < 1) {
+            throw new IllegalArgumentException("targetSize must be at least 1");
+        }
+        if (margin < 0) {
+            throw new IllegalArgumentException("margin can't be negative");
+        }
+        this.targetSize = targetSize;
+        this.margin = margin;
+        this.target = new int[targetSize * targetSize];
+    }
+
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    /**
+     * Sets the region to crop from the face box, in the image's coordinates.
+     * @return false if nothing of the box lies inside the image
+     */
+    public boolean setBox(int boxLeft, int boxTop, int boxRight, int boxBottom, int imageWidth, int imageHeight) {
+        float marginX = (boxRight - boxLeft) * margin;
+        float marginY = (boxBottom - boxTop) * margin;
+        left = Math.max(0, Math.round(boxLeft - marginX));
+        top = Math.max(0, Math.round(boxTop - marginY));
+        int right = Math.min(imageWidth, Math.round(boxRight + marginX));
+        int bottom = Math.min(imageHeight, Math.round(boxBottom + marginY));
+        width = Math.max(0, right - left);
+        height = Math.max(0, bottom - top);
+        return width > 0 && height > 0;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Buffer for the region's pixels, row by row with a stride of {@link #getWidth()}.
+     * Grown on demand, never shrunk.
+     */
+    public int[] getRegionPixels() {
+        if (regionPixels.length < width * height) {
+            regionPixels = new int[width * height];
+        }
+        return regionPixels;
+    }
+
+    /**
+     * Copies the region out of a whole image and resamples it, see {@link #crop()}.
+     */
+    public int[] crop(int[] imagePixels, int imageWidth) {
+        int[] region = getRegionPixels();
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(imagePixels, (top + y) * imageWidth + left, region, y * width, width);
+        }
+        return crop();
+    }
+
+    /**
+     * Bilinearly resamples the region pixels into the target.
+     * @return the target buffer, overwritten by the next call
+     */
+    public int[] crop() {
+        int[] region = regionPixels;
+        float scaleX = (float) width / targetSize;
+        float scaleY = (float) height / targetSize;
+        for (int y = 0; y < targetSize; y++) {
+            // Pixel centers map onto pixel centers
+            float sy = Math.max(0.0f, Math.min(height - 1, (y + 0.5f) * scaleY - 0.5f));
+            int y0 = (int) sy;
+            int y1 = Math.min(y0 + 1, height - 1);
+            float fy = sy - y0;
+            int row0 = y0 * width;
+            int row1 = y1 * width;
+            for (int x = 0; x < targetSize; x++) {
+                float sx = Math.max(0.0f, Math.min(width - 1, (x + 0.5f) * scaleX - 0.5f));
+                int x0 = (int) sx;
+                int x1 = Math.min(x0 + 1, width - 1);
+                float fx = sx - x0;
+                target[y * targetSize + x] = blend(
+                        region[row0 + x0], region[row0 + x1], region[row1 + x0], region[row1 + x1], fx, fy);
+            }
+        }
+        return target;
+    }
+
+    private static int blend(int p00, int p01, int p10, int p11, float fx, float fy) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            float top = ((p00 >>> shift) & 0xff) * (1 - fx) + ((p01 >>> shift) & 0xff) * fx;
+            float bottom = ((p10 >>> shift) & 0xff) * (1 - fx) + ((p11 >>> shift) & 0xff) * fx;
+            int channel = Math.round(top * (1 - fy) + bottom * fy);
+            result |= (channel & 0xff) << shift;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.hmojicag;
+
+import java.nio.file.Path;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.repository.zoo.Criteria;
+import ai.djl.training.util.ProgressBar;
+
+/**
+ * Criteria for the face_feature model on any {@link InferenceEngine}. Shared by the app and
+ * the benchmarks so both load the model the same way.
+ */
+public final class FaceFeatureModels {
+    public static final String MODEL_NAME = "face_feature";
+
+    private FaceFeatureModels() {}
+
+    /**
+     * @param modelPath The zipped model for engine, containing face_feature.pt or face_feature.onnx
+     */
+    public static Criteria<Image, float[]> criteria(InferenceEngine engine, Path modelPath) {
+        return Criteria.builder()
+                .setTypes(Image.class, float[].class)
+                .optModelPath(modelPath)
+                .optModelName(MODEL_NAME) // specify model file prefix
+                .optTranslator(new FaceFeatureTranslator())
+                .optProgress(new ProgressBar())
+                .optEngine(engine.getEngineName())
+                .build();
+    }
+}
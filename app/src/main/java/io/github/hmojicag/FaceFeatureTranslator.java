@@ -0,0 +1,90 @@
+package io.github.hmojicag;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.transform.Normalize;
+import ai.djl.modality.cv.transform.Resize;
+import ai.djl.modality.cv.transform.ToTensor;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.translate.Batchifier;
+import ai.djl.translate.Pipeline;
+import ai.djl.translate.Translator;
+import ai.djl.translate.TranslatorContext;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Translator for the face_feature model: 160x160 normalized RGB in, embedding out.
+ * Every input is resized to the same shape so inputs can be stacked for
+ * {@link ai.djl.inference.Predictor#batchPredict(java.util.List)}.
+ */
+final class FaceFeatureTranslator implements Translator<Image, float[]> {
+    static final int INPUT_SIZE = 160;
+
+    private final Pipeline pipeline;
+    private final boolean normalize;
+
+    FaceFeatureTranslator() {
+        this(false);
+    }
+
+    /**
+     * @param normalize L2 normalize embeddings before returning them. Similitudes are unchanged,
+     *                  since every matcher normalizes anyway, but stored features become unit length.
+     */
+    FaceFeatureTranslator(boolean normalize) {
+        this.normalize = normalize;
+        pipeline = new Pipeline();
+        pipeline
+                .add(new Resize(INPUT_SIZE))
+                .add(new ToTensor())
+                .add(
+                        new Normalize(
+                                new float[] {127.5f / 255.0f, 127.5f / 255.0f, 127.5f / 255.0f},
+                                new float[] {
+                                        128.0f / 255.0f, 128.0f / 255.0f, 128.0f / 255.0f
+                                }));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public NDList processInput(TranslatorContext ctx, Image input) {
+        NDArray array = input.toNDArray(ctx.getNDManager(), Image.Flag.COLOR);
+        return pipeline.transform(new NDList(array));
+    }
+
+    /**
+     * Reads the [D] embedding (or the first column of a [D, K] output) with a single copy out
+     * of the native tensor, instead of one NDArray slice and one float[] per element.
+     */
+    @Override
+    public float[] processOutput(TranslatorContext ctx, NDList list) {
+        NDArray output = list.singletonOrThrow();
+        Shape shape = output.getShape();
+        int length = (int) shape.get(0);
+        int stride = length == 0 ? 1 : (int) (shape.size() / length);
+        FloatBuffer buffer = output.toByteBuffer().asFloatBuffer();
+        float[] feature = new float[length];
+        if (stride == 1) {
+            buffer.get(feature);
+        } else {
+            for (int i = 0; i < length; i++) {
+                feature[i] = buffer.get(i * stride);
+            }
+        }
+        if (normalize) {
+            Similarity.normalize(feature, feature, 0);
+        }
+        return feature;
+    }
+
+    /**
+     * Stacks the [3, 160, 160] inputs into [N, 3, 160, 160] and splits the [N, D] output
+     * back into one [D] NDList per image.
+     */
+    @Override
+    public Batchifier getBatchifier() {
+        return Batchifier.STACK;
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.hmojicag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One face found in a photo with its best candidate in the photo's company, regardless of
+ * threshold. The box is in the original photo's coordinates.
+ */
+public class FaceMatch {
+    private final int[] box;
+    private final int empleado;
+    private final float score;
+
+    public FaceMatch(int[] box, int empleado, float score) {
+        this.box = box;
+        this.empleado = empleado;
+        this.score = score;
+    }
+
+    /**
+     * Matches every face of a photo punched at empresa in one pass over the company's templates,
+     * see {@link PartitionedGallery#searchCompanyBest}.
+     * @param boxes left, top, right, bottom of each face, in the same order as features
+     * @param gallery null if nobody is enrolled
+     */
+    public static List<FaceMatch> matchAll(PartitionedGallery gallery, int empresa, List<int[]> boxes,
+                                           List<float[]> features, PartitionedGallery.ScoreMode mode) {
+        int faces = features.size();
+        int[] empleados = new int[faces];
+        float[] scores = new float[faces];
+        if (gallery == null) {
+            Arrays.fill(scores, -1.0f);
+        } else {
+            gallery.searchCompanyBest(empresa, features.toArray(new float[faces][]), mode, empleados, scores);
+        }
+        List<FaceMatch> matches = new ArrayList<>(faces);
+        for (int i = 0; i < faces; i++) {
+            matches.add(new FaceMatch(boxes.get(i), empleados[i], scores[i]));
+        }
+        return matches;
+    }
+
+    /**
+     * @return left, top, right, bottom
+     */
+    public int[] getBox() {
+        return box;
+    }
+
+    /**
+     * Only meaningful if {@link #hasCandidate()}.
+     */
+    public int getEmpleado() {
+        return empleado;
+    }
+
+    /**
+     * Similitude of the candidate, -1 if there is none.
+     */
+    public float getScore() {
+        return score;
+    }
+
+    public boolean hasCandidate() {
+        return score >= 0.0f;
+    }
+
+    public boolean isAccepted(float threshold) {
+        return hasCandidate() && score >= threshold;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%d,%d,%d,%d] %s", box[0], box[1], box[2], box[3],
+                hasCandidate() ? String.format("%d %.4f", empleado, score) : "none");
+    }
+}
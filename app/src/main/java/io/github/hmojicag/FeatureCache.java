@@ -0,0 +1,226 @@
+package io.github.hmojicag;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detection box and embedding of every photo already processed, keyed by file path and
+ * validated by the file's size and last modified time. A photo whose fingerprint still matches
+ * can skip decoding, detection and embedding entirely.
+ * Photos where no single face was found are remembered too, with null features, so they are
+ * not re-detected on every run.
+ * <p>
+ * Entries are only valid for the model and the preprocessing (decode size, crop size, margin,
+ * resampling) that produced them, both are kept in the header and a cache written with others
+ * loads empty.
+ * <p>
+ * The whole cache is held in memory and written back with {@link #save()}.
+ * Safe to update from several pipeline threads.
+ */
+public class FeatureCache {
+    private static final int MAGIC = 0x48434546; // "FECH" read little endian
+    // 2: preprocessing fingerprint in the header
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private final String modelId;
+    private final String preprocessing;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private FeatureCache(Path path, String modelId, String preprocessing) {
+        this.path = path;
+        this.modelId = modelId;
+        this.preprocessing = preprocessing;
+    }
+
+    /**
+     * Reads the cache at path. A missing, corrupt, older version, other-model or
+     * other-preprocessing file gives an empty cache.
+     * @param preprocessing Fingerprint of how photos are decoded and cropped before embedding
+     */
+    public static FeatureCache load(Path path, String modelId, String preprocessing) {
+        FeatureCache cache = new FeatureCache(path, modelId, preprocessing);
+        if (!Files.exists(path)) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !modelId.equals(in.readUTF())
+                    || !preprocessing.equals(in.readUTF())) {
+                return cache;
+            }
+            int count = in.readInt();
+            byte[] featureBytes = new byte[0];
+            for (int i = 0; i < count; i++) {
+                String filePath = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int[] box = null;
+                float[] features = null;
+                if (in.readBoolean()) {
+                    box = new int[] {in.readInt(), in.readInt(), in.readInt(), in.readInt()};
+                    int dimension = in.readInt();
+                    if (featureBytes.length != dimension * 4) {
+                        featureBytes = new byte[dimension * 4];
+                    }
+                    in.readFully(featureBytes);
+                    features = new float[dimension];
+                    ByteBuffer.wrap(featureBytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(features);
+                }
+                cache.entries.put(filePath, new Entry(size, lastModified, box, features));
+            }
+        } catch (EOFException ex) {
+            // Truncated file, keep whatever was read completely
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the entry for filePath if its fingerprint still matches, null otherwise
+     */
+    public Entry get(String filePath, long size, long lastModified) {
+        Entry entry = entries.get(filePath);
+        if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * @param box left, top, right, bottom of the detected face
+     */
+    public void put(String filePath, long size, long lastModified, int[] box, float[] features) {
+        entries.put(filePath, new Entry(size, lastModified, box, features));
+        dirty = true;
+    }
+
+    /**
+     * Remembers that filePath has no usable face.
+     */
+    public void putSkipped(String filePath, long size, long lastModified) {
+        put(filePath, size, lastModified, null, null);
+    }
+
+    /**
+     * Evicts the entries under directory whose file was not seen in the latest listing.
+     * @return number of entries evicted
+     */
+    public int evictMissing(Path directory, Set<String> seenPaths) {
+        String prefix = directory.toString() + File.separator;
+        int evicted = 0;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String filePath = iterator.next().getKey();
+            if (filePath.startsWith(prefix) && !seenPaths.contains(filePath)) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            dirty = true;
+        }
+        return evicted;
+    }
+
+    /**
+     * Writes the cache if anything changed since it was loaded or last saved.
+     * The file is replaced atomically.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(modelId);
+            out.writeUTF(preprocessing);
+            Map<String, Entry> snapshot = new HashMap<>(entries);
+            out.writeInt(snapshot.size());
+            ByteBuffer featureBytes = ByteBuffer.allocate(0);
+            for (Map.Entry<String, Entry> mapEntry : snapshot.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                out.writeUTF(mapEntry.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeBoolean(entry.features != null);
+                if (entry.features != null) {
+                    for (int coordinate : entry.box) {
+                        out.writeInt(coordinate);
+                    }
+                    out.writeInt(entry.features.length);
+                    if (featureBytes.capacity() != entry.features.length * 4) {
+                        featureBytes = ByteBuffer.allocate(entry.features.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+                    }
+                    featureBytes.clear();
+                    featureBytes.asFloatBuffer().put(entry.features);
+                    out.write(featureBytes.array());
+                }
+            }
+        } catch (IOException ex) {
+            dirty = true;
+            throw ex;
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final int[] box;
+        private final float[] features;
+
+        Entry(long size, long lastModified, int[] box, float[] features) {
+            if (features != null && (box == null || box.length != 4)) {
+                throw new IllegalArgumentException("A face entry needs a left, top, right, bottom box");
+            }
+            this.size = size;
+            this.lastModified = lastModified;
+            this.box = box;
+            this.features = features;
+        }
+
+        /**
+         * @return false for photos where no single face was found
+         */
+        public boolean hasFace() {
+            return features != null;
+        }
+
+        /**
+         * @return left, top, right, bottom of the face, null when {@link #hasFace()} is false
+         */
+        public int[] getBox() {
+            return box;
+        }
+
+        public float[] getFeatures() {
+            return features;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.github.hmojicag;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gallery scanning one fused template per employee instead of every enrollment photo.
+ * <p>
+ * The templates of each (empresa, empleado) are L2 normalized and averaged into a centroid.
+ * With three templates or more, a template is left out of the centroid as an outlier when its
+ * similitude to the centroid of the employee's other templates is below outlierSimilitude,
+ * e.g. a badly lit or mislabelled photo. If that would leave nothing, every template is kept.
+ * <p>
+ * Searches scan the centroids for the company's top candidates, then re-score only those
+ * against their raw templates with {@link PartitionedGallery#verify}. Scores are therefore on
+ * the same scale as a raw search and the same threshold applies.
+ * Immutable once built, safe to search from several threads.
+ */
+public class FusedGallery {
+    private final PartitionedGallery centroids;
+    private final PartitionedGallery raw;
+    private final int rescoreCandidates;
+    private final int rejectedTemplates;
+    private final ThreadLocal<int[]> candidateEmpleados;
+    private final ThreadLocal<float[]> candidateScores;
+
+    private FusedGallery(PartitionedGallery centroids, PartitionedGallery raw, int rescoreCandidates,
+                         int rejectedTemplates) {
+        this.centroids = centroids;
+        this.raw = raw;
+        this.rescoreCandidates = rescoreCandidates;
+        this.rejectedTemplates = rejectedTemplates;
+        this.candidateEmpleados = ThreadLocal.withInitial(() -> new int[rescoreCandidates]);
+        this.candidateScores = ThreadLocal.withInitial(() -> new float[rescoreCandidates]);
+    }
+
+    /**
+     * Returns null for an empty list, like {@link PartitionedGallery#fromBioPhotos(List)}.
+     * @param outlierSimilitude 0 keeps every template
+     * @param rescoreCandidates Centroid candidates re-scored against their raw templates, at least 1
+     */
+    public static FusedGallery fromBioPhotos(List<? extends BioPhoto> bioPhotos, float outlierSimilitude,
+                                             int rescoreCandidates) {
+        if (rescoreCandidates < 1) {
+            throw new IllegalArgumentException("rescoreCandidates must be at least 1");
+        }
+        PartitionedGallery raw = PartitionedGallery.fromBioPhotos(bioPhotos);
+        if (raw == null) {
+            return null;
+        }
+        Map<Long, List<float[]>> templates = new LinkedHashMap<>();
+        for (BioPhoto bioPhoto : bioPhotos) {
+            long key = PartitionedGallery.employeeKey(bioPhoto.getEmpresa(), bioPhoto.getEmpleado());
+            List<float[]> list = templates.get(key);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                templates.put(key, list);
+            }
+            list.add(Similarity.normalize(bioPhoto.getFeatures()));
+        }
+        List<BioPhoto> fused = new ArrayList<>(templates.size());
+        int rejected = 0;
+        for (Map.Entry<Long, List<float[]>> entry : templates.entrySet()) {
+            List<float[]> kept = rejectOutliers(entry.getValue(), outlierSimilitude);
+            rejected += entry.getValue().size() - kept.size();
+            fused.add(new BioPhoto((int) (entry.getKey() >> 32), (int) (long) entry.getKey(), null, null,
+                    centroid(kept, raw.getDimension())));
+        }
+        return new FusedGallery(PartitionedGallery.fromBioPhotos(fused), raw, rescoreCandidates, rejected);
+    }
+
+    /**
+     * Mean of normalized templates, normalized again when the gallery is built.
+     */
+    static float[] centroid(List<float[]> normalized, int dimension) {
+        float[] sum = new float[dimension];
+        for (float[] template : normalized) {
+            for (int i = 0; i < dimension; i++) {
+                sum[i] += template[i];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            sum[i] /= normalized.size();
+        }
+        return sum;
+    }
+
+    /**
+     * Templates whose similitude to the centroid of the others reaches outlierSimilitude.
+     */
+    static List<float[]> rejectOutliers(List<float[]> normalized, float outlierSimilitude) {
+        if (normalized.size() < 3 || outlierSimilitude <= 0.0f) {
+            return normalized;
+        }
+        int dimension = normalized.get(0).length;
+        float[] sum = new float[dimension];
+        for (float[] template : normalized) {
+            for (int i = 0; i < dimension; i++) {
+                sum[i] += template[i];
+            }
+        }
+        float[] others = new float[dimension];
+        List<float[]> kept = new ArrayList<>(normalized.size());
+        for (float[] template : normalized) {
+            for (int i = 0; i < dimension; i++) {
+                others[i] = sum[i] - template[i];
+            }
+            if (Similarity.calculateSimilitude(template, others) >= outlierSimilitude) {
+                kept.add(template);
+            }
+        }
+        return kept.isEmpty() ? normalized : kept;
+    }
+
+    /**
+     * One template per employee.
+     */
+    public PartitionedGallery getCentroids() {
+        return centroids;
+    }
+
+    /**
+     * Every template the gallery was built from, for lookups by source index and 1:1 verification.
+     */
+    public PartitionedGallery getRaw() {
+        return raw;
+    }
+
+    /**
+     * Templates left out of their employee's centroid as outliers.
+     */
+    public int getRejectedTemplates() {
+        return rejectedTemplates;
+    }
+
+    /**
+     * Best employee of one company, like a top-1 {@link PartitionedGallery#searchCompany}, scored
+     * against raw templates by mode. Does not allocate.
+     * @return 1 if an employee was written to outEmpleado/outScore, 0 otherwise
+     */
+    public int searchCompany(int empresa, float[] query, float threshold, PartitionedGallery.ScoreMode mode,
+                             int[] outEmpleado, float[] outScore) {
+        int[] empleados = candidateEmpleados.get();
+        float[] scores = candidateScores.get();
+        // Centroids are compared without threshold, a raw template may still score above it
+        int count = centroids.searchCompany(empresa, query, 0.0f, rescoreCandidates,
+                PartitionedGallery.ScoreMode.MAX, empleados, scores);
+        int best = -1;
+        float bestScore = threshold;
+        for (int i = 0; i < count; i++) {
+            float score = raw.verify(empresa, empleados[i], query, mode);
+            if (score >= bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return 0;
+        }
+        outEmpleado[0] = empleados[best];
+        outScore[0] = bestScore;
+        return 1;
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.hmojicag;
+
+/**
+ * DJL engines the face_feature model can run on. Each one loads its own export of the same
+ * network, bundled as a separate asset and installed under its own file name.
+ */
+public enum InferenceEngine {
+    /** TorchScript face_feature.pt */
+    PYTORCH("PyTorch", "pytorch_models/face_feature.zip", "face_feature.zip"),
+    /**
+     * ONNX export face_feature.onnx. ONNX Runtime can't run the translator's NDArray operations
+     * itself, DJL runs them on PyTorch, which is always on the classpath.
+     */
+    ONNX_RUNTIME("OnnxRuntime", "onnx_models/face_feature.zip", "face_feature_onnx.zip");
+
+    private final String engineName;
+    private final String assetPath;
+    private final String modelFileName;
+
+    InferenceEngine(String engineName, String assetPath, String modelFileName) {
+        this.engineName = engineName;
+        this.assetPath = assetPath;
+        this.modelFileName = modelFileName;
+    }
+
+    /**
+     * Name passed to Criteria.Builder.optEngine.
+     */
+    public String getEngineName() {
+        return engineName;
+    }
+
+    /**
+     * Path of the zipped model inside the APK's assets.
+     */
+    public String getAssetPath() {
+        return assetPath;
+    }
+
+    /**
+     * File name of the zipped model once copied to the file system.
+     */
+    public String getModelFileName() {
+        return modelFileName;
+    }
+}
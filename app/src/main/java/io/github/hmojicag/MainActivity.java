@@ -22,6 +22,7 @@ public class MainActivity extends AppCompatActivity {
 
     private AppBarConfiguration appBarConfiguration;
     private ActivityMainBinding binding;
+    private DjlFaceRecognitionTest djlFaceRecognitionTest;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,6 +33,9 @@ public class MainActivity extends AppCompatActivity {
 
         setSupportActionBar(binding.toolbar);
 
+        // Starts loading the model in the background so it is ready by the time the fab is pressed
+        djlFaceRecognitionTest = new DjlFaceRecognitionTest(getApplicationContext());
+
         NavController navController = Navigation.findNavController(this, R.id.nav_host_fragment_content_main);
         appBarConfiguration = new AppBarConfiguration.Builder(navController.getGraph()).build();
         NavigationUI.setupActionBarWithNavController(this, navController, appBarConfiguration);
@@ -43,7 +47,6 @@ public class MainActivity extends AppCompatActivity {
                         .setAnchorView(R.id.fab)
                         .setAction("Action", null).show();
 
-                DjlFaceRecognitionTest djlFaceRecognitionTest = new DjlFaceRecognitionTest(view.getContext());
                 djlFaceRecognitionTest.runTest();
             }
         });
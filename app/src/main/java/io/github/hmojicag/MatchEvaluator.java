@@ -0,0 +1,162 @@
+package io.github.hmojicag;
+
+/**
+ * Streaming 1:N evaluation. Each attendance photo is recorded once, with the identity and
+ * similitude of its best gallery candidate, and only counters and fixed-size histograms are
+ * updated, so memory doesn't grow with the number of photos.
+ * <p>
+ * The outcome at the operating threshold goes into a confusion matrix:
+ * <pre>
+ *                correct   wrong   no match
+ *   enrolled       TP        MM       FN
+ *   not enrolled   -         FA       TN
+ * </pre>
+ * The best candidate's similitude goes into one histogram for correct identities and one for
+ * wrong ones. Since the best candidate doesn't depend on the threshold, those histograms give
+ * TAR and FAR at any other threshold as well.
+ * Not thread-safe.
+ */
+public class MatchEvaluator {
+    public static final int HISTOGRAM_BINS = 1000;
+
+    private final float threshold;
+    private final long[] correctHistogram = new long[HISTOGRAM_BINS];
+    private final long[] wrongHistogram = new long[HISTOGRAM_BINS];
+    private long total;
+    private long enrolled;
+    private long goodMatches;
+    private long mismatches;
+    private long noMatches;
+    private long falseAccepts;
+    private long trueRejects;
+
+    /**
+     * @param threshold Operating similitude threshold, featureThresholdForMatch in the app
+     */
+    public MatchEvaluator(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param isEnrolled Whether the photo's employee has templates in the gallery
+     * @param hasCandidate Whether the search returned any candidate at all
+     * @param isCorrect Whether the best candidate is the photo's employee
+     * @param score Similitude of the best candidate, ignored without candidate
+     */
+    public void record(boolean isEnrolled, boolean hasCandidate, boolean isCorrect, float score) {
+        total++;
+        boolean accepted = hasCandidate && score >= threshold;
+        if (hasCandidate) {
+            (isCorrect ? correctHistogram : wrongHistogram)[binOf(score)]++;
+        }
+        if (isEnrolled) {
+            enrolled++;
+            if (!accepted) {
+                noMatches++;
+            } else if (isCorrect) {
+                goodMatches++;
+            } else {
+                mismatches++;
+            }
+        } else if (accepted) {
+            falseAccepts++;
+        } else {
+            trueRejects++;
+        }
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getEnrolled() {
+        return enrolled;
+    }
+
+    public long getGoodMatches() {
+        return goodMatches;
+    }
+
+    public long getMismatches() {
+        return mismatches;
+    }
+
+    public long getNoMatches() {
+        return noMatches;
+    }
+
+    public long getFalseAccepts() {
+        return falseAccepts;
+    }
+
+    public long getTrueRejects() {
+        return trueRejects;
+    }
+
+    /**
+     * Good matches over every recorded photo.
+     */
+    public double getSuccessRate() {
+        return total == 0 ? 0 : (double) goodMatches / total;
+    }
+
+    /**
+     * True accept rate: enrolled photos matched to the right employee at or above threshold.
+     * Resolution is 1 / HISTOGRAM_BINS in similitude.
+     */
+    public double getTar(float threshold) {
+        return enrolled == 0 ? 0 : (double) countAtOrAbove(correctHistogram, threshold) / enrolled;
+    }
+
+    /**
+     * False accept rate: photos of any kind matched to the wrong employee at or above threshold.
+     */
+    public double getFar(float threshold) {
+        return total == 0 ? 0 : (double) countAtOrAbove(wrongHistogram, threshold) / total;
+    }
+
+    /**
+     * Copy of the best-candidate similitude histogram, correct ones if correct is true.
+     * Bin i covers [i / HISTOGRAM_BINS, (i + 1) / HISTOGRAM_BINS).
+     */
+    public long[] getHistogram(boolean correct) {
+        return (correct ? correctHistogram : wrongHistogram).clone();
+    }
+
+    /**
+     * Counters, confusion matrix and a TAR/FAR sweep from threshold - span to threshold + span.
+     */
+    public String report(float span, float step) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("photos=%d enrolled=%d success=%.4f at threshold %.2f%n",
+                total, enrolled, getSuccessRate(), threshold));
+        sb.append(String.format("%-14s %8s %8s %8s%n", "", "correct", "wrong", "no match"));
+        sb.append(String.format("%-14s %8d %8d %8d%n", "enrolled", goodMatches, mismatches, noMatches));
+        sb.append(String.format("%-14s %8s %8d %8d%n", "not enrolled", "-", falseAccepts, trueRejects));
+        sb.append(String.format("%9s %8s %8s%n", "threshold", "TAR", "FAR"));
+        int steps = Math.round(span / step);
+        for (int i = -steps; i <= steps; i++) {
+            float t = threshold + i * step;
+            sb.append(String.format("%9.2f %8.4f %8.4f%n", t, getTar(t), getFar(t)));
+        }
+        return sb.toString();
+    }
+
+    private static long countAtOrAbove(long[] histogram, float threshold) {
+        long count = 0;
+        for (int i = binOf(threshold); i < HISTOGRAM_BINS; i++) {
+            count += histogram[i];
+        }
+        return count;
+    }
+
+    private static int binOf(float similitude) {
+        // The tiny epsilon keeps thresholds like 0.70f, stored as 0.69999999, in bin 700
+        int bin = (int) (similitude * HISTOGRAM_BINS + 1e-4f);
+        return Math.max(0, Math.min(HISTOGRAM_BINS - 1, bin));
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.hmojicag;
+
+import android.graphics.Rect;
+import com.google.android.gms.tasks.Task;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * ML Kit's face detector behind {@link AsyncFaceDetector}. The Task's completion is chained into
+ * the future on ML Kit's thread, instead of on the main thread or with Tasks.await.
+ */
+public class MlKitFaceDetector implements AsyncFaceDetector<InputImage> {
+    // Completing the future is cheap, no need to hop to another thread for it
+    private static final Executor DIRECT = Runnable::run;
+
+    private final FaceDetector faceDetector;
+
+    public MlKitFaceDetector(FaceDetector faceDetector) {
+        this.faceDetector = faceDetector;
+    }
+
+    @Override
+    public CompletableFuture<List<int[]>> detect(InputImage input) {
+        CompletableFuture<List<int[]>> future = new CompletableFuture<>();
+        faceDetector.process(input).addOnCompleteListener(DIRECT, (Task<List<Face>> task) -> {
+            if (!task.isSuccessful()) {
+                future.completeExceptionally(task.getException() != null ? task.getException()
+                        : new ExecutionException("Face detection failed", null));
+                return;
+            }
+            List<Face> faces = task.getResult();
+            List<int[]> boxes = new ArrayList<>(faces == null ? 0 : faces.size());
+            if (faces != null) {
+                for (Face face : faces) {
+                    Rect box = face.getBoundingBox();
+                    boxes.add(new int[] {box.left, box.top, box.right, box.bottom});
+                }
+            }
+            future.complete(boxes);
+        });
+        return future;
+    }
+}
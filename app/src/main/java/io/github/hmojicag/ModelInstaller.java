@@ -0,0 +1,167 @@
+package io.github.hmojicag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
+/**
+ * Copies a bundled model (an APK asset) to the file system once per source version.
+ * <p>
+ * Next to the target a small ".state" file records the source version, the size and the SHA-256
+ * of what was copied. While the version and size still match, startup skips the copy without
+ * reading the model. A copy is hashed on the way in, re-hashed from disk before it replaces the
+ * previous file, and only then is the state written, so a crash or short write is never
+ * mistaken for an installed model.
+ */
+public class ModelInstaller {
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_SHA256 = "sha256";
+
+    private final Path target;
+    private final Path statePath;
+
+    public ModelInstaller(Path target) {
+        this.target = target;
+        this.statePath = target.resolveSibling(target.getFileName() + ".state");
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    /**
+     * @param sourceVersion Changes whenever the source may have changed, e.g. the app's last update time
+     * @param verifyChecksum Also re-hash the installed file against the recorded SHA-256
+     */
+    public boolean isInstalled(String sourceVersion, boolean verifyChecksum) {
+        Properties state = readState();
+        if (state == null || !sourceVersion.equals(state.getProperty(KEY_VERSION))) {
+            return false;
+        }
+        try {
+            if (!Files.exists(target) || Files.size(target) != Long.parseLong(state.getProperty(KEY_SIZE, "-1"))) {
+                return false;
+            }
+            return !verifyChecksum || state.getProperty(KEY_SHA256, "").equals(sha256(target));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Copies the source unless this version is already installed.
+     * @return true if the model was copied
+     */
+    public boolean install(Callable<InputStream> source, String sourceVersion) throws IOException {
+        if (isInstalled(sourceVersion, false)) {
+            return false;
+        }
+        Files.deleteIfExists(statePath);
+        Path tmpPath = target.resolveSibling(target.getFileName() + ".tmp");
+        MessageDigest digest = newDigest();
+        long size;
+        try (InputStream inputStream = new DigestInputStream(openSource(source), digest);
+             ReadableByteChannel in = Channels.newChannel(inputStream);
+             FileChannel out = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            size = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(in, size, CHUNK_SIZE)) > 0) {
+                size += transferred;
+            }
+            out.force(true);
+        }
+        String sha256 = toHex(digest.digest());
+        if (!sha256.equals(sha256(tmpPath))) {
+            Files.deleteIfExists(tmpPath);
+            throw new IOException("Checksum mismatch copying model to " + target);
+        }
+        Files.move(tmpPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writeState(sourceVersion, size, sha256);
+        return true;
+    }
+
+    private Properties readState() {
+        if (!Files.exists(statePath)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(statePath, StandardCharsets.UTF_8)) {
+            Properties state = new Properties();
+            state.load(reader);
+            return state;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    private void writeState(String sourceVersion, long size, String sha256) throws IOException {
+        Properties state = new Properties();
+        state.setProperty(KEY_VERSION, sourceVersion);
+        state.setProperty(KEY_SIZE, Long.toString(size));
+        state.setProperty(KEY_SHA256, sha256);
+        Path tmpPath = statePath.resolveSibling(statePath.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpPath)) {
+            state.store(out, null);
+        }
+        Files.move(tmpPath, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String sha256(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static InputStream openSource(Callable<InputStream> source) throws IOException {
+        try {
+            return source.call();
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java and Android runtime is required to provide SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.hmojicag;
+
+/**
+ * Numeric precision of the face_feature weights. Every precision is a separate export of the
+ * network, bundled next to the full precision one with a suffix in its file name.
+ */
+public enum ModelPrecision {
+    /** The model as trained */
+    FP32(""),
+    /**
+     * Dynamically quantized: weights stored as int8, activations quantized on the fly.
+     * Smaller and faster on CPU, only enable it once {@link QuantizationGate} accepts it.
+     */
+    INT8("_int8");
+
+    private final String fileSuffix;
+
+    ModelPrecision(String fileSuffix) {
+        this.fileSuffix = fileSuffix;
+    }
+
+    /**
+     * Inserts the suffix before the extension, "face_feature.zip" becomes "face_feature_int8.zip".
+     */
+    public String applyTo(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? fileName + fileSuffix : fileName.substring(0, dot) + fileSuffix + fileName.substring(dot);
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.hmojicag;
+
+import java.util.Locale;
+
+/**
+ * Which face_feature model is loaded, on which engine, and how much accuracy a reduced
+ * precision model may lose against the full precision one, see {@link QuantizationGate}.
+ */
+public class ModelSettings {
+    private InferenceEngine engine;
+    private ModelPrecision precision;
+    private float maxMeanScoreDelta;
+    private double maxDecisionChangeRate;
+    private double maxSuccessRateDrop;
+
+    public static ModelSettings defaults() {
+        ModelSettings settings = new ModelSettings();
+        settings.engine = InferenceEngine.PYTORCH;
+        settings.precision = ModelPrecision.FP32;
+        settings.maxMeanScoreDelta = 0.01f;
+        settings.maxDecisionChangeRate = 0.005;
+        settings.maxSuccessRateDrop = 0.005;
+        return settings;
+    }
+
+    public InferenceEngine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(InferenceEngine engine) {
+        this.engine = engine;
+    }
+
+    public ModelPrecision getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(ModelPrecision precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Largest mean difference in similitude, over same-company pairs, a reduced precision model may show.
+     */
+    public float getMaxMeanScoreDelta() {
+        return maxMeanScoreDelta;
+    }
+
+    public void setMaxMeanScoreDelta(float maxMeanScoreDelta) {
+        this.maxMeanScoreDelta = maxMeanScoreDelta;
+    }
+
+    /**
+     * Largest fraction of attendance photos whose match decision may change.
+     */
+    public double getMaxDecisionChangeRate() {
+        return maxDecisionChangeRate;
+    }
+
+    public void setMaxDecisionChangeRate(double maxDecisionChangeRate) {
+        this.maxDecisionChangeRate = maxDecisionChangeRate;
+    }
+
+    /**
+     * Largest drop in the success rate at the operating threshold.
+     */
+    public double getMaxSuccessRateDrop() {
+        return maxSuccessRateDrop;
+    }
+
+    public void setMaxSuccessRateDrop(double maxSuccessRateDrop) {
+        this.maxSuccessRateDrop = maxSuccessRateDrop;
+    }
+
+    /**
+     * Path of the zipped model inside the APK's assets.
+     */
+    public String getAssetPath() {
+        return precision.applyTo(engine.getAssetPath());
+    }
+
+    /**
+     * File name of the zipped model once copied to the file system.
+     */
+    public String getModelFileName() {
+        return precision.applyTo(engine.getModelFileName());
+    }
+
+    /**
+     * Identifies the embeddings this model produces in the feature cache and embedding store,
+     * so switching models never mixes their features.
+     */
+    public String getModelId() {
+        String modelId = FaceFeatureModels.MODEL_NAME;
+        if (engine != InferenceEngine.PYTORCH) {
+            modelId += "-" + engine.name().toLowerCase(Locale.ROOT);
+        }
+        if (precision != ModelPrecision.FP32) {
+            modelId += "-" + precision.name().toLowerCase(Locale.ROOT);
+        }
+        return modelId;
+    }
+}
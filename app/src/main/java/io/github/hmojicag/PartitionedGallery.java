@@ -0,0 +1,271 @@
+package io.github.hmojicag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Templates sorted by (empresa, empleado) into one contiguous float[] of L2 normalized rows, so
+ * every company and every employee owns a contiguous range of rows. Both ranges are found with
+ * one hash lookup, which allows:
+ * <ul>
+ *   <li>1:1 verification, scoring only the claimed employee's templates</li>
+ *   <li>company-scoped 1:N search, scanning only the punch's company</li>
+ * </ul>
+ * An employee may have several templates, scored by their best or their mean similitude.
+ * Immutable once built, safe to search from several threads.
+ */
+public class PartitionedGallery {
+
+    public enum ScoreMode {
+        /** Best similitude among the employee's templates */
+        MAX,
+        /** Mean similitude over the employee's templates */
+        MEAN
+    }
+
+    private final int dimension;
+    private final float[] vectors;
+    // Index of each row in the list the gallery was built from
+    private final int[] sourceIndices;
+    // Employee e owns rows [employeeStarts[e], employeeStarts[e + 1])
+    private final int[] employeeStarts;
+    private final int[] employeeEmpresas;
+    private final int[] employeeEmpleados;
+    private final Map<Long, Integer> employeeByKey;
+    // Company empresa owns employees [range[0], range[1])
+    private final Map<Integer, int[]> employeesByEmpresa;
+
+    private PartitionedGallery(int dimension, float[] vectors, int[] sourceIndices, int[] employeeStarts,
+                               int[] employeeEmpresas, int[] employeeEmpleados,
+                               Map<Long, Integer> employeeByKey, Map<Integer, int[]> employeesByEmpresa) {
+        this.dimension = dimension;
+        this.vectors = vectors;
+        this.sourceIndices = sourceIndices;
+        this.employeeStarts = employeeStarts;
+        this.employeeEmpresas = employeeEmpresas;
+        this.employeeEmpleados = employeeEmpleados;
+        this.employeeByKey = employeeByKey;
+        this.employeesByEmpresa = employeesByEmpresa;
+    }
+
+    /**
+     * Returns null for an empty list since the dimension can't be inferred.
+     */
+    public static PartitionedGallery fromBioPhotos(List<? extends BioPhoto> bioPhotos) {
+        if (bioPhotos == null || bioPhotos.isEmpty()) {
+            return null;
+        }
+        int dimension = bioPhotos.get(0).getFeatures().length;
+        List<Integer> order = new ArrayList<>(bioPhotos.size());
+        for (int i = 0; i < bioPhotos.size(); i++) {
+            if (bioPhotos.get(i).getFeatures().length != dimension) {
+                throw new IllegalArgumentException(String.format(
+                        "Expected %d features but got %d", dimension, bioPhotos.get(i).getFeatures().length));
+            }
+            order.add(i);
+        }
+        Collections.sort(order, (a, b) -> Long.compare(
+                employeeKey(bioPhotos.get(a).getEmpresa(), bioPhotos.get(a).getEmpleado()),
+                employeeKey(bioPhotos.get(b).getEmpresa(), bioPhotos.get(b).getEmpleado())));
+
+        int rows = order.size();
+        float[] vectors = new float[rows * dimension];
+        int[] sourceIndices = new int[rows];
+        int[] starts = new int[rows + 1];
+        int[] empresas = new int[rows];
+        int[] empleados = new int[rows];
+        Map<Long, Integer> employeeByKey = new HashMap<>();
+        Map<Integer, int[]> employeesByEmpresa = new HashMap<>();
+        int employees = 0;
+        for (int row = 0; row < rows; row++) {
+            int source = order.get(row);
+            BioPhoto bioPhoto = bioPhotos.get(source);
+            Similarity.normalize(bioPhoto.getFeatures(), vectors, row * dimension);
+            sourceIndices[row] = source;
+            long key = employeeKey(bioPhoto.getEmpresa(), bioPhoto.getEmpleado());
+            if (!employeeByKey.containsKey(key)) {
+                starts[employees] = row;
+                empresas[employees] = bioPhoto.getEmpresa();
+                empleados[employees] = bioPhoto.getEmpleado();
+                employeeByKey.put(key, employees);
+                int[] range = employeesByEmpresa.get(bioPhoto.getEmpresa());
+                if (range == null) {
+                    employeesByEmpresa.put(bioPhoto.getEmpresa(), new int[] {employees, employees + 1});
+                } else {
+                    range[1] = employees + 1;
+                }
+                employees++;
+            }
+        }
+        starts[employees] = rows;
+        return new PartitionedGallery(dimension, vectors, sourceIndices,
+                Arrays.copyOf(starts, employees + 1),
+                Arrays.copyOf(empresas, employees),
+                Arrays.copyOf(empleados, employees),
+                employeeByKey, employeesByEmpresa);
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Number of templates.
+     */
+    public int size() {
+        return sourceIndices.length;
+    }
+
+    public int getEmployeeCount() {
+        return employeeEmpresas.length;
+    }
+
+    public boolean isEnrolled(int empresa, int empleado) {
+        return employeeByKey.containsKey(employeeKey(empresa, empleado));
+    }
+
+    public int getTemplateCount(int empresa, int empleado) {
+        Integer employee = employeeByKey.get(employeeKey(empresa, empleado));
+        return employee == null ? 0 : employeeStarts[employee + 1] - employeeStarts[employee];
+    }
+
+    /**
+     * Number of templates enrolled for the company.
+     */
+    public int getCompanySize(int empresa) {
+        int[] range = employeesByEmpresa.get(empresa);
+        return range == null ? 0 : employeeStarts[range[1]] - employeeStarts[range[0]];
+    }
+
+    /**
+     * Index, in the list the gallery was built from, of the first template of the employee.
+     * @return -1 if the employee isn't enrolled
+     */
+    public int getFirstSourceIndex(int empresa, int empleado) {
+        Integer employee = employeeByKey.get(employeeKey(empresa, empleado));
+        return employee == null ? -1 : sourceIndices[employeeStarts[employee]];
+    }
+
+    /**
+     * 1:1 verification of a claimed identity.
+     * @param query Raw (not necessarily normalized) features
+     * @return the similitude against the employee's templates, -1 if the employee isn't enrolled
+     */
+    public float verify(int empresa, int empleado, float[] query, ScoreMode mode) {
+        Integer employee = employeeByKey.get(employeeKey(empresa, empleado));
+        float queryNorm = Similarity.norm(query);
+        if (employee == null || queryNorm == 0.0f) {
+            return -1.0f;
+        }
+        return Similarity.toSimilitude(score(employee, query, mode) / queryNorm);
+    }
+
+    /**
+     * Top-k employees of one company. Fills outEmpleados/outScores in descending score order and
+     * returns how many were written, at most min(k, outEmpleados.length). Scores are similitudes.
+     * Does not allocate.
+     * @param threshold Minimum similitude in the (cos + 1) / 2 scale
+     */
+    public int searchCompany(int empresa, float[] query, float threshold, int k, ScoreMode mode,
+                             int[] outEmpleados, float[] outScores) {
+        int limit = Math.min(k, Math.min(outEmpleados.length, outScores.length));
+        int[] range = employeesByEmpresa.get(empresa);
+        float queryNorm = Similarity.norm(query);
+        if (limit <= 0 || range == null || queryNorm == 0.0f) {
+            return 0;
+        }
+        float cutoff = Similarity.toCosine(threshold) * queryNorm;
+        int count = 0;
+        for (int employee = range[0]; employee < range[1]; employee++) {
+            float score = score(employee, query, mode);
+            // Once full, an equal score doesn't replace the tail, so the first of equal employees
+            // wins as in searchCompanyBest
+            if (score < cutoff || count == limit && score <= cutoff) {
+                continue;
+            }
+            // Insertion into the small sorted prefix, dropping the tail when full.
+            int pos = count < limit ? count++ : limit - 1;
+            while (pos > 0 && outScores[pos - 1] < score) {
+                outScores[pos] = outScores[pos - 1];
+                outEmpleados[pos] = outEmpleados[pos - 1];
+                pos--;
+            }
+            outScores[pos] = score;
+            outEmpleados[pos] = employeeEmpleados[employee];
+            if (count == limit) {
+                cutoff = Math.max(cutoff, outScores[limit - 1]);
+            }
+        }
+        float invNorm = 1.0f / queryNorm;
+        for (int i = 0; i < count; i++) {
+            outScores[i] = Similarity.toSimilitude(outScores[i] * invNorm);
+        }
+        return count;
+    }
+
+    /**
+     * Best employee of one company for each of several queries, e.g. every face of one photo.
+     * Each template row is read once and scored against all queries, instead of once per query.
+     * Regardless of threshold, outEmpleados[q]/outScores[q] get query q's best employee and its
+     * similitude, or a score of -1 if the company has no templates or the query is all zeros.
+     */
+    public void searchCompanyBest(int empresa, float[][] queries, ScoreMode mode,
+                                  int[] outEmpleados, float[] outScores) {
+        int[] range = employeesByEmpresa.get(empresa);
+        if (range == null) {
+            Arrays.fill(outScores, 0, queries.length, -1.0f);
+            return;
+        }
+        float[] bests = new float[queries.length];
+        float[] sums = new float[queries.length];
+        Arrays.fill(outScores, 0, queries.length, -Float.MAX_VALUE);
+        for (int employee = range[0]; employee < range[1]; employee++) {
+            int start = employeeStarts[employee];
+            int end = employeeStarts[employee + 1];
+            Arrays.fill(bests, -Float.MAX_VALUE);
+            Arrays.fill(sums, 0.0f);
+            for (int row = start; row < end; row++) {
+                for (int q = 0; q < queries.length; q++) {
+                    float score = Similarity.dot(queries[q], 0, vectors, row * dimension, dimension);
+                    bests[q] = Math.max(bests[q], score);
+                    sums[q] += score;
+                }
+            }
+            for (int q = 0; q < queries.length; q++) {
+                float score = mode == ScoreMode.MAX ? bests[q] : sums[q] / (end - start);
+                if (score > outScores[q]) {
+                    outScores[q] = score;
+                    outEmpleados[q] = employeeEmpleados[employee];
+                }
+            }
+        }
+        for (int q = 0; q < queries.length; q++) {
+            float queryNorm = Similarity.norm(queries[q]);
+            outScores[q] = queryNorm == 0.0f ? -1.0f : Similarity.toSimilitude(outScores[q] / queryNorm);
+        }
+    }
+
+    /**
+     * Raw dot product of query against the employee's templates, aggregated by mode.
+     */
+    private float score(int employee, float[] query, ScoreMode mode) {
+        int start = employeeStarts[employee];
+        int end = employeeStarts[employee + 1];
+        float best = -Float.MAX_VALUE;
+        float sum = 0.0f;
+        for (int row = start; row < end; row++) {
+            float score = Similarity.dot(query, 0, vectors, row * dimension, dimension);
+            best = Math.max(best, score);
+            sum += score;
+        }
+        return mode == ScoreMode.MAX ? best : sum / (end - start);
+    }
+
+    static long employeeKey(int empresa, int empleado) {
+        return ((long) empresa << 32) | (empleado & 0xffffffffL);
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.hmojicag;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+
+import java.io.IOException;
+
+/**
+ * Decodes photos subsampled to the smallest power-of-two reduction whose shorter side still has
+ * minShortSide pixels, enough for reliable face detection, instead of at full camera resolution.
+ * A 12 MP photo decoded for a 480 px short side takes about 3 MB instead of 48 MB.
+ * <p>
+ * Decodes into bitmaps taken from a {@link BitmapPool} and applies the EXIF orientation, as
+ * InputImage.fromFilePath did. Thread-safe.
+ */
+public class PhotoDecoder {
+    private final BitmapPool bitmapPool;
+    private final int minShortSide;
+
+    public PhotoDecoder(BitmapPool bitmapPool, int minShortSide) {
+        this.bitmapPool = bitmapPool;
+        this.minShortSide = minShortSide;
+    }
+
+    /**
+     * A decoded photo. Coordinates in bitmap times sampleSize give coordinates in the original photo.
+     */
+    public static class DecodedPhoto {
+        private final Bitmap bitmap;
+        private final int sampleSize;
+
+        DecodedPhoto(Bitmap bitmap, int sampleSize) {
+            this.bitmap = bitmap;
+            this.sampleSize = sampleSize;
+        }
+
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        public int getSampleSize() {
+            return sampleSize;
+        }
+    }
+
+    /**
+     * @return null if the file can't be decoded
+     */
+    public DecodedPhoto decode(String filePath) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = sampleSizeFor(options.outWidth, options.outHeight, minShortSide);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap candidate = bitmapPool.acquire(
+                (options.outWidth + sampleSize - 1) / sampleSize, (options.outHeight + sampleSize - 1) / sampleSize);
+        options.inBitmap = candidate;
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(filePath, options);
+        } catch (IllegalArgumentException ex) {
+            // The pooled bitmap didn't fit this decode after all
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(filePath, options);
+        }
+        if (bitmap == null) {
+            bitmapPool.release(candidate);
+            return null;
+        }
+        bitmapPool.recordDecode(bitmap, candidate);
+        return new DecodedPhoto(applyOrientation(bitmap, filePath), sampleSize);
+    }
+
+    /**
+     * Largest power of two that keeps the shorter side at or above minShortSide, at least 1.
+     */
+    public static int sampleSizeFor(int width, int height, int minShortSide) {
+        int shortSide = Math.min(width, height);
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= minShortSide) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private Bitmap applyOrientation(Bitmap bitmap, String filePath) throws IOException {
+        int orientation = new ExifInterface(filePath)
+                .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        int degrees;
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                degrees = 90;
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                degrees = 180;
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                degrees = 270;
+                break;
+            default:
+                return bitmap;
+        }
+        Matrix matrix = new Matrix();
+        matrix.setRotate(degrees);
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) {
+            bitmapPool.release(bitmap);
+        }
+        return rotated;
+    }
+}
@@ -0,0 +1,181 @@
+package io.github.hmojicag;
+
+/**
+ * Parallelism and queue depth of each stage of the photo loading pipeline.
+ * File listing always runs on a single source thread.
+ * The detect stage's parallelism is the number of detections kept in flight, which need no
+ * thread each. The embed stage gets one Predictor per worker.
+ */
+public class PipelineSettings {
+    // Crops per batchPredict call, enough to pay the PyTorch dispatch cost once for several faces
+    public static final int DEFAULT_EMBED_BATCH_SIZE = 8;
+
+    public static class StageSettings {
+        private int parallelism;
+        private int queueDepth;
+
+        public StageSettings(int parallelism, int queueDepth) {
+            this.parallelism = parallelism;
+            this.queueDepth = queueDepth;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public void setQueueDepth(int queueDepth) {
+            this.queueDepth = queueDepth;
+        }
+    }
+
+    private StageSettings decode;
+    private StageSettings detect;
+    private StageSettings crop;
+    private StageSettings embed;
+    private int embedBatchSize;
+    private long embedMaxWaitMillis;
+    private int decodeMinShortSide;
+    private boolean metricsEnabled;
+    private boolean multiFaceEnabled;
+    private int minFaceSize;
+    private boolean recentMatchCacheEnabled;
+
+    /**
+     * Defaults sized from the number of cores: decode and crop are cheap, detection runs on
+     * ML Kit's threads and keeps a few more in flight than cores so ML Kit is never idle,
+     * embedding uses PyTorch's own intra-op threads.
+     */
+    public static PipelineSettings defaults() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        PipelineSettings settings = new PipelineSettings();
+        settings.decode = new StageSettings(Math.max(1, cores / 2), 8);
+        settings.detect = new StageSettings(Math.max(2, cores), 8);
+        settings.crop = new StageSettings(Math.max(1, cores / 4), 16);
+        settings.embed = new StageSettings(Math.max(1, cores / 4), 32);
+        settings.embedBatchSize = DEFAULT_EMBED_BATCH_SIZE;
+        settings.embedMaxWaitMillis = 20;
+        // ML Kit recommends at least 480x360 for face detection
+        settings.decodeMinShortSide = 480;
+        settings.metricsEnabled = true;
+        settings.multiFaceEnabled = false;
+        // Half of FaceNet's 160x160 input, smaller faces are upscaled too much for a reliable embedding
+        settings.minFaceSize = 80;
+        settings.recentMatchCacheEnabled = true;
+        return settings;
+    }
+
+    public StageSettings getDecode() {
+        return decode;
+    }
+
+    public void setDecode(StageSettings decode) {
+        this.decode = decode;
+    }
+
+    public StageSettings getDetect() {
+        return detect;
+    }
+
+    public void setDetect(StageSettings detect) {
+        this.detect = detect;
+    }
+
+    public StageSettings getCrop() {
+        return crop;
+    }
+
+    public void setCrop(StageSettings crop) {
+        this.crop = crop;
+    }
+
+    public StageSettings getEmbed() {
+        return embed;
+    }
+
+    public void setEmbed(StageSettings embed) {
+        this.embed = embed;
+    }
+
+    public int getEmbedBatchSize() {
+        return embedBatchSize;
+    }
+
+    public void setEmbedBatchSize(int embedBatchSize) {
+        this.embedBatchSize = embedBatchSize;
+    }
+
+    public long getEmbedMaxWaitMillis() {
+        return embedMaxWaitMillis;
+    }
+
+    public void setEmbedMaxWaitMillis(long embedMaxWaitMillis) {
+        this.embedMaxWaitMillis = embedMaxWaitMillis;
+    }
+
+    /**
+     * Photos are decoded subsampled down to, but not below, this many pixels on their shorter side.
+     */
+    public int getDecodeMinShortSide() {
+        return decodeMinShortSide;
+    }
+
+    public void setDecodeMinShortSide(int decodeMinShortSide) {
+        this.decodeMinShortSide = decodeMinShortSide;
+    }
+
+    /**
+     * Whether {@link RecognitionMetrics} times each stage and counts skipped photos.
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Whether AttPhotos with several faces have every face matched, as at a group entrance, instead
+     * of being skipped. BioPhotos always need exactly one face.
+     */
+    public boolean isMultiFaceEnabled() {
+        return multiFaceEnabled;
+    }
+
+    public void setMultiFaceEnabled(boolean multiFaceEnabled) {
+        this.multiFaceEnabled = multiFaceEnabled;
+    }
+
+    /**
+     * In multi-face mode, faces whose box is narrower or shorter than this many pixels of the
+     * original photo are ignored.
+     */
+    public int getMinFaceSize() {
+        return minFaceSize;
+    }
+
+    public void setMinFaceSize(int minFaceSize) {
+        this.minFaceSize = minFaceSize;
+    }
+
+    /**
+     * Whether a punch close to a recent accepted one of the same company is first verified 1:1
+     * against that employee, see {@link RecentMatchCache}. Turn off for a TAR/FAR evaluation of
+     * the full company search alone.
+     */
+    public boolean isRecentMatchCacheEnabled() {
+        return recentMatchCacheEnabled;
+    }
+
+    public void setRecentMatchCacheEnabled(boolean recentMatchCacheEnabled) {
+        this.recentMatchCacheEnabled = recentMatchCacheEnabled;
+    }
+}
@@ -0,0 +1,161 @@
+package io.github.hmojicag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ai.djl.inference.Predictor;
+import ai.djl.repository.zoo.ZooModel;
+import ai.djl.translate.TranslateException;
+
+/**
+ * Fixed set of Predictors over one ZooModel. A DJL Predictor is not thread-safe,
+ * so each thread borrows one for the duration of a call and returns it afterwards.
+ * <p>
+ * Every predictor runs warmUpInput once at construction, so the lazy native initialisation
+ * isn't paid by the first real call. {@link #predictAsync(Object)} runs on one worker thread
+ * per predictor, letting concurrent callers spread across cores.
+ * Time spent waiting for a free predictor and time spent in inference are recorded per call.
+ */
+public class PredictorPool<I, O> implements AutoCloseable {
+    private final List<Predictor<I, O>> predictors = new ArrayList<>();
+    private final BlockingQueue<Predictor<I, O>> available;
+    private final ExecutorService executor;
+    private final LatencyHistogram waitHistogram = new LatencyHistogram();
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+    private final long warmUpMillis;
+
+    public PredictorPool(ZooModel<I, O> model, int size) {
+        this(model, size, null);
+    }
+
+    /**
+     * @param warmUpInput Input predicted once by every predictor, null skips warm-up
+     */
+    public PredictorPool(ZooModel<I, O> model, int size, I warmUpInput) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        available = new ArrayBlockingQueue<>(size);
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            Predictor<I, O> predictor = model.newPredictor();
+            if (warmUpInput != null) {
+                try {
+                    predictor.predict(warmUpInput);
+                } catch (TranslateException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            predictors.add(predictor);
+            available.add(predictor);
+        }
+        warmUpMillis = System.currentTimeMillis() - time;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "predictor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int size() {
+        return predictors.size();
+    }
+
+    /**
+     * Time it took to create and warm up every predictor.
+     */
+    public long getWarmUpMillis() {
+        return warmUpMillis;
+    }
+
+    /**
+     * Blocks until a predictor is free. Must be given back with {@link #release(Predictor)}.
+     */
+    public Predictor<I, O> borrow() throws InterruptedException {
+        long start = System.nanoTime();
+        Predictor<I, O> predictor = available.take();
+        waitHistogram.recordNanos(System.nanoTime() - start);
+        return predictor;
+    }
+
+    public void release(Predictor<I, O> predictor) {
+        available.add(predictor);
+    }
+
+    /**
+     * Borrows a predictor for a single prediction, blocking while all are busy.
+     */
+    public O predict(I input) throws InterruptedException, TranslateException {
+        Predictor<I, O> predictor = borrow();
+        try {
+            long start = System.nanoTime();
+            O output = predictor.predict(input);
+            latencyHistogram.recordNanos(System.nanoTime() - start);
+            return output;
+        } finally {
+            release(predictor);
+        }
+    }
+
+    /**
+     * Borrows a predictor for one batched call. The latency recorded is the whole batch's.
+     */
+    public List<O> batchPredict(List<I> inputs) throws InterruptedException, TranslateException {
+        Predictor<I, O> predictor = borrow();
+        try {
+            long start = System.nanoTime();
+            List<O> outputs = predictor.batchPredict(inputs);
+            latencyHistogram.recordNanos(System.nanoTime() - start);
+            return outputs;
+        } finally {
+            release(predictor);
+        }
+    }
+
+    /**
+     * Runs {@link #predict(Object)} on the pool's worker threads.
+     */
+    public CompletableFuture<O> predictAsync(I input) {
+        CompletableFuture<O> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(predict(input));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(ex);
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Time callers waited for a free predictor, in microseconds.
+     */
+    public LatencyHistogram getWaitHistogram() {
+        return waitHistogram;
+    }
+
+    /**
+     * Time spent inside predict/batchPredict, in microseconds. Borrowed predictors aren't timed.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (Predictor<I, O> predictor : predictors) {
+            predictor.close();
+        }
+    }
+}
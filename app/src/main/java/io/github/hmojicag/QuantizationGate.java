@@ -0,0 +1,206 @@
+package io.github.hmojicag;
+
+import java.util.List;
+
+/**
+ * Decides whether a reduced precision model (the candidate) can replace the full precision one
+ * (the reference), from the embeddings both produced for the same labelled photos:
+ * <ul>
+ *   <li>similitude of every same-company probe/template pair, the scores matching compares</li>
+ *   <li>the top-1 match decision of every probe at the operating threshold</li>
+ *   <li>the success rate, as {@link MatchEvaluator} computes it</li>
+ * </ul>
+ * The candidate is accepted when every difference stays within the budget of a {@link ModelSettings}.
+ */
+public class QuantizationGate {
+    private final float threshold;
+    private final PartitionedGallery.ScoreMode scoreMode;
+    private final float maxMeanScoreDelta;
+    private final double maxDecisionChangeRate;
+    private final double maxSuccessRateDrop;
+
+    /**
+     * @param threshold Operating similitude threshold
+     * @param budget Supplies the accuracy budget, the rest of the settings is ignored
+     */
+    public QuantizationGate(float threshold, PartitionedGallery.ScoreMode scoreMode, ModelSettings budget) {
+        this.threshold = threshold;
+        this.scoreMode = scoreMode;
+        this.maxMeanScoreDelta = budget.getMaxMeanScoreDelta();
+        this.maxDecisionChangeRate = budget.getMaxDecisionChangeRate();
+        this.maxSuccessRateDrop = budget.getMaxSuccessRateDrop();
+    }
+
+    public static class Result {
+        private final int probes;
+        private final long pairs;
+        private final float meanScoreDelta;
+        private final float maxScoreDelta;
+        private final long pairDecisionChanges;
+        private final int decisionChanges;
+        private final double referenceSuccessRate;
+        private final double candidateSuccessRate;
+        private final boolean accepted;
+
+        Result(int probes, long pairs, float meanScoreDelta, float maxScoreDelta, long pairDecisionChanges,
+               int decisionChanges, double referenceSuccessRate, double candidateSuccessRate, boolean accepted) {
+            this.probes = probes;
+            this.pairs = pairs;
+            this.meanScoreDelta = meanScoreDelta;
+            this.maxScoreDelta = maxScoreDelta;
+            this.pairDecisionChanges = pairDecisionChanges;
+            this.decisionChanges = decisionChanges;
+            this.referenceSuccessRate = referenceSuccessRate;
+            this.candidateSuccessRate = candidateSuccessRate;
+            this.accepted = accepted;
+        }
+
+        public int getProbes() {
+            return probes;
+        }
+
+        /**
+         * Number of same-company probe/template pairs scored.
+         */
+        public long getPairs() {
+            return pairs;
+        }
+
+        public float getMeanScoreDelta() {
+            return meanScoreDelta;
+        }
+
+        public float getMaxScoreDelta() {
+            return maxScoreDelta;
+        }
+
+        /**
+         * Pairs on different sides of the threshold with each model.
+         */
+        public long getPairDecisionChanges() {
+            return pairDecisionChanges;
+        }
+
+        /**
+         * Probes matched to a different employee, or accepted by only one of the models.
+         */
+        public int getDecisionChanges() {
+            return decisionChanges;
+        }
+
+        public double getDecisionChangeRate() {
+            return probes == 0 ? 0 : (double) decisionChanges / probes;
+        }
+
+        public double getReferenceSuccessRate() {
+            return referenceSuccessRate;
+        }
+
+        public double getCandidateSuccessRate() {
+            return candidateSuccessRate;
+        }
+
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("accepted=%b probes=%d pairs=%d scoreDelta mean=%.5f max=%.5f "
+                            + "pairDecisionChanges=%d decisionChanges=%d (%.4f) success %.4f -> %.4f",
+                    accepted, probes, pairs, meanScoreDelta, maxScoreDelta, pairDecisionChanges,
+                    decisionChanges, getDecisionChangeRate(), referenceSuccessRate, candidateSuccessRate);
+        }
+    }
+
+    /**
+     * Lists of each model are in the same order: the i-th entries are the same photo.
+     * @param gallery Enrolled templates (BioPhotos)
+     * @param probes Photos to identify (AttPhotos)
+     */
+    public Result evaluate(List<? extends BioPhoto> gallery, List<? extends BioPhoto> candidateGallery,
+                           List<? extends BioPhoto> probes, List<? extends BioPhoto> candidateProbes) {
+        checkAligned(gallery, candidateGallery);
+        checkAligned(probes, candidateProbes);
+        long pairs = 0;
+        double scoreDeltaSum = 0;
+        float maxScoreDelta = 0.0f;
+        long pairDecisionChanges = 0;
+        for (int p = 0; p < probes.size(); p++) {
+            BioPhoto probe = probes.get(p);
+            for (int g = 0; g < gallery.size(); g++) {
+                if (gallery.get(g).getEmpresa() != probe.getEmpresa()) {
+                    continue;
+                }
+                float reference = Similarity.calculateSimilitude(probe.getFeatures(), gallery.get(g).getFeatures());
+                float candidate = Similarity.calculateSimilitude(
+                        candidateProbes.get(p).getFeatures(), candidateGallery.get(g).getFeatures());
+                float delta = Math.abs(reference - candidate);
+                pairs++;
+                scoreDeltaSum += delta;
+                maxScoreDelta = Math.max(maxScoreDelta, delta);
+                if ((reference >= threshold) != (candidate >= threshold)) {
+                    pairDecisionChanges++;
+                }
+            }
+        }
+
+        PartitionedGallery referenceGallery = PartitionedGallery.fromBioPhotos(gallery);
+        PartitionedGallery candidateGalleryIndex = PartitionedGallery.fromBioPhotos(candidateGallery);
+        MatchEvaluator referenceEvaluator = new MatchEvaluator(threshold);
+        MatchEvaluator candidateEvaluator = new MatchEvaluator(threshold);
+        int[] referenceEmpleado = new int[1];
+        int[] candidateEmpleado = new int[1];
+        float[] score = new float[1];
+        int decisionChanges = 0;
+        for (int p = 0; p < probes.size(); p++) {
+            BioPhoto probe = probes.get(p);
+            boolean referenceAccepted = match(referenceGallery, probe, probe.getFeatures(), referenceEvaluator,
+                    referenceEmpleado, score);
+            boolean candidateAccepted = match(candidateGalleryIndex, probe, candidateProbes.get(p).getFeatures(),
+                    candidateEvaluator, candidateEmpleado, score);
+            if (referenceAccepted != candidateAccepted
+                    || (referenceAccepted && referenceEmpleado[0] != candidateEmpleado[0])) {
+                decisionChanges++;
+            }
+        }
+
+        float meanScoreDelta = pairs == 0 ? 0.0f : (float) (scoreDeltaSum / pairs);
+        double referenceSuccessRate = referenceEvaluator.getSuccessRate();
+        double candidateSuccessRate = candidateEvaluator.getSuccessRate();
+        double decisionChangeRate = probes.isEmpty() ? 0 : (double) decisionChanges / probes.size();
+        boolean accepted = meanScoreDelta <= maxMeanScoreDelta
+                && decisionChangeRate <= maxDecisionChangeRate
+                && referenceSuccessRate - candidateSuccessRate <= maxSuccessRateDrop;
+        return new Result(probes.size(), pairs, meanScoreDelta, maxScoreDelta, pairDecisionChanges,
+                decisionChanges, referenceSuccessRate, candidateSuccessRate, accepted);
+    }
+
+    /**
+     * Top-1 company-scoped match of the probe, recorded into evaluator.
+     * @return whether a candidate was accepted at the threshold, its empleado is then in outEmpleado
+     */
+    private boolean match(PartitionedGallery gallery, BioPhoto probe, float[] features, MatchEvaluator evaluator,
+                          int[] outEmpleado, float[] outScore) {
+        int count = gallery == null ? 0
+                : gallery.searchCompany(probe.getEmpresa(), features, 0.0f, 1, scoreMode, outEmpleado, outScore);
+        boolean isEnrolled = gallery != null && gallery.isEnrolled(probe.getEmpresa(), probe.getEmpleado());
+        boolean isCorrect = count > 0 && outEmpleado[0] == probe.getEmpleado();
+        evaluator.record(isEnrolled, count > 0, isCorrect, outScore[0]);
+        return count > 0 && outScore[0] >= threshold;
+    }
+
+    private static void checkAligned(List<? extends BioPhoto> reference, List<? extends BioPhoto> candidate) {
+        if (reference.size() != candidate.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d photos but got %d", reference.size(), candidate.size()));
+        }
+        for (int i = 0; i < reference.size(); i++) {
+            if (reference.get(i).getEmpresa() != candidate.get(i).getEmpresa()
+                    || reference.get(i).getEmpleado() != candidate.get(i).getEmpleado()) {
+                throw new IllegalArgumentException(String.format(
+                        "Photo %d is %s for one model and %s for the other", i, reference.get(i), candidate.get(i)));
+            }
+        }
+    }
+}
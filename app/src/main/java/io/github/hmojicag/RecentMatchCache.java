@@ -0,0 +1,200 @@
+package io.github.hmojicag;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The last accepted punch embedding of recently matched employees, so a repeat punch can be
+ * recognized by comparing it against a handful of recent embeddings before scanning the company.
+ * <p>
+ * Bounded to maxEntries employees, least recently hit or stored evicted first, and entries
+ * expire ttlMillis after they were stored. A lookup finds the employee of the same company
+ * whose cached embedding scores at least hitSimilitude against the query, a margin well above
+ * the match threshold since it compares two punches rather than a punch and a template, verifies
+ * it 1:1 against the gallery, and only returns it when it is provably what the full search would
+ * answer. For that each entry keeps the best similitude of any other employee of the company
+ * against the cached punch, see {@link #otherEmployeesBound}.
+ * <p>
+ * Entries must be dropped when the company's enrollment changes, hook {@link #invalidate} to
+ * {@link EnrollmentLog#setChangeListener}. Thread-safe.
+ */
+public class RecentMatchCache {
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final float hitSimilitude;
+    private final LinkedHashMap<Long, Entry> entries;
+    private long hits;
+    private long verifiedHits;
+    private long misses;
+
+    public RecentMatchCache(int maxEntries, long ttlMillis, float hitSimilitude) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.hitSimilitude = hitSimilitude;
+        this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > RecentMatchCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Identifies query as a recently matched employee of empresa without searching the company:
+     * the best cached employee scoring at least hitSimilitude against query, verified 1:1 against
+     * gallery. It is only returned when its verified score reaches threshold and is above what any
+     * other employee of the company can score against query. Expired entries found on the way are
+     * dropped, entries stored after nowMillis are skipped.
+     * @return the employee, in outEmpleado[0] with its verified similitude in outScore[0], or
+     *         false if the caller has to run the full search
+     */
+    public synchronized boolean lookup(int empresa, float[] query, long nowMillis, PartitionedGallery gallery,
+                                       PartitionedGallery.ScoreMode mode, float threshold, int[] outEmpleado,
+                                       float[] outScore) {
+        float queryNorm = Similarity.norm(query);
+        Entry best = null;
+        float bestCosine = Similarity.toCosine(hitSimilitude);
+        if (queryNorm > 0.0f) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (nowMillis - entry.storedMillis > ttlMillis) {
+                    iterator.remove();
+                    continue;
+                }
+                if (entry.empresa != empresa || entry.features.length != query.length
+                        || entry.storedMillis > nowMillis) {
+                    continue;
+                }
+                float cosine = Similarity.dot(query, 0, entry.features, 0, query.length) / queryNorm;
+                if (cosine >= bestCosine) {
+                    bestCosine = cosine;
+                    best = entry;
+                }
+            }
+        }
+        if (best == null) {
+            misses++;
+            return false;
+        }
+        // Refreshes the LRU order
+        entries.get(PartitionedGallery.employeeKey(best.empresa, best.empleado));
+        hits++;
+        float score = gallery.verify(empresa, best.empleado, query, mode);
+        if (score < threshold
+                || score <= otherEmployeesBound(Similarity.toSimilitude(bestCosine), best.runnerUp)) {
+            return false;
+        }
+        verifiedHits++;
+        outEmpleado[0] = best.empleado;
+        outScore[0] = score;
+        return true;
+    }
+
+    /**
+     * Highest similitude any other employee's template can reach against a query at
+     * punchSimilitude from the cached punch, when none is closer than runnerUp to the punch.
+     * Angles between unit vectors obey the triangle inequality, so the query is at least the
+     * runner-up's angle minus the query's angle away from every such template. Every score mode
+     * is at most the best template's similitude, so this bounds the employee's score as well.
+     */
+    static float otherEmployeesBound(float punchSimilitude, float runnerUp) {
+        double punchAngle = angle(punchSimilitude);
+        double runnerUpAngle = angle(runnerUp);
+        if (runnerUpAngle <= punchAngle) {
+            return 1.0f;
+        }
+        return Similarity.toSimilitude((float) Math.cos(runnerUpAngle - punchAngle));
+    }
+
+    private static double angle(float similitude) {
+        return Math.acos(Math.max(-1.0f, Math.min(1.0f, Similarity.toCosine(similitude))));
+    }
+
+    /**
+     * Stores the embedding of an accepted punch as the employee's most recent one, along with the
+     * best template similitude of any other employee of the company against it. That takes one
+     * scan of the company in gallery, outside of the lock.
+     */
+    public void put(int empresa, int empleado, float[] features, PartitionedGallery gallery, long nowMillis) {
+        int[] empleados = new int[2];
+        float[] scores = new float[2];
+        int count = gallery.searchCompany(empresa, features, 0.0f, 2, PartitionedGallery.ScoreMode.MAX,
+                empleados, scores);
+        float runnerUp = 0.0f;
+        for (int i = 0; i < count; i++) {
+            if (empleados[i] != empleado) {
+                runnerUp = scores[i];
+                break;
+            }
+        }
+        synchronized (this) {
+            entries.put(PartitionedGallery.employeeKey(empresa, empleado),
+                    new Entry(empresa, empleado, Similarity.normalize(features), runnerUp, nowMillis));
+        }
+    }
+
+    /**
+     * Drops every entry of the company: the employee's own, and the others' since their
+     * runner-up may have changed.
+     */
+    public synchronized void invalidate(int empresa, int empleado) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().empresa == empresa) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Lookups that found a close enough recent punch, whether or not it passed verification.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Hits whose employee passed verification and was returned.
+     */
+    public synchronized long getVerifiedHits() {
+        return verifiedHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public float getHitSimilitude() {
+        return hitSimilitude;
+    }
+
+    private static class Entry {
+        final int empresa;
+        final int empleado;
+        final float[] features;
+        // Best similitude of another employee's template against features
+        final float runnerUp;
+        final long storedMillis;
+
+        Entry(int empresa, int empleado, float[] features, float runnerUp, long storedMillis) {
+            this.empresa = empresa;
+            this.empleado = empleado;
+            this.features = features;
+            this.runnerUp = runnerUp;
+            this.storedMillis = storedMillis;
+        }
+    }
+}
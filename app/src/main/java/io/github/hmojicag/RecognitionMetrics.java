@@ -0,0 +1,142 @@
+package io.github.hmojicag;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage latency histograms and skip counters of the recognition pipeline.
+ * <p>
+ * Hot paths time a stage with {@link #start()} and {@link #stop(Stage, long)}. Both use
+ * System.nanoTime, which is monotonic. Histograms and counters are lock-free, so any number
+ * of pipeline threads can record at once. While disabled, start() returns without reading
+ * the clock and nothing is recorded. The cost is then one volatile read per call.
+ * {@link #toJson()} takes a snapshot for export.
+ */
+public class RecognitionMetrics {
+
+    public enum Stage {
+        DECODE,
+        DETECT,
+        CROP,
+        /** Per face, the batch's time divided among its faces */
+        EMBED,
+        /** Gallery search of one face, a multi-face photo's search divided among its faces */
+        MATCH
+    }
+
+    public enum SkipReason {
+        DECODE_FAILURE,
+        DETECTION_FAILURE,
+        NO_FACE,
+        MULTIPLE_FACES,
+        /** Face box outside of the photo */
+        CROP_FAILURE,
+        /** File name doesn't follow the empresa-empleado convention */
+        PARSE_FAILURE
+    }
+
+    private final LatencyHistogram[] stageHistograms = new LatencyHistogram[Stage.values().length];
+    private final LongAdder[] skipCounters = new LongAdder[SkipReason.values().length];
+    private volatile boolean enabled;
+
+    public RecognitionMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < stageHistograms.length; i++) {
+            stageHistograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < skipCounters.length; i++) {
+            skipCounters[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the token to pass to {@link #stop(Stage, long)}, 0 while disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time elapsed since start. Ignored if metrics were disabled at start.
+     */
+    public void stop(Stage stage, long start) {
+        if (start != 0 && enabled) {
+            stageHistograms[stage.ordinal()].recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the time elapsed since start, split evenly among items, e.g. the faces of one embedding batch.
+     */
+    public void recordShared(Stage stage, long start, int items) {
+        if (start != 0 && enabled && items > 0) {
+            long perItem = (System.nanoTime() - start) / items;
+            LatencyHistogram histogram = stageHistograms[stage.ordinal()];
+            for (int i = 0; i < items; i++) {
+                histogram.recordNanos(perItem);
+            }
+        }
+    }
+
+    public void skip(SkipReason reason) {
+        if (enabled) {
+            skipCounters[reason.ordinal()].increment();
+        }
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stageHistograms[stage.ordinal()];
+    }
+
+    public long getSkips(SkipReason reason) {
+        return skipCounters[reason.ordinal()].sum();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : stageHistograms) {
+            histogram.reset();
+        }
+        for (LongAdder counter : skipCounters) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Snapshot as a JSON object. Latencies are in microseconds, percentiles are bucket upper bounds.
+     * Values recorded while the snapshot is taken may or may not be included.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"enabled\":").append(enabled).append(",\"stages\":{");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stageHistograms[stage.ordinal()];
+            if (stage.ordinal() > 0) {
+                sb.append(',');
+            }
+            sb.append(String.format(Locale.ROOT,
+                    "\"%s\":{\"count\":%d,\"mean\":%.1f,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d}",
+                    name(stage), histogram.getCount(), histogram.getMean(), histogram.getPercentile(50),
+                    histogram.getPercentile(90), histogram.getPercentile(99), histogram.getMax()));
+        }
+        sb.append("},\"skips\":{");
+        for (SkipReason reason : SkipReason.values()) {
+            if (reason.ordinal() > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(name(reason)).append("\":").append(getSkips(reason));
+        }
+        return sb.append("}}").toString();
+    }
+
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
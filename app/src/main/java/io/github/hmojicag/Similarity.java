@@ -0,0 +1,123 @@
+package io.github.hmojicag;
+
+import java.util.Arrays;
+
+/**
+ * Vector helpers shared by the matchers.
+ * Similitude is the cosine mapped to [0, 1] as (cos + 1) / 2, which is the scale
+ * featureThresholdForMatch is expressed in.
+ */
+public final class Similarity {
+
+    private Similarity() {}
+
+    public static float calculateSimilitude(float[] feature1, float[] feature2) {
+        float ret = 0.0f;
+        float mod1 = 0.0f;
+        float mod2 = 0.0f;
+        int length = feature1.length;
+        for (int i = 0; i < length; ++i) {
+            ret += feature1[i] * feature2[i];
+            mod1 += feature1[i] * feature1[i];
+            mod2 += feature2[i] * feature2[i];
+        }
+        return (float) ((ret / Math.sqrt(mod1) / Math.sqrt(mod2) + 1) / 2.0f);
+    }
+
+    public static float toCosine(float similitude) {
+        return similitude * 2.0f - 1.0f;
+    }
+
+    public static float toSimilitude(float cosine) {
+        return (cosine + 1.0f) / 2.0f;
+    }
+
+    /**
+     * Dot product of a[aOffset..aOffset+length) and b[bOffset..bOffset+length).
+     * Four independent accumulators so the JIT can keep the multiplies in flight
+     * instead of serializing on a single float add chain.
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0.0f;
+        float s1 = 0.0f;
+        float s2 = 0.0f;
+        float s3 = 0.0f;
+        int i = 0;
+        int upper = length & ~3;
+        for (; i < upper; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Integer dot product of two int8 code vectors. Each term is at most 127 * 127, so an int
+     * can't overflow below 130k dimensions.
+     */
+    public static int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int s0 = 0;
+        int s1 = 0;
+        int s2 = 0;
+        int s3 = 0;
+        int i = 0;
+        int upper = length & ~3;
+        for (; i < upper; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static float norm(float[] a) {
+        return (float) Math.sqrt(dot(a, 0, a, 0, a.length));
+    }
+
+    /**
+     * Writes the L2 normalized copy of src into dst at dstOffset.
+     * A zero vector is written as zeros.
+     */
+    public static void normalize(float[] src, float[] dst, int dstOffset) {
+        float norm = norm(src);
+        float inv = norm > 0.0f ? 1.0f / norm : 0.0f;
+        for (int i = 0; i < src.length; i++) {
+            dst[dstOffset + i] = src[i] * inv;
+        }
+    }
+
+    public static float[] normalize(float[] src) {
+        float[] dst = new float[src.length];
+        normalize(src, dst, 0);
+        return dst;
+    }
+
+    /**
+     * Symmetric int8 quantization of src into dst at dstOffset, src[i] ~= dst[i] * scale.
+     * @return the scale, 0 for a zero vector
+     */
+    public static float quantize(float[] src, byte[] dst, int dstOffset) {
+        float maxAbs = 0.0f;
+        for (float value : src) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        if (maxAbs == 0.0f) {
+            Arrays.fill(dst, dstOffset, dstOffset + src.length, (byte) 0);
+            return 0.0f;
+        }
+        float inv = 127.0f / maxAbs;
+        for (int i = 0; i < src.length; i++) {
+            dst[dstOffset + i] = (byte) Math.round(src[i] * inv);
+        }
+        return maxAbs / 127.0f;
+    }
+}
@@ -0,0 +1,546 @@
+package io.github.hmojicag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-stage pipeline. A source thread feeds the first stage, every stage has its own
+ * worker threads and a bounded input queue, and a single sink thread receives the results.
+ * A full queue blocks the stage in front of it, so a slow stage throttles the whole pipeline
+ * instead of letting work pile up in memory.
+ * <p>
+ * A stage function returning null drops the item (e.g. no face found). An exception thrown by a
+ * stage function is counted as a failure and the item is dropped.
+ * <p>
+ * An asynchronous stage ({@link Builder#thenAsync}) has no worker per item: its function starts the
+ * work and returns a future, and up to maxInFlight futures may be pending at once. Results are
+ * handed to the next stage as they complete, so the threads completing the futures never block.
+ * <p>
+ * Example:
+ * <pre>
+ * StagedPipeline.source("list", files.iterator())
+ *         .then("decode", 2, 16, this::decode)
+ *         .thenBatched("embed", 2, 32, 8, 20, this::embed)
+ *         .to(results::add)
+ *         .run();
+ * </pre>
+ */
+public class StagedPipeline {
+    private static final long POLL_MILLIS = 50;
+
+    public interface StageFunction<I, O> {
+        O apply(I input) throws Exception;
+    }
+
+    public interface BatchStageFunction<I, O> {
+        /**
+         * @return one output per input, in input order. Null entries are dropped.
+         */
+        List<O> apply(List<I> inputs) throws Exception;
+    }
+
+    public interface AsyncStageFunction<I, O> {
+        /**
+         * Starts processing input. A null result or an exceptional completion drops the item.
+         */
+        CompletableFuture<O> apply(I input) throws Exception;
+    }
+
+    private final String sourceName;
+    private final Iterator<?> source;
+    private final List<Stage> stages;
+    private final Stage sink;
+
+    private StagedPipeline(String sourceName, Iterator<?> source, List<Stage> stages, Stage sink) {
+        this.sourceName = sourceName;
+        this.source = source;
+        this.stages = stages;
+        this.sink = sink;
+    }
+
+    public static <T> Builder<T> source(String name, Iterator<T> source) {
+        return new Builder<>(name, source, new ArrayList<>());
+    }
+
+    /**
+     * Runs the pipeline to completion on the calling thread plus the stage threads.
+     * Can only be called once.
+     */
+    public void run() throws InterruptedException {
+        List<Stage> all = new ArrayList<>(stages);
+        all.add(sink);
+        for (Stage stage : all) {
+            stage.start();
+        }
+        Stage first = all.get(0);
+        Thread sourceThread = new Thread(() -> {
+            try {
+                while (source.hasNext()) {
+                    first.put(source.next());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            } finally {
+                first.complete();
+            }
+        }, "pipeline-" + sourceName);
+        sourceThread.start();
+        try {
+            sourceThread.join();
+            for (Stage stage : all) {
+                stage.join();
+            }
+        } catch (InterruptedException ex) {
+            sourceThread.interrupt();
+            for (Stage stage : all) {
+                stage.interrupt();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Counters for each stage, the sink last.
+     */
+    public List<StageStats> getStats() {
+        List<StageStats> stats = new ArrayList<>();
+        for (Stage stage : stages) {
+            stats.add(stage.stats);
+        }
+        stats.add(sink.stats);
+        return Collections.unmodifiableList(stats);
+    }
+
+    public static final class Builder<T> {
+        private final String sourceName;
+        private final Iterator<?> source;
+        private final List<Stage> stages;
+
+        private Builder(String sourceName, Iterator<?> source, List<Stage> stages) {
+            this.sourceName = sourceName;
+            this.source = source;
+            this.stages = stages;
+        }
+
+        public <O> Builder<O> then(String name, int parallelism, int queueDepth, StageFunction<T, O> function) {
+            stages.add(new Stage(name, parallelism, queueDepth, 1, 0, inputs -> {
+                @SuppressWarnings("unchecked")
+                T input = (T) inputs.get(0);
+                return Collections.singletonList(function.apply(input));
+            }));
+            return new Builder<>(sourceName, source, stages);
+        }
+
+        /**
+         * Stage whose workers take up to batchSize items at a time, waiting at most maxWaitMillis
+         * after the first one for the batch to fill up.
+         */
+        public <O> Builder<O> thenBatched(String name, int parallelism, int queueDepth, int batchSize,
+                                          long maxWaitMillis, BatchStageFunction<T, O> function) {
+            stages.add(new Stage(name, parallelism, queueDepth, batchSize, maxWaitMillis, inputs -> {
+                @SuppressWarnings("unchecked")
+                List<T> typed = (List<T>) inputs;
+                return new ArrayList<Object>(function.apply(typed));
+            }));
+            return new Builder<>(sourceName, source, stages);
+        }
+
+        /**
+         * Stage keeping up to maxInFlight items in processing at once without a thread for each,
+         * for work done elsewhere such as ML Kit's detector. Outputs are in completion order.
+         */
+        public <O> Builder<O> thenAsync(String name, int maxInFlight, int queueDepth,
+                                        AsyncStageFunction<T, O> function) {
+            stages.add(new Stage(name, maxInFlight, queueDepth, input -> {
+                @SuppressWarnings("unchecked")
+                T typed = (T) input;
+                @SuppressWarnings("unchecked")
+                CompletableFuture<Object> output = (CompletableFuture<Object>) function.apply(typed);
+                return output;
+            }));
+            return new Builder<>(sourceName, source, stages);
+        }
+
+        /**
+         * Results are delivered to sink on one thread, in completion order.
+         */
+        public StagedPipeline to(Consumer<T> sink) {
+            if (stages.isEmpty()) {
+                throw new IllegalStateException("Pipeline needs at least one stage");
+            }
+            Stage sinkStage = new Stage("sink", 1, stages.get(stages.size() - 1).queue.remainingCapacity(), 1, 0,
+                    inputs -> {
+                        @SuppressWarnings("unchecked")
+                        T input = (T) inputs.get(0);
+                        sink.accept(input);
+                        return Collections.emptyList();
+                    });
+            for (int i = 0; i < stages.size() - 1; i++) {
+                stages.get(i).next = stages.get(i + 1);
+            }
+            stages.get(stages.size() - 1).next = sinkStage;
+            return new StagedPipeline(sourceName, source, new ArrayList<>(stages), sinkStage);
+        }
+    }
+
+    /**
+     * Live counters of one stage. Reads are racy snapshots, fine for monitoring.
+     */
+    public static final class StageStats {
+        private final String name;
+        private final int parallelism;
+        private final int queueCapacity;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong occupancySum = new AtomicLong();
+        private final AtomicLong occupancySamples = new AtomicLong();
+        private final AtomicInteger maxOccupancy = new AtomicInteger();
+        private final BlockingQueue<Object> queue;
+        private volatile long startNanos;
+        private volatile long endNanos;
+
+        StageStats(String name, int parallelism, BlockingQueue<Object> queue) {
+            this.name = name;
+            this.parallelism = parallelism;
+            this.queue = queue;
+            this.queueCapacity = queue.remainingCapacity();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Worker threads, or the maximum of items in flight for an asynchronous stage.
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /**
+         * Items taken from the stage input queue and handed to the stage function.
+         */
+        public long getProcessed() {
+            return processed.get();
+        }
+
+        /**
+         * Items for which the stage function returned null.
+         */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        public int getQueueSize() {
+            return queue.size();
+        }
+
+        public int getMaxQueueOccupancy() {
+            return maxOccupancy.get();
+        }
+
+        /**
+         * Average queue size seen by producers right after they enqueued.
+         */
+        public double getMeanQueueOccupancy() {
+            long samples = occupancySamples.get();
+            return samples == 0 ? 0 : (double) occupancySum.get() / samples;
+        }
+
+        /**
+         * Items per second over the stage's wall-clock lifetime so far.
+         */
+        public double getThroughput() {
+            long start = startNanos;
+            if (start == 0) {
+                return 0;
+            }
+            long end = endNanos == 0 ? System.nanoTime() : endNanos;
+            return end > start ? processed.get() / ((end - start) / 1e9) : 0;
+        }
+
+        /**
+         * Fraction of the workers' wall-clock time spent inside the stage function. For an
+         * asynchronous stage, mean items in flight over maxInFlight.
+         */
+        public double getUtilization() {
+            long start = startNanos;
+            if (start == 0) {
+                return 0;
+            }
+            long end = endNanos == 0 ? System.nanoTime() : endNanos;
+            return end > start ? busyNanos.get() / ((double) (end - start) * parallelism) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s{parallelism=%d, processed=%d, dropped=%d, failed=%d, %.1f items/s, "
+                            + "utilization=%.0f%%, queue mean=%.1f max=%d/%d}",
+                    name, parallelism, processed.get(), dropped.get(), failed.get(), getThroughput(),
+                    getUtilization() * 100, getMeanQueueOccupancy(), maxOccupancy.get(), queueCapacity);
+        }
+    }
+
+    private static final class Stage {
+        final StageStats stats;
+        final BlockingQueue<Object> queue;
+        final int batchSize;
+        final long maxWaitNanos;
+        final BatchStageFunction<Object, Object> function;
+        final AsyncStageFunction<Object, Object> asyncFunction;
+        // Asynchronous stages only: permits for items in flight, and the thread handing outputs over
+        final Semaphore inFlight;
+        final ExecutorService forwarder;
+        final List<Thread> workers = new ArrayList<>();
+        final AtomicInteger runningWorkers = new AtomicInteger();
+        volatile boolean completed;
+        Stage next;
+
+        Stage(String name, int parallelism, int queueDepth, int batchSize, long maxWaitMillis,
+              BatchStageFunction<Object, Object> function) {
+            if (parallelism < 1 || queueDepth < 1 || batchSize < 1) {
+                throw new IllegalArgumentException(String.format(
+                        "Stage %s needs parallelism, queueDepth and batchSize of at least 1", name));
+            }
+            this.queue = new ArrayBlockingQueue<>(queueDepth);
+            this.stats = new StageStats(name, parallelism, queue);
+            this.batchSize = batchSize;
+            this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            this.function = function;
+            this.asyncFunction = null;
+            this.inFlight = null;
+            this.forwarder = null;
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(new Thread(this::work, "pipeline-" + name + "-" + i));
+            }
+        }
+
+        /**
+         * Asynchronous stage: a single dispatcher thread starts up to maxInFlight items.
+         */
+        Stage(String name, int maxInFlight, int queueDepth, AsyncStageFunction<Object, Object> asyncFunction) {
+            if (maxInFlight < 1 || queueDepth < 1) {
+                throw new IllegalArgumentException(String.format(
+                        "Stage %s needs maxInFlight and queueDepth of at least 1", name));
+            }
+            this.queue = new ArrayBlockingQueue<>(queueDepth);
+            this.stats = new StageStats(name, maxInFlight, queue);
+            this.batchSize = 1;
+            this.maxWaitNanos = 0;
+            this.function = null;
+            this.asyncFunction = asyncFunction;
+            this.inFlight = new Semaphore(maxInFlight);
+            this.forwarder = Executors.newSingleThreadExecutor(
+                    runnable -> new Thread(runnable, "pipeline-" + name + "-forward"));
+            workers.add(new Thread(this::dispatch, "pipeline-" + name + "-dispatch"));
+        }
+
+        void put(Object item) throws InterruptedException {
+            queue.put(item);
+            int occupancy = queue.size();
+            stats.occupancySum.addAndGet(occupancy);
+            stats.occupancySamples.incrementAndGet();
+            int max;
+            while (occupancy > (max = stats.maxOccupancy.get())
+                    && !stats.maxOccupancy.compareAndSet(max, occupancy)) {
+                // retry
+            }
+        }
+
+        /**
+         * Called by the upstream once it won't put anything else.
+         */
+        void complete() {
+            completed = true;
+        }
+
+        void start() {
+            stats.startNanos = System.nanoTime();
+            runningWorkers.set(workers.size());
+            for (Thread worker : workers) {
+                worker.start();
+            }
+        }
+
+        void join() throws InterruptedException {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        void interrupt() {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            if (forwarder != null) {
+                forwarder.shutdownNow();
+            }
+        }
+
+        /**
+         * Loop of an asynchronous stage's single worker. Waiting for a permit is what limits the
+         * items in flight. A permit is given back once the item's output was handed to the next
+         * stage, so a full downstream queue also holds back new items.
+         */
+        private void dispatch() {
+            int maxInFlight = stats.parallelism;
+            try {
+                while (true) {
+                    Object input = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (input == null) {
+                        if (completed && queue.isEmpty()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    inFlight.acquire();
+                    stats.processed.incrementAndGet();
+                    long start = System.nanoTime();
+                    CompletableFuture<Object> output;
+                    try {
+                        output = asyncFunction.apply(input);
+                    } catch (InterruptedException ex) {
+                        inFlight.release();
+                        throw ex;
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                        stats.failed.incrementAndGet();
+                        inFlight.release();
+                        continue;
+                    }
+                    output.whenCompleteAsync((result, error) -> forward(start, result, error), forwarder);
+                }
+                // Every permit back means every item in flight was forwarded
+                inFlight.acquire(maxInFlight);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                forwarder.shutdown();
+                if (runningWorkers.decrementAndGet() == 0) {
+                    stats.endNanos = System.nanoTime();
+                    if (next != null) {
+                        next.complete();
+                    }
+                }
+            }
+        }
+
+        private void forward(long start, Object output, Throwable error) {
+            stats.busyNanos.addAndGet(System.nanoTime() - start);
+            try {
+                if (error != null) {
+                    error.printStackTrace();
+                    stats.failed.incrementAndGet();
+                } else if (output == null) {
+                    stats.dropped.incrementAndGet();
+                } else if (next != null) {
+                    next.put(output);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        private void work() {
+            List<Object> batch = new ArrayList<>(batchSize);
+            try {
+                while (true) {
+                    Object first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        // completed is set after the upstream's last put, so an empty queue
+                        // observed after it means there is nothing left to take
+                        if (completed && queue.isEmpty()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    batch.add(first);
+                    fillBatch(batch);
+                    process(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (runningWorkers.decrementAndGet() == 0) {
+                    stats.endNanos = System.nanoTime();
+                    if (next != null) {
+                        next.complete();
+                    }
+                }
+            }
+        }
+
+        private void fillBatch(List<Object> batch) throws InterruptedException {
+            if (batchSize == 1) {
+                return;
+            }
+            long deadline = System.nanoTime() + maxWaitNanos;
+            while (batch.size() < batchSize) {
+                queue.drainTo(batch, batchSize - batch.size());
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= batchSize || remaining <= 0 || completed) {
+                    return;
+                }
+                Object item = queue.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS)),
+                        TimeUnit.NANOSECONDS);
+                if (item != null) {
+                    batch.add(item);
+                }
+            }
+        }
+
+        private void process(List<Object> batch) throws InterruptedException {
+            stats.processed.addAndGet(batch.size());
+            long start = System.nanoTime();
+            List<Object> outputs;
+            try {
+                outputs = function.apply(batch);
+            } catch (InterruptedException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                stats.failed.addAndGet(batch.size());
+                return;
+            } finally {
+                stats.busyNanos.addAndGet(System.nanoTime() - start);
+            }
+            if (next == null) {
+                return;
+            }
+            for (Object output : outputs) {
+                if (output == null) {
+                    stats.dropped.incrementAndGet();
+                } else {
+                    next.put(output);
+                }
+            }
+        }
+    }
+}
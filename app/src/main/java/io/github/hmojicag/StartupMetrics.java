@@ -0,0 +1,68 @@
+package io.github.hmojicag;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wall-clock duration of each startup phase, in the order they were recorded.
+ * Phases are either timed around a block with {@link #begin()}/{@link #end(String, long)}
+ * or measured from the moment this object was created with {@link #markSinceStart(String)}.
+ * Safe to use from the loader thread and the UI thread at the same time.
+ */
+public class StartupMetrics {
+    private final long startMillis = System.currentTimeMillis();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    /**
+     * @return the token to pass to {@link #end(String, long)}
+     */
+    public long begin() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Records phase as the time elapsed since begin.
+     * @return the recorded duration in ms
+     */
+    public long end(String phase, long begin) {
+        long millis = System.currentTimeMillis() - begin;
+        record(phase, millis);
+        return millis;
+    }
+
+    /**
+     * Records phase as the time elapsed since this object was created, only the first time.
+     */
+    public synchronized void markSinceStart(String phase) {
+        if (!phases.containsKey(phase)) {
+            phases.put(phase, System.currentTimeMillis() - startMillis);
+        }
+    }
+
+    public synchronized void record(String phase, long millis) {
+        phases.put(phase, millis);
+    }
+
+    /**
+     * @return the duration of phase in ms, -1 if it hasn't been recorded
+     */
+    public synchronized long get(String phase) {
+        Long millis = phases.get(phase);
+        return millis == null ? -1 : millis;
+    }
+
+    public synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("StartupMetrics{");
+        String separator = "";
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            sb.append(separator).append(phase.getKey()).append('=').append(phase.getValue()).append("ms");
+            separator = ", ";
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class EmbeddingComparisonTest {
+
+    @Test
+    public void compare_scaledEmbeddingsAreEquivalent() {
+        EmbeddingComparison comparison = EmbeddingComparison.compare(
+                Arrays.asList(new float[] {1f, 2f, 3f}, new float[] {0f, 1f, 0f}),
+                Arrays.asList(new float[] {2f, 4f, 6f}, new float[] {0f, 0.5f, 0f}));
+        assertEquals(2, comparison.getCount());
+        assertEquals(1.0f, comparison.getMinCosine(), 1e-6f);
+        assertEquals(1.0f, comparison.getMeanCosine(), 1e-6f);
+        assertTrue(comparison.isEquivalent());
+    }
+
+    @Test
+    public void compare_reportsTheLeastSimilarPair() {
+        EmbeddingComparison comparison = EmbeddingComparison.compare(
+                Arrays.asList(new float[] {1f, 0f}, new float[] {1f, 0f}, new float[] {1f, 0f}),
+                Arrays.asList(new float[] {1f, 0f}, new float[] {1f, 1f}, new float[] {1f, 0.01f}));
+        assertEquals(1, comparison.getMinIndex());
+        assertEquals((float) Math.sqrt(0.5), comparison.getMinCosine(), 1e-6f);
+        assertFalse(comparison.isEquivalent());
+        assertTrue(comparison.isEquivalent(0.7f));
+    }
+
+    @Test
+    public void compare_emptyListsAreEquivalent() {
+        EmbeddingComparison comparison = EmbeddingComparison.compare(
+                Collections.<float[]>emptyList(), Collections.<float[]>emptyList());
+        assertEquals(0, comparison.getCount());
+        assertEquals(-1, comparison.getMinIndex());
+        assertTrue(comparison.isEquivalent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compare_rejectsDifferentSizes() {
+        EmbeddingComparison.compare(
+                Collections.singletonList(new float[] {1f}), Collections.<float[]>emptyList());
+    }
+}
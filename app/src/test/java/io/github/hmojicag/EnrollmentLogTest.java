@@ -0,0 +1,290 @@
+package io.github.hmojicag;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EnrollmentLogTest {
+    private static final int DIMENSION = 16;
+    private static final String MODEL_ID = "face_feature";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static float[] vector(Random random) {
+        float[] features = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            features[i] = (float) random.nextGaussian();
+        }
+        return features;
+    }
+
+    private Path basePath(String name) {
+        return folder.getRoot().toPath().resolve(name);
+    }
+
+    private static Path logFile(Path basePath) {
+        return basePath.resolveSibling(basePath.getFileName() + ".log");
+    }
+
+    private static void assertSameBioPhotos(List<BioPhoto> expected, List<BioPhoto> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getEmpresa(), actual.get(i).getEmpresa());
+            assertEquals(expected.get(i).getEmpleado(), actual.get(i).getEmpleado());
+            assertArrayEquals(expected.get(i).getFeatures(), actual.get(i).getFeatures(), 0.0f);
+        }
+    }
+
+    /**
+     * Applies random adds, updates and deletes.
+     * @return the log size after each change, with the state at that point in states
+     */
+    private static List<Long> randomChanges(EnrollmentLog log, int changes, Random random,
+                                            List<List<BioPhoto>> states) throws Exception {
+        List<Long> ends = new ArrayList<>();
+        while (ends.size() < changes) {
+            int empleado = random.nextInt(20);
+            int type = random.nextInt(10);
+            if (type < 6) {
+                log.add(1, empleado, vector(random));
+            } else if (type < 8) {
+                log.update(1, empleado, vector(random));
+            } else if (!log.delete(1, empleado)) {
+                continue;
+            }
+            ends.add(log.getLogBytes());
+            states.add(log.getBioPhotos());
+        }
+        return ends;
+    }
+
+    @Test
+    public void changes_surviveReopen() throws Exception {
+        Path basePath = basePath("enrollment");
+        Random random = new Random(1);
+        float[] first = vector(random);
+        float[] second = vector(random);
+        float[] replacement = vector(random);
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, true)) {
+            log.add(1, 10, first);
+            log.add(1, 10, second);
+            log.add(1, 11, first);
+            log.add(2, 10, second);
+            log.update(1, 11, replacement);
+            assertTrue(log.delete(2, 10));
+            assertFalse(log.delete(2, 10));
+        }
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, true)) {
+            assertEquals(6, log.getLogRecords());
+            assertEquals(0, log.getTruncatedBytes());
+            assertEquals(2, log.getEmployeeCount());
+            assertEquals(2, log.getTemplates(1, 10).size());
+            assertArrayEquals(second, log.getTemplates(1, 10).get(1), 0.0f);
+            assertEquals(1, log.getTemplates(1, 11).size());
+            assertArrayEquals(replacement, log.getTemplates(1, 11).get(0), 0.0f);
+            assertTrue(log.getTemplates(2, 10).isEmpty());
+        }
+    }
+
+    @Test
+    public void open_otherModelStartsEmpty() throws Exception {
+        Path basePath = basePath("enrollment");
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            log.add(1, 10, vector(new Random(2)));
+            log.compact();
+            log.add(1, 11, vector(new Random(3)));
+        }
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, "face_feature-int8", DIMENSION, false)) {
+            assertEquals(0, log.getEmployeeCount());
+            assertEquals(0, log.getLogRecords());
+        }
+    }
+
+    @Test
+    public void replay_truncatedAtAnyOffsetKeepsCompleteRecords() throws Exception {
+        Path basePath = basePath("enrollment");
+        List<List<BioPhoto>> states = new ArrayList<>();
+        List<Long> ends;
+        long headerSize;
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            headerSize = log.getLogBytes();
+            ends = randomChanges(log, 60, new Random(4), states);
+        }
+        long size = ends.get(ends.size() - 1);
+        Random random = new Random(5);
+        for (int trial = 0; trial < 100; trial++) {
+            long offset = headerSize + (long) (random.nextDouble() * (size - headerSize));
+            Path crashed = basePath("crash" + trial);
+            Files.copy(logFile(basePath), logFile(crashed));
+            try (RandomAccessFile file = new RandomAccessFile(logFile(crashed).toFile(), "rw")) {
+                file.setLength(offset);
+            }
+            int complete = 0;
+            while (complete < ends.size() && ends.get(complete) <= offset) {
+                complete++;
+            }
+            try (EnrollmentLog log = EnrollmentLog.open(crashed, MODEL_ID, DIMENSION, false)) {
+                List<BioPhoto> expected = complete == 0 ? new ArrayList<BioPhoto>() : states.get(complete - 1);
+                assertSameBioPhotos(expected, log.getBioPhotos());
+                assertEquals(complete, log.getLogRecords());
+                long validEnd = complete == 0 ? headerSize : ends.get(complete - 1);
+                assertEquals(offset - validEnd, log.getTruncatedBytes());
+                // Appends after the cut replay too
+                log.add(7, 7, vector(random));
+            }
+            try (EnrollmentLog log = EnrollmentLog.open(crashed, MODEL_ID, DIMENSION, false)) {
+                assertEquals(complete + 1, log.getLogRecords());
+                assertEquals(0, log.getTruncatedBytes());
+            }
+        }
+    }
+
+    @Test
+    public void replay_stopsAtCorruptRecord() throws Exception {
+        Path basePath = basePath("enrollment");
+        List<List<BioPhoto>> states = new ArrayList<>();
+        List<Long> ends;
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            ends = randomChanges(log, 40, new Random(6), states);
+        }
+        Random random = new Random(7);
+        for (int trial = 0; trial < 40; trial++) {
+            int record = 1 + random.nextInt(ends.size() - 1);
+            long start = ends.get(record - 1);
+            long offset = start + random.nextInt((int) (ends.get(record) - start));
+            Path corrupted = basePath("corrupt" + trial);
+            Files.copy(logFile(basePath), logFile(corrupted));
+            try (RandomAccessFile file = new RandomAccessFile(logFile(corrupted).toFile(), "rw")) {
+                file.seek(offset);
+                int value = file.read();
+                file.seek(offset);
+                file.write(value ^ (1 << random.nextInt(8)));
+            }
+            try (EnrollmentLog log = EnrollmentLog.open(corrupted, MODEL_ID, DIMENSION, false)) {
+                assertSameBioPhotos(states.get(record - 1), log.getBioPhotos());
+                assertEquals(ends.get(ends.size() - 1) - start, log.getTruncatedBytes());
+            }
+        }
+    }
+
+    @Test
+    public void open_dropsCorruptOrTruncatedSnapshot() throws Exception {
+        Path basePath = basePath("enrollment");
+        Random random = new Random(12);
+        float[] later = vector(random);
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            log.add(1, 10, vector(random));
+            log.add(1, 11, vector(random));
+            log.compact();
+            log.add(1, 12, later);
+        }
+        Path snapshot = basePath.resolveSibling("enrollment.snapshot");
+        long snapshotSize = Files.size(snapshot);
+        for (int trial = 0; trial < 2; trial++) {
+            Path damaged = basePath("damaged" + trial);
+            Path damagedSnapshot = damaged.resolveSibling(damaged.getFileName() + ".snapshot");
+            Files.copy(logFile(basePath), logFile(damaged));
+            Files.copy(snapshot, damagedSnapshot);
+            try (RandomAccessFile file = new RandomAccessFile(damagedSnapshot.toFile(), "rw")) {
+                if (trial == 0) {
+                    file.seek(snapshotSize / 2);
+                    int value = file.read();
+                    file.seek(snapshotSize / 2);
+                    file.write(value ^ 1);
+                } else {
+                    file.setLength(snapshotSize - 5);
+                }
+            }
+            long damagedSize = Files.size(damagedSnapshot);
+            try (EnrollmentLog log = EnrollmentLog.open(damaged, MODEL_ID, DIMENSION, false)) {
+                assertEquals(damagedSize, log.getDroppedSnapshotBytes());
+                assertFalse(Files.exists(damagedSnapshot));
+                // Only the change made after the compaction is left, the rest is enrolled again
+                assertEquals(1, log.getEmployeeCount());
+                assertArrayEquals(later, log.getTemplates(1, 12).get(0), 0.0f);
+                log.add(1, 10, vector(random));
+                log.compact();
+            }
+            try (EnrollmentLog log = EnrollmentLog.open(damaged, MODEL_ID, DIMENSION, false)) {
+                assertEquals(0, log.getDroppedSnapshotBytes());
+                assertEquals(2, log.getEmployeeCount());
+            }
+        }
+    }
+
+    @Test
+    public void compact_foldsLogIntoSnapshot() throws Exception {
+        Path basePath = basePath("enrollment");
+        List<BioPhoto> expected;
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            randomChanges(log, 200, new Random(8), new ArrayList<List<BioPhoto>>());
+            long before = log.getLogBytes();
+            log.compact();
+            assertEquals(0, log.getLogRecords());
+            assertTrue(log.getLogBytes() < before);
+            log.add(3, 3, vector(new Random(9)));
+            expected = log.getBioPhotos();
+        }
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            assertEquals(1, log.getLogRecords());
+            assertSameBioPhotos(expected, log.getBioPhotos());
+        }
+    }
+
+    @Test
+    public void replay_skipsRecordsAlreadyInSnapshot() throws Exception {
+        // A crash after the snapshot was moved into place but before the log was rewritten
+        // leaves the old log, whose records must not be applied twice.
+        Path basePath = basePath("enrollment");
+        Path oldLog = basePath("old.log");
+        List<BioPhoto> expected;
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            randomChanges(log, 50, new Random(10), new ArrayList<List<BioPhoto>>());
+            log.sync();
+            Files.copy(logFile(basePath), oldLog);
+            log.compact();
+            expected = log.getBioPhotos();
+        }
+        Files.copy(oldLog, logFile(basePath), StandardCopyOption.REPLACE_EXISTING);
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            assertSameBioPhotos(expected, log.getBioPhotos());
+            log.add(4, 4, vector(new Random(11)));
+            expected = log.getBioPhotos();
+        }
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            assertSameBioPhotos(expected, log.getBioPhotos());
+        }
+    }
+
+    @Test
+    public void backgroundCompaction_keepsConcurrentChanges() throws Exception {
+        Path basePath = basePath("enrollment");
+        List<BioPhoto> expected;
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            log.setCompactThresholdBytes(4096);
+            Random random = new Random(12);
+            for (int i = 0; i < 2000; i++) {
+                log.add(1 + i % 3, i, vector(random));
+                if (i % 5 == 0) {
+                    log.delete(1 + (i - 5) % 3, i - 5);
+                }
+            }
+            expected = log.getBioPhotos();
+        }
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, DIMENSION, false)) {
+            assertSameBioPhotos(expected, log.getBioPhotos());
+            assertTrue(log.getLogBytes() < 2000L * (8 + 17 + 4 * DIMENSION));
+        }
+    }
+}
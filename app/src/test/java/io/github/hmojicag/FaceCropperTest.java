@@ -0,0 +1,86 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FaceCropperTest {
+
+    private static int gray(int value) {
+        return 0xff000000 | (value << 16) | (value << 8) | value;
+    }
+
+    /**
+     * Image whose pixel (x, y) has gray level x + y.
+     */
+    private static int[] gradient(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = gray(x + y);
+            }
+        }
+        return pixels;
+    }
+
+    @Test
+    public void setBox_clampsToImage() {
+        FaceCropper cropper = new FaceCropper(4, 0.0f);
+        assertTrue(cropper.setBox(-5, 2, 30, 8, 20, 10));
+        assertEquals(0, cropper.getLeft());
+        assertEquals(2, cropper.getTop());
+        assertEquals(20, cropper.getWidth());
+        assertEquals(6, cropper.getHeight());
+        assertFalse(cropper.setBox(25, 2, 30, 8, 20, 10));
+    }
+
+    @Test
+    public void setBox_addsMarginOnEverySide() {
+        FaceCropper cropper = new FaceCropper(4, 0.25f);
+        assertTrue(cropper.setBox(20, 40, 60, 60, 100, 100));
+        assertEquals(10, cropper.getLeft());
+        assertEquals(35, cropper.getTop());
+        assertEquals(60, cropper.getWidth());
+        assertEquals(30, cropper.getHeight());
+    }
+
+    @Test
+    public void crop_sameSizeCopiesRegion() {
+        int[] image = gradient(10, 10);
+        FaceCropper cropper = new FaceCropper(4, 0.0f);
+        cropper.setBox(3, 2, 7, 6, 10, 10);
+        int[] target = cropper.crop(image, 10);
+        assertEquals(16, target.length);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                assertEquals(image[(2 + y) * 10 + 3 + x], target[y * 4 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void crop_downscalesByAveragingNeighbours() {
+        int[] image = gradient(8, 8);
+        FaceCropper cropper = new FaceCropper(4, 0.0f);
+        cropper.setBox(0, 0, 8, 8, 8, 8);
+        int[] target = cropper.crop(image, 8);
+        // Target pixel (x, y) samples the middle of source pixels 2x..2x+1, 2y..2y+1
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                assertEquals(gray(2 * x + 2 * y + 1), target[y * 4 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void crop_reusesBuffers() {
+        int[] image = gradient(50, 50);
+        FaceCropper cropper = new FaceCropper(8, 0.1f);
+        cropper.setBox(10, 10, 40, 40, 50, 50);
+        int[] region = cropper.getRegionPixels();
+        int[] target = cropper.crop(image, 50);
+        cropper.setBox(20, 20, 30, 30, 50, 50);
+        assertSame(region, cropper.getRegionPixels());
+        assertSame(target, cropper.crop(image, 50));
+    }
+}
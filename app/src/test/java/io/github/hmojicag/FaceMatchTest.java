@@ -0,0 +1,37 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FaceMatchTest {
+
+    @Test
+    public void matchAll_keepsFaceOrderAndBoxes() {
+        PartitionedGallery gallery = PartitionedGallery.fromBioPhotos(Arrays.asList(
+                new BioPhoto(1, 10, null, null, new float[] {1f, 0f}),
+                new BioPhoto(1, 20, null, null, new float[] {0f, 1f})));
+        List<int[]> boxes = Arrays.asList(new int[] {0, 0, 100, 100}, new int[] {200, 0, 300, 100});
+        List<float[]> features = Arrays.asList(new float[] {0.1f, 1f}, new float[] {1f, 0.1f});
+
+        List<FaceMatch> matches = FaceMatch.matchAll(gallery, 1, boxes, features, PartitionedGallery.ScoreMode.MAX);
+        assertEquals(2, matches.size());
+        assertSame(boxes.get(0), matches.get(0).getBox());
+        assertEquals(20, matches.get(0).getEmpleado());
+        assertEquals(10, matches.get(1).getEmpleado());
+        assertTrue(matches.get(1).isAccepted(0.70f));
+        assertEquals(Similarity.calculateSimilitude(features.get(1), new float[] {1f, 0f}),
+                matches.get(1).getScore(), 1e-6f);
+    }
+
+    @Test
+    public void matchAll_withoutGalleryHasNoCandidates() {
+        List<FaceMatch> matches = FaceMatch.matchAll(null, 1, Arrays.asList(new int[] {0, 0, 10, 10}),
+                Arrays.asList(new float[] {1f, 0f}), PartitionedGallery.ScoreMode.MAX);
+        assertFalse(matches.get(0).hasCandidate());
+        assertFalse(matches.get(0).isAccepted(0.0f));
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.hmojicag;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FeatureCacheTest {
+    private static final String MODEL_ID = "face_feature";
+    private static final String PREPROCESSING = "decode480-crop160-margin0.000-bilinear";
+    private static final int[] BOX = {10, 20, 170, 180};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void get_requiresMatchingFingerprint() {
+        FeatureCache cache = FeatureCache.load(folder.getRoot().toPath().resolve("features.cache"), MODEL_ID, PREPROCESSING);
+        float[] features = PartitionedGalleryTest.randomVector(new Random(1));
+        cache.put("/photos/1-10.jpg", 1000L, 5000L, BOX, features);
+
+        FeatureCache.Entry entry = cache.get("/photos/1-10.jpg", 1000L, 5000L);
+        assertNotNull(entry);
+        assertTrue(entry.hasFace());
+        assertArrayEquals(BOX, entry.getBox());
+        assertArrayEquals(features, entry.getFeatures(), 0.0f);
+        assertNull(cache.get("/photos/1-10.jpg", 1001L, 5000L));
+        assertNull(cache.get("/photos/1-10.jpg", 1000L, 5001L));
+        assertNull(cache.get("/photos/1-11.jpg", 1000L, 5000L));
+    }
+
+    @Test
+    public void putSkipped_remembersPhotosWithoutFace() {
+        FeatureCache cache = FeatureCache.load(folder.getRoot().toPath().resolve("features.cache"), MODEL_ID, PREPROCESSING);
+        cache.putSkipped("/photos/1-10.jpg", 1000L, 5000L);
+
+        FeatureCache.Entry entry = cache.get("/photos/1-10.jpg", 1000L, 5000L);
+        assertNotNull(entry);
+        assertFalse(entry.hasFace());
+        assertNull(entry.getFeatures());
+    }
+
+    @Test
+    public void evictMissing_onlyTouchesGivenDirectory() {
+        Path root = folder.getRoot().toPath();
+        Path bioPhotos = root.resolve("BioPhotos");
+        FeatureCache cache = FeatureCache.load(root.resolve("features.cache"), MODEL_ID, PREPROCESSING);
+        cache.putSkipped(bioPhotos.resolve("1-10.jpg").toString(), 1L, 1L);
+        cache.putSkipped(bioPhotos.resolve("1-11.jpg").toString(), 1L, 1L);
+        cache.putSkipped(root.resolve("BioPhotosOld").resolve("1-12.jpg").toString(), 1L, 1L);
+        cache.putSkipped(root.resolve("AttPhotos").resolve("1-13.jpg").toString(), 1L, 1L);
+
+        int evicted = cache.evictMissing(bioPhotos,
+                new HashSet<>(Arrays.asList(bioPhotos.resolve("1-10.jpg").toString())));
+
+        assertEquals(1, evicted);
+        assertEquals(3, cache.size());
+        assertNull(cache.get(bioPhotos.resolve("1-11.jpg").toString(), 1L, 1L));
+    }
+
+    @Test
+    public void save_roundTrips() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("features.cache");
+        Random random = new Random(2);
+        float[][] features = new float[50][];
+        FeatureCache cache = FeatureCache.load(path, MODEL_ID, PREPROCESSING);
+        for (int i = 0; i < features.length; i++) {
+            features[i] = PartitionedGalleryTest.randomVector(random);
+            cache.put("/photos/" + i + ".jpg", i, i * 10L, BOX, features[i]);
+        }
+        cache.putSkipped("/photos/blurry.jpg", 7L, 70L);
+        cache.save();
+
+        FeatureCache loaded = FeatureCache.load(path, MODEL_ID, PREPROCESSING);
+        assertEquals(51, loaded.size());
+        for (int i = 0; i < features.length; i++) {
+            FeatureCache.Entry entry = loaded.get("/photos/" + i + ".jpg", i, i * 10L);
+            assertArrayEquals(BOX, entry.getBox());
+            assertArrayEquals(features[i], entry.getFeatures(), 0.0f);
+        }
+        assertFalse(loaded.get("/photos/blurry.jpg", 7L, 70L).hasFace());
+    }
+
+    @Test
+    public void load_otherModelStartsEmpty() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("features.cache");
+        FeatureCache cache = FeatureCache.load(path, MODEL_ID, PREPROCESSING);
+        cache.put("/photos/1-10.jpg", 1L, 1L, BOX, PartitionedGalleryTest.randomVector(new Random(3)));
+        cache.save();
+
+        assertEquals(0, FeatureCache.load(path, "face_feature_int8", PREPROCESSING).size());
+    }
+
+    @Test
+    public void load_otherPreprocessingStartsEmpty() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("features.cache");
+        FeatureCache cache = FeatureCache.load(path, MODEL_ID, PREPROCESSING);
+        cache.put("/photos/1-10.jpg", 1L, 1L, BOX, PartitionedGalleryTest.randomVector(new Random(5)));
+        cache.save();
+
+        assertEquals(1, FeatureCache.load(path, MODEL_ID, PREPROCESSING).size());
+        assertEquals(0, FeatureCache.load(path, MODEL_ID, "decode480-crop160-margin0.100-bilinear").size());
+    }
+
+    @Test
+    public void load_previousVersionStartsEmpty() throws Exception {
+        // Version 1 had no preprocessing in the header, its entries came from full size decodes
+        Path path = folder.getRoot().toPath().resolve("features.cache");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            out.writeInt(0x48434546);
+            out.writeInt(1);
+            out.writeUTF(MODEL_ID);
+            out.writeInt(1);
+            out.writeUTF("/photos/1-10.jpg");
+            out.writeLong(1L);
+            out.writeLong(1L);
+            out.writeBoolean(false);
+        }
+        assertEquals(0, FeatureCache.load(path, MODEL_ID, PREPROCESSING).size());
+    }
+
+    @Test
+    public void load_truncatedFileKeepsCompleteEntries() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("features.cache");
+        Random random = new Random(4);
+        FeatureCache cache = FeatureCache.load(path, MODEL_ID, PREPROCESSING);
+        for (int i = 0; i < 10; i++) {
+            cache.put("/photos/" + i + ".jpg", 1L, 1L, BOX, PartitionedGalleryTest.randomVector(random));
+        }
+        cache.save();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 100);
+        }
+
+        assertEquals(9, FeatureCache.load(path, MODEL_ID, PREPROCESSING).size());
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FusedGalleryTest {
+
+    /**
+     * templates noisy BioPhotos of each of employees employees of company 1, the last one of each
+     * employee a random outlier if withOutliers.
+     */
+    static List<BioPhoto> enrollment(Random random, int employees, int templates, boolean withOutliers,
+                                     float[][] outIdentities) {
+        List<BioPhoto> bioPhotos = new ArrayList<>();
+        for (int empleado = 0; empleado < employees; empleado++) {
+            outIdentities[empleado] = PartitionedGalleryTest.randomVector(random);
+            for (int t = 0; t < templates; t++) {
+                float[] features = withOutliers && t == templates - 1 ? PartitionedGalleryTest.randomVector(random)
+                        : PartitionedGalleryTest.noisyCopy(outIdentities[empleado], random, 1.0f);
+                bioPhotos.add(new BioPhoto(1, empleado, null, null, features));
+            }
+        }
+        return bioPhotos;
+    }
+
+    @Test
+    public void fromBioPhotos_keepsOneTemplatePerEmployee() {
+        Random random = new Random(1);
+        List<BioPhoto> bioPhotos = enrollment(random, 20, 4, false, new float[20][]);
+        FusedGallery gallery = FusedGallery.fromBioPhotos(bioPhotos, 0.6f, 3);
+
+        assertEquals(20, gallery.getCentroids().size());
+        assertEquals(80, gallery.getRaw().size());
+        assertEquals(0, gallery.getRejectedTemplates());
+        assertNull(FusedGallery.fromBioPhotos(new ArrayList<BioPhoto>(), 0.6f, 3));
+    }
+
+    @Test
+    public void rejectOutliers_dropsTemplateFarFromTheOthers() {
+        Random random = new Random(2);
+        float[] identity = PartitionedGalleryTest.randomVector(random);
+        List<float[]> templates = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            templates.add(Similarity.normalize(PartitionedGalleryTest.noisyCopy(identity, random, 1.0f)));
+        }
+        float[] outlier = Similarity.normalize(PartitionedGalleryTest.randomVector(random));
+        templates.add(outlier);
+
+        List<float[]> kept = FusedGallery.rejectOutliers(templates, 0.6f);
+        assertEquals(4, kept.size());
+        assertFalse(kept.contains(outlier));
+        assertEquals(5, FusedGallery.rejectOutliers(templates, 0.0f).size());
+        // Two templates can't outvote each other
+        assertEquals(2, FusedGallery.rejectOutliers(Arrays.asList(templates.get(0), outlier), 0.6f).size());
+    }
+
+    @Test
+    public void searchCompany_rescoresAgainstRawTemplates() {
+        Random random = new Random(3);
+        float[][] identities = new float[50][];
+        List<BioPhoto> bioPhotos = enrollment(random, 50, 5, true, identities);
+        FusedGallery gallery = FusedGallery.fromBioPhotos(bioPhotos, 0.6f, 3);
+        assertEquals(50, gallery.getRejectedTemplates());
+        int[] empleado = new int[1];
+        float[] score = new float[1];
+
+        for (int i = 0; i < 50; i++) {
+            float[] query = PartitionedGalleryTest.noisyCopy(identities[i], random, 1.0f);
+            assertEquals(1, gallery.searchCompany(1, query, 0.0f, PartitionedGallery.ScoreMode.MAX, empleado, score));
+            assertEquals(i, empleado[0]);
+            // Same scale as a raw search, the outlier included
+            assertEquals(gallery.getRaw().verify(1, i, query, PartitionedGallery.ScoreMode.MAX), score[0], 0.0f);
+        }
+        assertEquals(0, gallery.searchCompany(2, identities[0], 0.0f, PartitionedGallery.ScoreMode.MAX,
+                empleado, score));
+        assertEquals(0, gallery.searchCompany(1, identities[0], 0.99f, PartitionedGallery.ScoreMode.MAX,
+                empleado, score));
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles_withinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(5000.5, histogram.getMean(), 1e-9);
+        assertEquals(10_000, histogram.getMax());
+        assertEquals(5000, histogram.getPercentile(50), 5000 * 0.07);
+        assertEquals(9500, histogram.getPercentile(95), 9500 * 0.07);
+        assertEquals(9900, histogram.getPercentile(99), 9900 * 0.07);
+        assertEquals(10_000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void smallValues_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 16; i++) {
+            histogram.record(i);
+        }
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(0, new LatencyHistogram().getPercentile(99));
+    }
+
+    @Test
+    public void buckets_coverTheirValues() {
+        for (long value : new long[] {0, 15, 16, 17, 31, 32, 33, 1000, 123_456, 1L << 39}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void record_isThreadSafe() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 25_000; i++) {
+                    histogram.record(i % 1000);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(999, histogram.getMax());
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MatchEvaluatorTest {
+
+    @Test
+    public void record_fillsConfusionMatrix() {
+        MatchEvaluator evaluator = new MatchEvaluator(0.70f);
+        evaluator.record(true, true, true, 0.90f);
+        evaluator.record(true, true, true, 0.70f);
+        evaluator.record(true, true, false, 0.80f);
+        evaluator.record(true, true, true, 0.65f);
+        evaluator.record(true, false, false, 0.0f);
+        evaluator.record(false, true, false, 0.75f);
+        evaluator.record(false, true, false, 0.60f);
+
+        assertEquals(7, evaluator.getTotal());
+        assertEquals(5, evaluator.getEnrolled());
+        assertEquals(2, evaluator.getGoodMatches());
+        assertEquals(1, evaluator.getMismatches());
+        assertEquals(2, evaluator.getNoMatches());
+        assertEquals(1, evaluator.getFalseAccepts());
+        assertEquals(1, evaluator.getTrueRejects());
+        // good matches over every photo, not total - good / total
+        assertEquals(2.0 / 7, evaluator.getSuccessRate(), 1e-9);
+    }
+
+    @Test
+    public void tarFar_followThreshold() {
+        MatchEvaluator evaluator = new MatchEvaluator(0.70f);
+        evaluator.record(true, true, true, 0.90f);
+        evaluator.record(true, true, true, 0.70f);
+        evaluator.record(true, true, true, 0.65f);
+        evaluator.record(true, true, false, 0.80f);
+        evaluator.record(false, true, false, 0.68f);
+
+        assertEquals(2.0 / 4, evaluator.getTar(0.70f), 1e-9);
+        assertEquals(3.0 / 4, evaluator.getTar(0.60f), 1e-9);
+        assertEquals(1.0 / 4, evaluator.getTar(0.85f), 1e-9);
+        assertEquals(1.0 / 5, evaluator.getFar(0.70f), 1e-9);
+        assertEquals(2.0 / 5, evaluator.getFar(0.60f), 1e-9);
+        assertEquals(0.0, evaluator.getFar(0.90f), 1e-9);
+    }
+
+    @Test
+    public void histogram_matchesOperatingCounts() {
+        MatchEvaluator evaluator = new MatchEvaluator(0.70f);
+        for (int i = 0; i < 10_000; i++) {
+            float score = (i % 1000) / 1000.0f;
+            evaluator.record(true, true, i % 3 != 0, score);
+        }
+        assertEquals(evaluator.getGoodMatches(), Math.round(evaluator.getTar(0.70f) * evaluator.getEnrolled()));
+        assertEquals(evaluator.getMismatches(), Math.round(evaluator.getFar(0.70f) * evaluator.getTotal()));
+        long histogramTotal = 0;
+        for (long count : evaluator.getHistogram(true)) {
+            histogramTotal += count;
+        }
+        for (long count : evaluator.getHistogram(false)) {
+            histogramTotal += count;
+        }
+        assertEquals(10_000, histogramTotal);
+    }
+
+    @Test
+    public void report_includesSweepAroundThreshold() {
+        MatchEvaluator evaluator = new MatchEvaluator(0.70f);
+        evaluator.record(true, true, true, 0.90f);
+        String report = evaluator.report(0.10f, 0.02f);
+        assertTrue(report.contains("0.60"));
+        assertTrue(report.contains("0.70"));
+        assertTrue(report.contains("0.80"));
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.hmojicag;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ModelInstallerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] model(long seed) {
+        // A few chunks plus a tail so the copy loop runs more than once
+        byte[] bytes = new byte[(3 << 20) + 12345];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void install_copiesOncePerVersion() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("face_feature.zip");
+        byte[] bytes = model(1);
+        AtomicInteger opens = new AtomicInteger();
+        ModelInstaller installer = new ModelInstaller(target);
+
+        assertTrue(installer.install(() -> {
+            opens.incrementAndGet();
+            return new ByteArrayInputStream(bytes);
+        }, "1"));
+        assertArrayEquals(bytes, Files.readAllBytes(target));
+        assertTrue(installer.isInstalled("1", true));
+
+        assertFalse(new ModelInstaller(target).install(() -> {
+            opens.incrementAndGet();
+            return new ByteArrayInputStream(bytes);
+        }, "1"));
+        assertEquals(1, opens.get());
+    }
+
+    @Test
+    public void install_recopiesWhenVersionChanges() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("face_feature.zip");
+        ModelInstaller installer = new ModelInstaller(target);
+        installer.install(() -> new ByteArrayInputStream(model(1)), "1");
+        byte[] updated = model(2);
+
+        assertTrue(installer.install(() -> new ByteArrayInputStream(updated), "2"));
+        assertArrayEquals(updated, Files.readAllBytes(target));
+        assertFalse(installer.isInstalled("1", false));
+    }
+
+    @Test
+    public void install_recopiesTruncatedModel() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("face_feature.zip");
+        byte[] bytes = model(3);
+        ModelInstaller installer = new ModelInstaller(target);
+        installer.install(() -> new ByteArrayInputStream(bytes), "1");
+        try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+            file.setLength(1000);
+        }
+
+        assertFalse(installer.isInstalled("1", false));
+        assertTrue(installer.install(() -> new ByteArrayInputStream(bytes), "1"));
+        assertArrayEquals(bytes, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void isInstalled_checksumCatchesSameSizeCorruption() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("face_feature.zip");
+        ModelInstaller installer = new ModelInstaller(target);
+        installer.install(() -> new ByteArrayInputStream(model(4)), "1");
+        try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+            file.seek(100);
+            int value = file.read();
+            file.seek(100);
+            file.write(value ^ 0xff);
+        }
+
+        assertTrue(installer.isInstalled("1", false));
+        assertFalse(installer.isInstalled("1", true));
+    }
+}
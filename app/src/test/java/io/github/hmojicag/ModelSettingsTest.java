@@ -0,0 +1,37 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ModelSettingsTest {
+
+    @Test
+    public void defaults_keepTheOriginalModel() {
+        ModelSettings settings = ModelSettings.defaults();
+        assertEquals("pytorch_models/face_feature.zip", settings.getAssetPath());
+        assertEquals("face_feature.zip", settings.getModelFileName());
+        assertEquals("face_feature", settings.getModelId());
+    }
+
+    @Test
+    public void int8_isASeparateModel() {
+        ModelSettings settings = ModelSettings.defaults();
+        settings.setPrecision(ModelPrecision.INT8);
+        assertEquals("pytorch_models/face_feature_int8.zip", settings.getAssetPath());
+        assertEquals("face_feature_int8.zip", settings.getModelFileName());
+        assertEquals("face_feature-int8", settings.getModelId());
+
+        settings.setEngine(InferenceEngine.ONNX_RUNTIME);
+        assertEquals("onnx_models/face_feature_int8.zip", settings.getAssetPath());
+        assertEquals("face_feature_onnx_int8.zip", settings.getModelFileName());
+        assertEquals("face_feature-onnx_runtime-int8", settings.getModelId());
+    }
+
+    @Test
+    public void applyTo_handlesNamesWithoutExtension() {
+        assertEquals("features.cache", ModelPrecision.FP32.applyTo("features.cache"));
+        assertEquals("features_int8.cache", ModelPrecision.INT8.applyTo("features.cache"));
+        assertEquals("model_int8", ModelPrecision.INT8.applyTo("model"));
+    }
+}
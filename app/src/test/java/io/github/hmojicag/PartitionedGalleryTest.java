@@ -0,0 +1,180 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PartitionedGalleryTest {
+    private static final int DIMENSION = 512;
+
+    private static BioPhoto bioPhoto(int empresa, int empleado, float... features) {
+        return new BioPhoto(empresa, empleado, null, null, features);
+    }
+
+    @Test
+    public void fromBioPhotos_groupsCompaniesAndEmployees() {
+        List<BioPhoto> bioPhotos = Arrays.asList(
+                bioPhoto(2, 5, 1f, 0f),
+                bioPhoto(1, 7, 0f, 1f),
+                bioPhoto(2, 5, 1f, 1f),
+                bioPhoto(1, 3, 1f, 0f));
+        PartitionedGallery gallery = PartitionedGallery.fromBioPhotos(bioPhotos);
+
+        assertEquals(4, gallery.size());
+        assertEquals(3, gallery.getEmployeeCount());
+        assertEquals(2, gallery.getCompanySize(1));
+        assertEquals(2, gallery.getCompanySize(2));
+        assertEquals(0, gallery.getCompanySize(3));
+        assertEquals(2, gallery.getTemplateCount(2, 5));
+        assertTrue(gallery.isEnrolled(1, 7));
+        assertFalse(gallery.isEnrolled(2, 7));
+        assertEquals(0, gallery.getFirstSourceIndex(2, 5));
+        assertEquals(3, gallery.getFirstSourceIndex(1, 3));
+        assertEquals(-1, gallery.getFirstSourceIndex(9, 9));
+    }
+
+    @Test
+    public void verify_scoresMaxOrMeanOverTemplates() {
+        PartitionedGallery gallery = PartitionedGallery.fromBioPhotos(Arrays.asList(
+                bioPhoto(1, 1, 1f, 0f),
+                bioPhoto(1, 1, 0f, 1f)));
+        float[] query = {1f, 0f};
+
+        assertEquals(1.0f, gallery.verify(1, 1, query, PartitionedGallery.ScoreMode.MAX), 1e-6f);
+        // Mean of cosines 1 and 0
+        assertEquals(0.75f, gallery.verify(1, 1, query, PartitionedGallery.ScoreMode.MEAN), 1e-6f);
+        assertEquals(-1.0f, gallery.verify(1, 2, query, PartitionedGallery.ScoreMode.MAX), 0.0f);
+    }
+
+    @Test
+    public void searchCompany_onlySeesItsCompany() {
+        Random random = new Random(3);
+        List<BioPhoto> bioPhotos = new ArrayList<>();
+        for (int empresa = 1; empresa <= 5; empresa++) {
+            for (int empleado = 0; empleado < 100; empleado++) {
+                bioPhotos.add(new BioPhoto(empresa, empleado, null, null, randomVector(random)));
+            }
+        }
+        PartitionedGallery gallery = PartitionedGallery.fromBioPhotos(bioPhotos);
+        // A photo of 3/42 punched at company 3 matches, the same face punched at company 4 must not
+        float[] query = noisyCopy(bioPhotos.get(2 * 100 + 42).getFeatures(), random, 0.3f);
+        int[] empleados = new int[3];
+        float[] scores = new float[3];
+
+        int count = gallery.searchCompany(3, query, 0.70f, 3, PartitionedGallery.ScoreMode.MAX, empleados, scores);
+        assertEquals(1, count);
+        assertEquals(42, empleados[0]);
+        assertEquals(Similarity.calculateSimilitude(query, bioPhotos.get(242).getFeatures()), scores[0], 1e-5f);
+        assertEquals(0, gallery.searchCompany(4, query, 0.70f, 3, PartitionedGallery.ScoreMode.MAX, empleados, scores));
+        assertEquals(0, gallery.searchCompany(9, query, 0.0f, 3, PartitionedGallery.ScoreMode.MAX, empleados, scores));
+    }
+
+    @Test
+    public void searchCompany_ranksEmployeesNotTemplates() {
+        PartitionedGallery gallery = PartitionedGallery.fromBioPhotos(Arrays.asList(
+                bioPhoto(1, 1, 1f, 0f),
+                bioPhoto(1, 1, 0.9f, 0.1f),
+                bioPhoto(1, 2, 0f, 1f)));
+        int[] empleados = new int[3];
+        float[] scores = new float[3];
+
+        int count = gallery.searchCompany(1, new float[] {1f, 0f}, 0.0f, 3,
+                PartitionedGallery.ScoreMode.MAX, empleados, scores);
+        assertEquals(2, count);
+        assertEquals(1, empleados[0]);
+        assertEquals(2, empleados[1]);
+    }
+
+    @Test
+    public void searchCompany_firstOfEqualEmployeesWins() {
+        PartitionedGallery gallery = PartitionedGallery.fromBioPhotos(Arrays.asList(
+                bioPhoto(1, 1, 0f, 1f),
+                bioPhoto(1, 2, 1f, 0f),
+                bioPhoto(1, 3, 2f, 0f),
+                bioPhoto(1, 4, 1f, 0f)));
+        int[] empleados = new int[2];
+        float[] scores = new float[2];
+        int[] bestEmpleado = new int[1];
+        float[] bestScore = new float[1];
+
+        assertEquals(1, gallery.searchCompany(1, new float[] {1f, 0f}, 0.0f, 1,
+                PartitionedGallery.ScoreMode.MAX, empleados, scores));
+        gallery.searchCompanyBest(1, new float[][] {{1f, 0f}}, PartitionedGallery.ScoreMode.MAX,
+                bestEmpleado, bestScore);
+        assertEquals(bestEmpleado[0], empleados[0]);
+        assertEquals(2, gallery.searchCompany(1, new float[] {1f, 0f}, 0.0f, 2,
+                PartitionedGallery.ScoreMode.MAX, empleados, scores));
+        assertEquals(2, empleados[0]);
+        assertEquals(3, empleados[1]);
+    }
+
+    @Test
+    public void searchCompanyBest_matchesSearchOfEachQuery() {
+        Random random = new Random(4);
+        List<BioPhoto> bioPhotos = new ArrayList<>();
+        for (int empresa = 1; empresa <= 3; empresa++) {
+            for (int empleado = 0; empleado < 50; empleado++) {
+                for (int template = 0; template < 1 + empleado % 3; template++) {
+                    bioPhotos.add(new BioPhoto(empresa, empleado, null, null,
+                            randomVector(random)));
+                }
+            }
+        }
+        PartitionedGallery gallery = PartitionedGallery.fromBioPhotos(bioPhotos);
+        float[][] queries = new float[5][];
+        for (int q = 0; q < queries.length; q++) {
+            queries[q] = noisyCopy(bioPhotos.get(random.nextInt(bioPhotos.size())).getFeatures(),
+                    random, 0.5f);
+        }
+        int[] empleados = new int[queries.length];
+        float[] scores = new float[queries.length];
+        int[] expectedEmpleado = new int[1];
+        float[] expectedScore = new float[1];
+        for (PartitionedGallery.ScoreMode mode : PartitionedGallery.ScoreMode.values()) {
+            gallery.searchCompanyBest(2, queries, mode, empleados, scores);
+            for (int q = 0; q < queries.length; q++) {
+                assertEquals(1, gallery.searchCompany(2, queries[q], 0.0f, 1, mode, expectedEmpleado, expectedScore));
+                assertEquals(expectedEmpleado[0], empleados[q]);
+                assertEquals(expectedScore[0], scores[q], 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void searchCompanyBest_noCandidateScoresMinusOne() {
+        PartitionedGallery gallery = PartitionedGallery.fromBioPhotos(Arrays.asList(bioPhoto(1, 1, 1f, 0f)));
+        int[] empleados = new int[2];
+        float[] scores = new float[2];
+
+        gallery.searchCompanyBest(1, new float[][] {{0f, 1f}, {0f, 0f}}, PartitionedGallery.ScoreMode.MAX,
+                empleados, scores);
+        assertEquals(1, empleados[0]);
+        assertEquals(0.5f, scores[0], 1e-6f);
+        assertEquals(-1.0f, scores[1], 0.0f);
+        gallery.searchCompanyBest(2, new float[][] {{1f, 0f}, {0f, 1f}}, PartitionedGallery.ScoreMode.MAX,
+                empleados, scores);
+        assertEquals(-1.0f, scores[0], 0.0f);
+        assertEquals(-1.0f, scores[1], 0.0f);
+    }
+
+    static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    static float[] noisyCopy(float[] source, Random random, float noise) {
+        float[] vector = new float[source.length];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = source[i] + noise * (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantizationGateTest {
+    private static final float THRESHOLD = 0.70f;
+
+    private static QuantizationGate gate() {
+        return new QuantizationGate(THRESHOLD, PartitionedGallery.ScoreMode.MAX, ModelSettings.defaults());
+    }
+
+    private static List<BioPhoto> gallery(Random random, int employees) {
+        List<BioPhoto> gallery = new ArrayList<>();
+        for (int i = 0; i < employees; i++) {
+            gallery.add(new BioPhoto(1, i, null, null, PartitionedGalleryTest.randomVector(random)));
+        }
+        return gallery;
+    }
+
+    /**
+     * Noisy copies of photos, same labels.
+     */
+    private static List<BioPhoto> perturb(Random random, List<BioPhoto> photos, float noise) {
+        List<BioPhoto> perturbed = new ArrayList<>();
+        for (BioPhoto photo : photos) {
+            perturbed.add(new BioPhoto(photo.getEmpresa(), photo.getEmpleado(), null, null,
+                    perturb(random, photo.getFeatures(), noise)));
+        }
+        return perturbed;
+    }
+
+    private static float[] perturb(Random random, float[] features, float noise) {
+        float[] result = new float[features.length];
+        for (int i = 0; i < features.length; i++) {
+            result[i] = features[i] + noise * (float) random.nextGaussian();
+        }
+        return result;
+    }
+
+    @Test
+    public void evaluate_identicalModelsAreAccepted() {
+        Random random = new Random(1);
+        List<BioPhoto> gallery = gallery(random, 20);
+        List<BioPhoto> probes = perturb(random, gallery, 0.3f);
+        QuantizationGate.Result result = gate().evaluate(gallery, gallery, probes, probes);
+        assertEquals(20, result.getProbes());
+        assertEquals(400, result.getPairs());
+        assertEquals(0.0f, result.getMaxScoreDelta(), 0.0f);
+        assertEquals(0, result.getDecisionChanges());
+        assertEquals(1.0, result.getReferenceSuccessRate(), 1e-9);
+        assertTrue(result.isAccepted());
+    }
+
+    @Test
+    public void evaluate_smallQuantizationNoiseIsAccepted() {
+        Random random = new Random(2);
+        List<BioPhoto> gallery = gallery(random, 20);
+        List<BioPhoto> probes = perturb(random, gallery, 0.3f);
+        QuantizationGate.Result result = gate().evaluate(
+                gallery, perturb(random, gallery, 0.01f), probes, perturb(random, probes, 0.01f));
+        assertTrue(result.getMaxScoreDelta() > 0.0f);
+        assertTrue(result.toString(), result.isAccepted());
+    }
+
+    @Test
+    public void evaluate_degradedModelIsRejected() {
+        Random random = new Random(3);
+        List<BioPhoto> gallery = gallery(random, 20);
+        List<BioPhoto> probes = perturb(random, gallery, 0.3f);
+        QuantizationGate.Result result = gate().evaluate(
+                gallery, perturb(random, gallery, 2.0f), probes, perturb(random, probes, 2.0f));
+        assertTrue(result.getDecisionChanges() > 0);
+        assertTrue(result.getCandidateSuccessRate() < result.getReferenceSuccessRate());
+        assertFalse(result.isAccepted());
+    }
+
+    @Test
+    public void evaluate_onlyScoresPairsOfTheSameCompany() {
+        List<BioPhoto> gallery = Arrays.asList(
+                new BioPhoto(1, 1, null, null, new float[] {1f, 0f}),
+                new BioPhoto(2, 1, null, null, new float[] {0f, 1f}));
+        List<BioPhoto> probes = Arrays.asList(new BioPhoto(1, 1, null, null, new float[] {1f, 0.1f}));
+        assertEquals(1, gate().evaluate(gallery, gallery, probes, probes).getPairs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void evaluate_rejectsMisalignedPhotos() {
+        List<BioPhoto> gallery = Arrays.asList(new BioPhoto(1, 1, null, null, new float[] {1f, 0f}));
+        List<BioPhoto> other = Arrays.asList(new BioPhoto(1, 2, null, null, new float[] {1f, 0f}));
+        gate().evaluate(gallery, other, gallery, gallery);
+    }
+}
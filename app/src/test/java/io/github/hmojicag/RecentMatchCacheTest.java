@@ -0,0 +1,165 @@
+package io.github.hmojicag;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RecentMatchCacheTest {
+    private static final long TTL = 60_000;
+    private static final float THRESHOLD = 0.70f;
+    private static final PartitionedGallery.ScoreMode MODE = PartitionedGallery.ScoreMode.MAX;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final int[] empleado = new int[1];
+    private final float[] score = new float[1];
+
+    /**
+     * One template per employee, templates[i] enrolled as empleados[i] of empresa 1.
+     */
+    private static PartitionedGallery gallery(int[] empleados, float[]... templates) {
+        List<BioPhoto> bioPhotos = new ArrayList<>();
+        for (int i = 0; i < templates.length; i++) {
+            bioPhotos.add(new BioPhoto(1, empleados[i], null, null, templates[i]));
+        }
+        return PartitionedGallery.fromBioPhotos(bioPhotos);
+    }
+
+    /**
+     * Unit vector at angle radians from the first axis, towards the second.
+     */
+    private static float[] atAngle(double angle) {
+        float[] vector = new float[512];
+        vector[0] = (float) Math.cos(angle);
+        vector[1] = (float) Math.sin(angle);
+        return vector;
+    }
+
+    @Test
+    public void lookup_hitsRepeatPunchOfSameCompany() {
+        Random random = new Random(1);
+        float[] template = PartitionedGalleryTest.randomVector(random);
+        PartitionedGallery gallery = gallery(new int[] {10, 11}, template, PartitionedGalleryTest.randomVector(random));
+        RecentMatchCache cache = new RecentMatchCache(16, TTL, 0.90f);
+        float[] punch = PartitionedGalleryTest.noisyCopy(template, random, 0.5f);
+        cache.put(1, 10, punch, gallery, 0);
+        float[] repeat = PartitionedGalleryTest.noisyCopy(punch, random, 0.1f);
+        assertTrue(cache.lookup(1, repeat, 1000, gallery, MODE, THRESHOLD, empleado, score));
+        assertEquals(10, empleado[0]);
+        assertEquals(gallery.verify(1, 10, repeat, MODE), score[0], 1e-6f);
+        // Same face at another company's terminal
+        assertFalse(cache.lookup(2, repeat, 1000, gallery, MODE, THRESHOLD, empleado, score));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getVerifiedHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void lookup_missesBelowHitSimilitude() {
+        Random random = new Random(2);
+        float[] punch = PartitionedGalleryTest.randomVector(random);
+        PartitionedGallery gallery = gallery(new int[] {10}, punch);
+        RecentMatchCache cache = new RecentMatchCache(16, TTL, 0.90f);
+        cache.put(1, 10, punch, gallery, 0);
+        // Similitude around 0.8: a match for the gallery threshold, not for the shortcut
+        float[] query = PartitionedGalleryTest.noisyCopy(punch, random, 1.2f);
+        assertTrue(Similarity.calculateSimilitude(query, punch) < 0.90f);
+        assertFalse(cache.lookup(1, query, 0, gallery, MODE, THRESHOLD, empleado, score));
+        assertFalse(cache.lookup(1, new float[punch.length], 0, gallery, MODE, THRESHOLD, empleado, score));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void lookup_fallsBackWhenAnotherEmployeeScoresHigher() {
+        // Lookalikes 0.4 rad apart, the cached punch nearer to 10 and the repeat nearer to 11
+        PartitionedGallery gallery = gallery(new int[] {10, 11}, atAngle(0.0), atAngle(0.4));
+        RecentMatchCache cache = new RecentMatchCache(16, TTL, 0.90f);
+        cache.put(1, 10, atAngle(0.15), gallery, 0);
+        float[] repeat = atAngle(0.25);
+        assertTrue(gallery.verify(1, 10, repeat, MODE) >= THRESHOLD);
+        assertTrue(gallery.verify(1, 11, repeat, MODE) > gallery.verify(1, 10, repeat, MODE));
+
+        assertFalse(cache.lookup(1, repeat, 0, gallery, MODE, THRESHOLD, empleado, score));
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getVerifiedHits());
+        // Still verified when the repeat is as close to the punch but away from 11
+        assertTrue(cache.lookup(1, atAngle(0.05), 0, gallery, MODE, THRESHOLD, empleado, score));
+        assertEquals(10, empleado[0]);
+    }
+
+    @Test
+    public void otherEmployeesBound_followsTheAngles() {
+        // Runner-up at 0.6 rad from the punch, query at 0.1 rad: nothing else closer than 0.5 rad
+        float bound = RecentMatchCache.otherEmployeesBound(
+                Similarity.toSimilitude((float) Math.cos(0.1)), Similarity.toSimilitude((float) Math.cos(0.6)));
+        assertEquals(Similarity.toSimilitude((float) Math.cos(0.5)), bound, 1e-5f);
+        assertEquals(1.0f, RecentMatchCache.otherEmployeesBound(0.9f, 0.95f), 0.0f);
+    }
+
+    @Test
+    public void lookup_dropsExpiredEntries() {
+        float[] punch = PartitionedGalleryTest.randomVector(new Random(3));
+        PartitionedGallery gallery = gallery(new int[] {10}, punch);
+        RecentMatchCache cache = new RecentMatchCache(16, TTL, 0.90f);
+        cache.put(1, 10, punch, gallery, 0);
+        assertTrue(cache.lookup(1, punch, TTL, gallery, MODE, THRESHOLD, empleado, score));
+        assertFalse(cache.lookup(1, punch, TTL + 1, gallery, MODE, THRESHOLD, empleado, score));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void lookup_skipsEntriesStoredLater() {
+        float[] punch = PartitionedGalleryTest.randomVector(new Random(6));
+        PartitionedGallery gallery = gallery(new int[] {10}, punch);
+        RecentMatchCache cache = new RecentMatchCache(16, TTL, 0.90f);
+        cache.put(1, 10, punch, gallery, 1000);
+        // An earlier punch replayed after a later one
+        assertFalse(cache.lookup(1, punch, 999, gallery, MODE, THRESHOLD, empleado, score));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        Random random = new Random(4);
+        float[] first = PartitionedGalleryTest.randomVector(random);
+        float[] second = PartitionedGalleryTest.randomVector(random);
+        float[] third = PartitionedGalleryTest.randomVector(random);
+        PartitionedGallery gallery = gallery(new int[] {1, 2, 3}, first, second, third);
+        RecentMatchCache cache = new RecentMatchCache(2, TTL, 0.90f);
+        cache.put(1, 1, first, gallery, 0);
+        cache.put(1, 2, second, gallery, 0);
+        assertTrue(cache.lookup(1, first, 0, gallery, MODE, THRESHOLD, empleado, score));
+        cache.put(1, 3, third, gallery, 0);
+        assertEquals(2, cache.size());
+        assertTrue(cache.lookup(1, first, 0, gallery, MODE, THRESHOLD, empleado, score));
+        assertFalse(cache.lookup(1, second, 0, gallery, MODE, THRESHOLD, empleado, score));
+    }
+
+    @Test
+    public void enrollmentChange_invalidatesCompany() throws Exception {
+        Random random = new Random(5);
+        float[] punch = PartitionedGalleryTest.randomVector(random);
+        float[] other = PartitionedGalleryTest.randomVector(random);
+        PartitionedGallery gallery = gallery(new int[] {10, 11}, punch, other);
+        RecentMatchCache cache = new RecentMatchCache(16, TTL, 0.90f);
+        cache.put(1, 10, punch, gallery, 0);
+        cache.put(1, 11, other, gallery, 0);
+        cache.put(2, 12, PartitionedGalleryTest.randomVector(random), gallery, 0);
+        try (EnrollmentLog log = EnrollmentLog.open(folder.getRoot().toPath().resolve("enrollment"), "face_feature",
+                punch.length, false)) {
+            log.setChangeListener(cache::invalidate);
+            log.update(1, 10, PartitionedGalleryTest.randomVector(random));
+        }
+        // A new template of 10 may be closer to 11's punches than their stored runner-up
+        assertFalse(cache.lookup(1, punch, 0, gallery, MODE, THRESHOLD, empleado, score));
+        assertFalse(cache.lookup(1, other, 0, gallery, MODE, THRESHOLD, empleado, score));
+        assertEquals(1, cache.size());
+    }
+}
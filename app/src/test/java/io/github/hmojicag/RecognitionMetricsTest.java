@@ -0,0 +1,77 @@
+package io.github.hmojicag;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RecognitionMetricsTest {
+
+    @Test
+    public void stop_recordsStageLatency() throws InterruptedException {
+        RecognitionMetrics metrics = new RecognitionMetrics(true);
+        long start = metrics.start();
+        Thread.sleep(2);
+        metrics.stop(RecognitionMetrics.Stage.DETECT, start);
+        assertEquals(1, metrics.getHistogram(RecognitionMetrics.Stage.DETECT).getCount());
+        assertTrue(metrics.getHistogram(RecognitionMetrics.Stage.DETECT).getMax() >= 2000);
+        assertEquals(0, metrics.getHistogram(RecognitionMetrics.Stage.DECODE).getCount());
+    }
+
+    @Test
+    public void recordShared_recordsOneValuePerItem() {
+        RecognitionMetrics metrics = new RecognitionMetrics(true);
+        metrics.recordShared(RecognitionMetrics.Stage.EMBED, metrics.start(), 8);
+        assertEquals(8, metrics.getHistogram(RecognitionMetrics.Stage.EMBED).getCount());
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        RecognitionMetrics metrics = new RecognitionMetrics(false);
+        long start = metrics.start();
+        assertEquals(0, start);
+        metrics.stop(RecognitionMetrics.Stage.CROP, start);
+        metrics.skip(RecognitionMetrics.SkipReason.NO_FACE);
+        assertEquals(0, metrics.getHistogram(RecognitionMetrics.Stage.CROP).getCount());
+        assertEquals(0, metrics.getSkips(RecognitionMetrics.SkipReason.NO_FACE));
+    }
+
+    @Test
+    public void stop_ignoresTimersStartedWhileDisabled() {
+        RecognitionMetrics metrics = new RecognitionMetrics(false);
+        long start = metrics.start();
+        metrics.setEnabled(true);
+        metrics.stop(RecognitionMetrics.Stage.MATCH, start);
+        assertEquals(0, metrics.getHistogram(RecognitionMetrics.Stage.MATCH).getCount());
+    }
+
+    @Test
+    public void toJson_exportsStagesAndSkips() {
+        RecognitionMetrics metrics = new RecognitionMetrics(true);
+        metrics.stop(RecognitionMetrics.Stage.DECODE, metrics.start());
+        metrics.skip(RecognitionMetrics.SkipReason.MULTIPLE_FACES);
+        metrics.skip(RecognitionMetrics.SkipReason.MULTIPLE_FACES);
+
+        JsonObject json = JsonParser.parseString(metrics.toJson()).getAsJsonObject();
+        assertTrue(json.get("enabled").getAsBoolean());
+        JsonObject stages = json.getAsJsonObject("stages");
+        assertEquals(RecognitionMetrics.Stage.values().length, stages.size());
+        assertEquals(1, stages.getAsJsonObject("decode").get("count").getAsLong());
+        assertEquals(0, stages.getAsJsonObject("match").get("count").getAsLong());
+        JsonObject skips = json.getAsJsonObject("skips");
+        assertEquals(2, skips.get("multiple_faces").getAsLong());
+        assertEquals(0, skips.get("parse_failure").getAsLong());
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        RecognitionMetrics metrics = new RecognitionMetrics(true);
+        metrics.stop(RecognitionMetrics.Stage.DECODE, metrics.start());
+        metrics.skip(RecognitionMetrics.SkipReason.DECODE_FAILURE);
+        metrics.reset();
+        assertEquals(0, metrics.getHistogram(RecognitionMetrics.Stage.DECODE).getCount());
+        assertEquals(0, metrics.getSkips(RecognitionMetrics.SkipReason.DECODE_FAILURE));
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.hmojicag;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deterministic stand-in for a face detector: returns the boxes listed for each photo in a
+ * sidecar file, after a fixed latency, from its own timer thread. Lets the detection scheduling
+ * be tested on a plain JVM, without ML Kit or real photos. Counts the detections in flight and
+ * keeps their maximum, so a test can check the bound the pipeline puts on them.
+ * <p>
+ * Sidecar format, one photo per line, blank lines and lines starting with # are ignored:
+ * <pre>
+ * 52-20240619082918-62157.jpg 10,20,110,140 300,40,380,150
+ * 1-1430.jpg 0,0,160,160
+ * </pre>
+ * Photos are looked up by file name, photos not listed have no faces.
+ */
+public class SidecarFaceDetector implements AsyncFaceDetector<String>, Closeable {
+    private final Map<String, List<int[]>> boxesByFileName;
+    private final long latencyMicros;
+    private final ScheduledExecutorService timer;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    public SidecarFaceDetector(Map<String, List<int[]>> boxesByFileName, long latencyMicros) {
+        this.boxesByFileName = boxesByFileName;
+        this.latencyMicros = latencyMicros;
+        this.timer = latencyMicros > 0 ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sidecar-detector");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public static SidecarFaceDetector load(Path sidecar, long latencyMicros) throws IOException {
+        return new SidecarFaceDetector(parse(Files.readAllLines(sidecar, StandardCharsets.UTF_8)), latencyMicros);
+    }
+
+    static Map<String, List<int[]>> parse(List<String> lines) {
+        Map<String, List<int[]>> boxesByFileName = new HashMap<>();
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            List<int[]> boxes = new ArrayList<>(fields.length - 1);
+            for (int i = 1; i < fields.length; i++) {
+                String[] coordinates = fields[i].split(",");
+                if (coordinates.length != 4) {
+                    throw new IllegalArgumentException("Expected left,top,right,bottom but got " + fields[i]);
+                }
+                int[] box = new int[4];
+                for (int j = 0; j < 4; j++) {
+                    box[j] = Integer.parseInt(coordinates[j]);
+                }
+                boxes.add(box);
+            }
+            boxesByFileName.put(fields[0], boxes);
+        }
+        return boxesByFileName;
+    }
+
+    /**
+     * @param filePath Path or name of the photo
+     */
+    @Override
+    public CompletableFuture<List<int[]>> detect(String filePath) {
+        List<int[]> boxes = boxesByFileName.get(Paths.get(filePath).getFileName().toString());
+        List<int[]> result = boxes == null ? Collections.<int[]>emptyList() : boxes;
+        if (timer == null) {
+            return CompletableFuture.completedFuture(result);
+        }
+        int started = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(started, Math::max);
+        CompletableFuture<List<int[]>> future = new CompletableFuture<>();
+        // Counted out before completing, the pipeline may start the next detection right away
+        timer.schedule(() -> {
+            inFlight.decrementAndGet();
+            future.complete(result);
+        }, latencyMicros, TimeUnit.MICROSECONDS);
+        return future;
+    }
+
+    /**
+     * Most detections ever pending at once, 0 without latency since those complete immediately.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+}
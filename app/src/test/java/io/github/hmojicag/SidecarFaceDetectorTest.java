@@ -0,0 +1,65 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SidecarFaceDetectorTest {
+
+    @Test
+    public void parse_readsBoxesByFileName() throws Exception {
+        Map<String, List<int[]>> boxes = SidecarFaceDetector.parse(Arrays.asList(
+                "# fileName boxes",
+                "52-20240619082918-62157.jpg 10,20,110,140 300,40,380,150",
+                "",
+                "1-1430.jpg 0,0,160,160",
+                "1-1431.jpg"));
+        assertEquals(3, boxes.size());
+        assertEquals(2, boxes.get("52-20240619082918-62157.jpg").size());
+        assertArrayEquals(new int[] {300, 40, 380, 150}, boxes.get("52-20240619082918-62157.jpg").get(1));
+        assertTrue(boxes.get("1-1431.jpg").isEmpty());
+
+        try (SidecarFaceDetector detector = new SidecarFaceDetector(boxes, 0)) {
+            assertEquals(1, detector.detect("/storage/emulated/0/Download/BioPhotos/1-1430.jpg").get().size());
+            assertTrue(detector.detect("/storage/emulated/0/Download/BioPhotos/9-9.jpg").get().isEmpty());
+        }
+    }
+
+    private static void detectAll(SidecarFaceDetector detector, int photos, int maxInFlight) throws Exception {
+        List<String> fileNames = new ArrayList<>();
+        for (int i = 0; i < photos; i++) {
+            fileNames.add(i + ".jpg");
+        }
+        AtomicInteger faces = new AtomicInteger();
+        StagedPipeline.source("list", fileNames.iterator())
+                .thenAsync("detect", maxInFlight, 8, detector::detect)
+                .to(boxes -> faces.addAndGet(boxes.size()))
+                .run();
+        assertEquals(photos, faces.get());
+    }
+
+    @Test
+    public void detections_inFlightFollowTheLimit() throws Exception {
+        Map<String, List<int[]>> boxes = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            boxes.put(i + ".jpg", Arrays.asList(new int[] {0, 0, 100, 100}));
+        }
+        // 5 ms per detection, the order of ML Kit's on a mid-range phone
+        try (SidecarFaceDetector detector = new SidecarFaceDetector(boxes, 5000)) {
+            detectAll(detector, 100, 1);
+            assertEquals(1, detector.getMaxInFlight());
+        }
+        // Waiting detections cost no thread, so the stage keeps the whole limit pending
+        try (SidecarFaceDetector detector = new SidecarFaceDetector(boxes, 5000)) {
+            detectAll(detector, 100, 8);
+            assertEquals(8, detector.getMaxInFlight());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class StagedPipelineTest {
+
+    @Test
+    public void run_deliversEveryItemThroughAllStages() throws Exception {
+        List<Integer> input = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+        List<String> results = new ArrayList<>();
+        StagedPipeline pipeline = StagedPipeline.source("list", input.iterator())
+                .then("double", 4, 8, i -> i * 2)
+                .thenBatched("format", 3, 16, 8, 5, batch -> {
+                    List<String> out = new ArrayList<>();
+                    for (Integer i : batch) {
+                        out.add("#" + i);
+                    }
+                    return out;
+                })
+                .to(results::add);
+        pipeline.run();
+
+        assertEquals(1000, results.size());
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.add("#" + (i * 2));
+        }
+        assertEquals(expected, new HashSet<>(results));
+        for (StagedPipeline.StageStats stats : pipeline.getStats()) {
+            assertEquals(stats.getName(), 1000, stats.getProcessed());
+        }
+    }
+
+    @Test
+    public void run_nullAndExceptionsDropItems() throws Exception {
+        List<Integer> input = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        List<Integer> results = new ArrayList<>();
+        StagedPipeline pipeline = StagedPipeline.source("list", input.iterator())
+                .then("filter", 2, 4, i -> i % 2 == 0 ? i : null)
+                .then("fail", 2, 4, i -> {
+                    if (i % 10 == 0) {
+                        throw new IllegalArgumentException("bad item " + i);
+                    }
+                    return i;
+                })
+                .to(results::add);
+        pipeline.run();
+
+        assertEquals(40, results.size());
+        List<StagedPipeline.StageStats> stats = pipeline.getStats();
+        assertEquals(50, stats.get(0).getDropped());
+        assertEquals(10, stats.get(1).getFailed());
+        assertEquals(40, stats.get(2).getProcessed());
+    }
+
+    @Test
+    public void run_queuesNeverExceedTheirDepth() throws Exception {
+        List<Integer> input = IntStream.range(0, 500).boxed().collect(Collectors.toList());
+        AtomicInteger sinkCount = new AtomicInteger();
+        StagedPipeline pipeline = StagedPipeline.source("list", input.iterator())
+                .then("fast", 4, 3, i -> i)
+                .then("slow", 1, 5, i -> {
+                    Thread.sleep(1);
+                    return i;
+                })
+                .to(i -> sinkCount.incrementAndGet());
+        pipeline.run();
+
+        assertEquals(500, sinkCount.get());
+        List<StagedPipeline.StageStats> stats = pipeline.getStats();
+        assertTrue(stats.get(0).getMaxQueueOccupancy() <= 3);
+        // The slow stage is the bottleneck so its queue should have filled up
+        assertEquals(5, stats.get(1).getMaxQueueOccupancy());
+        assertTrue(stats.get(1).getUtilization() > 0.5);
+    }
+
+    @Test
+    public void run_emptySource() throws Exception {
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        StagedPipeline pipeline = StagedPipeline.source("list", Collections.<Integer>emptyIterator())
+                .then("identity", 2, 2, i -> i)
+                .to(results::add);
+        pipeline.run();
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void thenAsync_limitsItemsInFlight() throws Exception {
+        List<Integer> input = IntStream.range(0, 300).boxed().collect(Collectors.toList());
+        List<Integer> results = new ArrayList<>();
+        AtomicInteger pending = new AtomicInteger();
+        AtomicInteger maxPending = new AtomicInteger();
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+        StagedPipeline pipeline = StagedPipeline.source("list", input.iterator())
+                .thenAsync("async", 5, 4, i -> {
+                    maxPending.accumulateAndGet(pending.incrementAndGet(), Math::max);
+                    CompletableFuture<Integer> future = new CompletableFuture<>();
+                    timer.schedule(() -> {
+                        pending.decrementAndGet();
+                        if (i % 10 == 0) {
+                            future.completeExceptionally(new IllegalStateException("bad item " + i));
+                        } else {
+                            future.complete(i % 3 == 0 ? null : i);
+                        }
+                    }, 200, TimeUnit.MICROSECONDS);
+                    return future;
+                })
+                .then("identity", 1, 2, i -> i)
+                .to(results::add);
+        pipeline.run();
+        timer.shutdown();
+
+        // Multiples of 10 fail, other multiples of 3 are dropped
+        assertEquals(180, results.size());
+        assertEquals(5, maxPending.get());
+        StagedPipeline.StageStats stats = pipeline.getStats().get(0);
+        assertEquals(300, stats.getProcessed());
+        assertEquals(30, stats.getFailed());
+        assertEquals(90, stats.getDropped());
+    }
+}
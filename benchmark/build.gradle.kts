@@ -0,0 +1,62 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// A JVM module can't depend on the Android app module, so the platform independent
+// classes are compiled straight from the app sources. The face indexes and gallery searches
+// the app doesn't use live in this module's own src/main/java, the include list filters both.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "io/github/hmojicag/BioPhoto.java",
+                "io/github/hmojicag/BioPhotoMatch.java",
+                "io/github/hmojicag/BruteForceFaceIndex.java",
+                "io/github/hmojicag/CascadeGallery.java",
+                "io/github/hmojicag/EmbeddingGallery.java",
+                "io/github/hmojicag/EnrollmentLog.java",
+                "io/github/hmojicag/FaceFeatureTranslator.java",
+                "io/github/hmojicag/FaceIndex.java",
+                "io/github/hmojicag/FusedGallery.java",
+                "io/github/hmojicag/HnswFaceIndex.java",
+                "io/github/hmojicag/LatencyHistogram.java",
+                "io/github/hmojicag/PartitionedGallery.java",
+                "io/github/hmojicag/PruningEmbeddingGallery.java",
+                "io/github/hmojicag/QuantizedEmbeddingGallery.java",
+                "io/github/hmojicag/RecentMatchCache.java",
+                "io/github/hmojicag/RecognitionMetrics.java",
+                "io/github/hmojicag/ShardedGallerySearch.java",
+                "io/github/hmojicag/Similarity.java"
+            )
+        }
+    }
+}
+
+dependencies {
+    implementation(platform("ai.djl:bom:0.27.0"))
+    implementation("ai.djl:api")
+    // Only for android.graphics.Bitmap, which BioPhoto declares but the benchmarks never touch
+    implementation(libs.android.stubs)
+
+    testImplementation(libs.junit)
+
+    jmhImplementation(libs.gson)
+    // Desktop PyTorch engine to create the NDArrays fed to FaceFeatureTranslator.processOutput
+    jmhRuntimeOnly("ai.djl.pytorch:pytorch-engine")
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    profilers.set(listOf("gc"))
+}
@@ -0,0 +1,114 @@
+package io.github.hmojicag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic embeddings shared by the benchmarks. Everything is derived from fixed seeds so
+ * every run scores the exact same data and results are comparable run to run.
+ */
+final class BenchmarkData {
+    static final int DIMENSION = 512;
+    static final float THRESHOLD = 0.70f;
+    static final long GALLERY_SEED = 1234L;
+    static final long QUERY_SEED = 5678L;
+    static final int QUERIES = 64;
+
+    private BenchmarkData() {}
+
+    static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    static float[] noisyCopy(float[] source, Random random, float noise) {
+        float[] vector = new float[source.length];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = source[i] + noise * (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * Random directions with decaying spread, the structure PCA is meant to find.
+     * Face embeddings concentrate most of their energy in a few dozen directions,
+     * unlike {@link #randomVector}.
+     */
+    static float[][] factors(Random random, int rank) {
+        float[][] factors = new float[rank][];
+        for (int k = 0; k < rank; k++) {
+            factors[k] = randomVector(random);
+            float scale = (float) (Math.pow(0.95, k) / Similarity.norm(factors[k]));
+            for (int i = 0; i < DIMENSION; i++) {
+                factors[k][i] *= scale;
+            }
+        }
+        return factors;
+    }
+
+    /**
+     * Random mix of the factors plus isotropic noise of the given total norm.
+     */
+    static float[] lowRankVector(float[][] factors, Random random, float noise) {
+        float[] vector = new float[DIMENSION];
+        for (float[] factor : factors) {
+            float weight = (float) random.nextGaussian();
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] += weight * factor[i];
+            }
+        }
+        float[] normalized = Similarity.normalize(vector);
+        float[] isotropic = Similarity.normalize(randomVector(random));
+        for (int i = 0; i < DIMENSION; i++) {
+            normalized[i] += noise * isotropic[i];
+        }
+        return normalized;
+    }
+
+    /**
+     * Templates of empresa 1 with empleado 0..size-1.
+     */
+    static List<BioPhoto> bioPhotos(int size) {
+        Random random = new Random(GALLERY_SEED);
+        List<BioPhoto> bioPhotos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            bioPhotos.add(new BioPhoto(1, i, null, null, randomVector(random)));
+        }
+        return bioPhotos;
+    }
+
+    /**
+     * Noisy copies of random templates, so every query has a real match above threshold.
+     */
+    static float[][] queries(List<BioPhoto> bioPhotos) {
+        Random random = new Random(QUERY_SEED);
+        float[][] queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            float[] source = bioPhotos.get(random.nextInt(bioPhotos.size())).getFeatures();
+            queries[q] = noisyCopy(source, random, 0.3f);
+        }
+        return queries;
+    }
+
+    /**
+     * templates noisy photos of each of employees identities of empresa 1, written to
+     * outIdentities. With outliers, each employee's last template is an unrelated face instead.
+     */
+    static List<BioPhoto> enrollment(int employees, int templates, boolean withOutliers, float[][] outIdentities) {
+        Random random = new Random(GALLERY_SEED);
+        List<BioPhoto> bioPhotos = new ArrayList<>(employees * templates);
+        for (int empleado = 0; empleado < employees; empleado++) {
+            outIdentities[empleado] = randomVector(random);
+            for (int t = 0; t < templates; t++) {
+                float[] features = withOutliers && t == templates - 1 ? randomVector(random)
+                        : noisyCopy(outIdentities[empleado], random, 1.0f);
+                bioPhotos.add(new BioPhoto(1, empleado, null, null, features));
+            }
+        }
+        return bioPhotos;
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact EmbeddingGallery search against the CascadeGallery with a 64-d PCA or random projection
+ * first pass. Templates are low rank plus noise (see {@link BenchmarkData#lowRankVector}), half
+ * the queries are noisy copies of a template and half are strangers. Training time, recall of
+ * the exact best row in the candidate list and top-1 agreement with exact search at the match
+ * threshold are printed once per trial, since they don't depend on timing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CascadeGalleryBenchmark {
+    private static final int RANK = 48;
+    // More than BenchmarkData.QUERIES, so the printed recall is stable
+    private static final int QUERIES = 500;
+
+    @Param({"10000", "50000", "100000"})
+    public int gallerySize;
+
+    @Param({"pca", "random"})
+    public String projection;
+
+    @Param({"32", "64", "128", "512"})
+    public int candidates;
+
+    private EmbeddingGallery gallery;
+    private CascadeGallery cascade;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.GALLERY_SEED);
+        float[][] factors = BenchmarkData.factors(random, RANK);
+        gallery = new EmbeddingGallery(BenchmarkData.DIMENSION, gallerySize);
+        for (int i = 0; i < gallerySize; i++) {
+            gallery.add(1, i, BenchmarkData.lowRankVector(factors, random, 0.3f));
+        }
+        random = new Random(BenchmarkData.QUERY_SEED);
+        queries = new float[QUERIES][];
+        float[] row = new float[BenchmarkData.DIMENSION];
+        for (int i = 0; i < QUERIES; i++) {
+            if (i % 2 == 0) {
+                System.arraycopy(gallery.getVectors(), random.nextInt(gallerySize) * BenchmarkData.DIMENSION,
+                        row, 0, BenchmarkData.DIMENSION);
+                queries[i] = BenchmarkData.noisyCopy(row, random, 0.02f);
+            } else {
+                queries[i] = BenchmarkData.lowRankVector(factors, random, 0.3f);
+            }
+        }
+
+        long start = System.nanoTime();
+        float[] basis = "pca".equals(projection)
+                ? CascadeGallery.trainPca(gallery, CascadeGallery.DEFAULT_REDUCED_DIMENSION, 1)
+                : CascadeGallery.randomProjection(BenchmarkData.DIMENSION, CascadeGallery.DEFAULT_REDUCED_DIMENSION, 1);
+        long trainMillis = (System.nanoTime() - start) / 1_000_000;
+        cascade = new CascadeGallery(gallery, basis, candidates);
+
+        int[] index = new int[1];
+        float[] score = new float[1];
+        int[] indices = new int[candidates];
+        float[] scores = new float[candidates];
+        int inList = 0;
+        int agree = 0;
+        for (float[] query : queries) {
+            gallery.search(query, 0.0f, 1, index, score);
+            int count = cascade.candidates(query, indices, scores);
+            for (int c = 0; c < count; c++) {
+                if (indices[c] == index[0]) {
+                    inList++;
+                    break;
+                }
+            }
+            if (cascade.findBest(query, BenchmarkData.THRESHOLD) == gallery.findBest(query, BenchmarkData.THRESHOLD)) {
+                agree++;
+            }
+        }
+        System.out.printf("%ngallery=%d %s-64 c=%d train %d ms candidate recall=%.3f top-1 agreement=%.3f%n",
+                gallerySize, projection, candidates, trainMillis,
+                (double) inList / QUERIES, (double) agree / QUERIES);
+    }
+
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % queries.length;
+        return query;
+    }
+
+    @Benchmark
+    public int exact() {
+        return gallery.findBest(nextQuery(), BenchmarkData.THRESHOLD);
+    }
+
+    @Benchmark
+    public int cascade() {
+        return cascade.findBest(nextQuery(), BenchmarkData.THRESHOLD);
+    }
+}
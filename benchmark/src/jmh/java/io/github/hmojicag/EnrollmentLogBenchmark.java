@@ -0,0 +1,152 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EnrollmentLog at 10k and 100k templates: writing every template unsynced, 1000 of them with a
+ * sync per record, startup replay of a log crashed in the middle of its last record, compaction,
+ * and startup replay of the compacted snapshot. One invocation is one whole operation, run on
+ * freshly restored files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EnrollmentLogBenchmark {
+    private static final String MODEL_ID = "face_feature";
+    private static final int SYNCED_RECORDS = 1000;
+
+    @Param({"10000", "100000"})
+    public int templates;
+
+    private float[][] features;
+    private Path directory;
+    private Path writePath;
+    private Path crashedPath;
+    private Path snapshotPath;
+    private Path replayPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(BenchmarkData.GALLERY_SEED);
+        features = new float[1000][];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = BenchmarkData.randomVector(random);
+        }
+        directory = Files.createTempDirectory("enrollment-log-benchmark");
+        writePath = directory.resolve("write");
+        crashedPath = directory.resolve("crashed");
+        snapshotPath = directory.resolve("snapshot");
+        replayPath = directory.resolve("replay");
+        write(crashedPath, templates, false);
+        // Crash in the middle of the last record
+        try (RandomAccessFile file = new RandomAccessFile(logFile(crashedPath).toFile(), "rw")) {
+            file.setLength(file.length() - BenchmarkData.DIMENSION);
+        }
+        write(snapshotPath, templates, false);
+        try (EnrollmentLog log = EnrollmentLog.open(snapshotPath, MODEL_ID, BenchmarkData.DIMENSION, false)) {
+            log.compact();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * A fresh write target and a copy of the crashed log, since replay cuts off its torn record.
+     */
+    @Setup(Level.Invocation)
+    public void restoreFiles() throws IOException {
+        Files.deleteIfExists(logFile(writePath));
+        Files.deleteIfExists(directory.resolve("write.snapshot"));
+        Files.copy(logFile(crashedPath), logFile(replayPath), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(directory.resolve("replay.snapshot"));
+    }
+
+    private static Path logFile(Path basePath) {
+        return basePath.resolveSibling(basePath.getFileName() + ".log");
+    }
+
+    private void write(Path basePath, int records, boolean syncWrites) throws IOException {
+        try (EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, BenchmarkData.DIMENSION, syncWrites)) {
+            for (int i = 0; i < records; i++) {
+                log.add(1 + i % 50, i, features[i % features.length]);
+            }
+            log.sync();
+        }
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        write(writePath, templates, false);
+    }
+
+    /**
+     * Only SYNCED_RECORDS records, a force per record is too slow for the whole gallery.
+     */
+    @Benchmark
+    public void writeSynced() throws IOException {
+        write(writePath, SYNCED_RECORDS, true);
+    }
+
+    @Benchmark
+    public long replayLog() throws IOException {
+        try (EnrollmentLog log = EnrollmentLog.open(replayPath, MODEL_ID, BenchmarkData.DIMENSION, false)) {
+            return log.getTruncatedBytes();
+        }
+    }
+
+    @Benchmark
+    public void compact(OpenLog openLog) throws IOException {
+        openLog.log.compact();
+    }
+
+    @Benchmark
+    public int replaySnapshot() throws IOException {
+        try (EnrollmentLog log = EnrollmentLog.open(snapshotPath, MODEL_ID, BenchmarkData.DIMENSION, false)) {
+            return log.getEmployeeCount();
+        }
+    }
+
+    /**
+     * The restored crashed log, replayed before the invocation so compact() is timed alone.
+     */
+    @State(Scope.Thread)
+    public static class OpenLog {
+        EnrollmentLog log;
+
+        @Setup(Level.Invocation)
+        public void open(EnrollmentLogBenchmark benchmark) throws IOException {
+            log = EnrollmentLog.open(benchmark.replayPath, MODEL_ID, BenchmarkData.DIMENSION, false);
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws IOException {
+            log.close();
+        }
+    }
+}
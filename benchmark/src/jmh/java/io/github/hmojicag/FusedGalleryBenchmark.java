@@ -0,0 +1,91 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw company search against FusedGallery at several templates per employee, with one outlier
+ * BioPhoto per employee. Top-1 accuracy and acceptance at the threshold are printed once per
+ * trial, since they don't depend on timing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FusedGalleryBenchmark {
+    private static final int EMPLOYEES = 1000;
+    // More than BenchmarkData.QUERIES, so the printed accuracy is stable
+    private static final int QUERIES = 500;
+
+    @Param({"3", "5", "10"})
+    public int templates;
+
+    private PartitionedGallery raw;
+    private FusedGallery fused;
+    private float[][] queries;
+    private final int[] outEmpleado = new int[1];
+    private final float[] outScore = new float[1];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        float[][] identities = new float[EMPLOYEES][];
+        List<BioPhoto> bioPhotos = BenchmarkData.enrollment(EMPLOYEES, templates, true, identities);
+        raw = PartitionedGallery.fromBioPhotos(bioPhotos);
+        fused = FusedGallery.fromBioPhotos(bioPhotos, 0.6f, 3);
+        Random random = new Random(BenchmarkData.QUERY_SEED);
+        queries = new float[QUERIES][];
+        int[] expected = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            expected[i] = random.nextInt(EMPLOYEES);
+            // Noisier than enrollment photos, so some punches fall near the threshold
+            queries[i] = BenchmarkData.noisyCopy(identities[expected[i]], random, 1.3f);
+        }
+        int rawCorrect = 0;
+        int rawAccepted = 0;
+        int fusedCorrect = 0;
+        int fusedAccepted = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            if (raw.searchCompany(1, queries[i], 0.0f, 1, PartitionedGallery.ScoreMode.MAX, outEmpleado,
+                    outScore) > 0 && outEmpleado[0] == expected[i]) {
+                rawCorrect++;
+                rawAccepted += outScore[0] >= BenchmarkData.THRESHOLD ? 1 : 0;
+            }
+            if (fused.searchCompany(1, queries[i], 0.0f, PartitionedGallery.ScoreMode.MAX, outEmpleado,
+                    outScore) > 0 && outEmpleado[0] == expected[i]) {
+                fusedCorrect++;
+                fusedAccepted += outScore[0] >= BenchmarkData.THRESHOLD ? 1 : 0;
+            }
+        }
+        System.out.printf("%ntemplates/employee=%d rows %d -> %d (%d outliers) | raw: top-1 %.4f accepted %.4f"
+                        + " | fused: top-1 %.4f accepted %.4f%n",
+                templates, raw.size(), fused.getCentroids().size(), fused.getRejectedTemplates(),
+                (double) rawCorrect / QUERIES, (double) rawAccepted / QUERIES,
+                (double) fusedCorrect / QUERIES, (double) fusedAccepted / QUERIES);
+    }
+
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % queries.length;
+        return query;
+    }
+
+    @Benchmark
+    public int raw() {
+        return raw.searchCompany(1, nextQuery(), 0.0f, 1, PartitionedGallery.ScoreMode.MAX, outEmpleado, outScore);
+    }
+
+    @Benchmark
+    public int fused() {
+        return fused.searchCompany(1, nextQuery(), 0.0f, PartitionedGallery.ScoreMode.MAX, outEmpleado, outScore);
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HnswFaceIndex latency against BruteForceFaceIndex, sweeping m and efSearch.
+ * Recall@1 against brute force is printed once per trial, since it doesn't depend on timing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HnswFaceIndexBenchmark {
+    @Param({"10000"})
+    public int gallerySize;
+
+    @Param({"8", "16", "32"})
+    public int m;
+
+    @Param({"16", "32", "64", "128", "256"})
+    public int efSearch;
+
+    private float[][] queries;
+    private BruteForceFaceIndex exact;
+    private HnswFaceIndex hnsw;
+    private final int[] outIds = new int[1];
+    private final float[] outScores = new float[1];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<BioPhoto> bioPhotos = BenchmarkData.bioPhotos(gallerySize);
+        queries = BenchmarkData.queries(bioPhotos);
+        exact = new BruteForceFaceIndex(BenchmarkData.DIMENSION, gallerySize);
+        hnsw = new HnswFaceIndex(BenchmarkData.DIMENSION, m, HnswFaceIndex.DEFAULT_EF_CONSTRUCTION, efSearch,
+                BenchmarkData.GALLERY_SEED);
+        for (int i = 0; i < bioPhotos.size(); i++) {
+            exact.add(i, bioPhotos.get(i).getFeatures());
+            hnsw.add(i, bioPhotos.get(i).getFeatures());
+        }
+        System.out.printf("%nm=%d efSearch=%d recall@1=%.4f%n", m, efSearch,
+                FaceIndex.recallAt1(exact, hnsw, queries, BenchmarkData.THRESHOLD));
+    }
+
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % queries.length;
+        return query;
+    }
+
+    @Benchmark
+    public int bruteForce() {
+        return exact.search(nextQuery(), BenchmarkData.THRESHOLD, 1, outIds, outScores);
+    }
+
+    @Benchmark
+    public int hnsw() {
+        return hnsw.search(nextQuery(), BenchmarkData.THRESHOLD, 1, outIds, outScores);
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full 1:N identification of one query against galleries of several sizes.
+ * Each invocation takes the next of BenchmarkData.QUERIES fixed queries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MatchingBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int gallerySize;
+
+    private List<BioPhoto> bioPhotos;
+    private float[][] queries;
+    private EmbeddingGallery gallery;
+    private QuantizedEmbeddingGallery quantizedGallery;
+    private HnswFaceIndex hnswIndex;
+    private final int[] outIds = new int[1];
+    private final float[] outScores = new float[1];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        bioPhotos = BenchmarkData.bioPhotos(gallerySize);
+        queries = BenchmarkData.queries(bioPhotos);
+        gallery = EmbeddingGallery.fromBioPhotos(bioPhotos);
+        quantizedGallery = QuantizedEmbeddingGallery.fromGallery(gallery, false);
+        hnswIndex = new HnswFaceIndex(BenchmarkData.DIMENSION, HnswFaceIndex.DEFAULT_M,
+                HnswFaceIndex.DEFAULT_EF_CONSTRUCTION, HnswFaceIndex.DEFAULT_EF_SEARCH, BenchmarkData.GALLERY_SEED);
+        for (int i = 0; i < bioPhotos.size(); i++) {
+            hnswIndex.add(i, bioPhotos.get(i).getFeatures());
+        }
+    }
+
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % queries.length;
+        return query;
+    }
+
+    /** Same shape as the original getBioPhotoMatch: collect every hit, then sort. */
+    @Benchmark
+    public BioPhoto legacyScan() {
+        float[] query = nextQuery();
+        List<BioPhotoMatch> matchedPhotos = new ArrayList<>();
+        for (BioPhoto bioPhoto : bioPhotos) {
+            float result = Similarity.calculateSimilitude(query, bioPhoto.getFeatures());
+            if (result >= BenchmarkData.THRESHOLD) {
+                matchedPhotos.add(new BioPhotoMatch(result, bioPhoto));
+            }
+        }
+        return matchedPhotos.stream().sorted().findFirst().map(BioPhotoMatch::getBioPhoto).orElse(null);
+    }
+
+    @Benchmark
+    public int galleryFindBest() {
+        return gallery.findBest(nextQuery(), BenchmarkData.THRESHOLD);
+    }
+
+    @Benchmark
+    public int quantizedFindBest() {
+        return quantizedGallery.findBest(nextQuery(), BenchmarkData.THRESHOLD);
+    }
+
+    @Benchmark
+    public int hnswSearch() {
+        return hnswIndex.search(nextQuery(), BenchmarkData.THRESHOLD, 1, outIds, outScores);
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of timing one stage with RecognitionMetrics, enabled and disabled, against not timing it.
+ * The shared state makes the threaded variants contend on the same histogram.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+    @Param({"true", "false"})
+    public boolean enabled;
+
+    private RecognitionMetrics metrics;
+
+    @Setup
+    public void setUp() {
+        metrics = new RecognitionMetrics(enabled);
+    }
+
+    @Benchmark
+    public void baseline() {
+        // Nothing timed, the floor of the other benchmarks
+    }
+
+    @Benchmark
+    public void timeStage() {
+        metrics.stop(RecognitionMetrics.Stage.DETECT, metrics.start());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void timeStageContended() {
+        metrics.stop(RecognitionMetrics.Stage.DETECT, metrics.start());
+    }
+
+    @Benchmark
+    public void skip() {
+        metrics.skip(RecognitionMetrics.SkipReason.NO_FACE);
+    }
+}
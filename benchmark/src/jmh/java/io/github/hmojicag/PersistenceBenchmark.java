@@ -0,0 +1,118 @@
+package io.github.hmojicag;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading the enrolled gallery: the original Gson JSON cache against EnrollmentLog,
+ * loaded from log records only and from a compacted snapshot, which open maps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PersistenceBenchmark {
+    private static final String MODEL_ID = "face_feature";
+
+    @Param({"1000", "10000", "100000"})
+    public int gallerySize;
+
+    private final Gson gson = new Gson();
+    private final Type bioPhotoListType = new TypeToken<List<BioPhoto>>() {}.getType();
+    private List<BioPhoto> bioPhotos;
+    private Path directory;
+    private Path jsonPath;
+    private Path savedLogPath;
+    private Path logOnlyPath;
+    private Path snapshotPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        bioPhotos = BenchmarkData.bioPhotos(gallerySize);
+        directory = Files.createTempDirectory("persistence-benchmark");
+        jsonPath = directory.resolve("biophotos.json");
+        savedLogPath = directory.resolve("saved");
+        logOnlyPath = directory.resolve("log-only");
+        snapshotPath = directory.resolve("snapshot");
+        saveJson();
+        writeLog(logOnlyPath).close();
+        try (EnrollmentLog log = writeLog(snapshotPath)) {
+            log.compact();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private EnrollmentLog writeLog(Path basePath) throws IOException {
+        EnrollmentLog log = EnrollmentLog.open(basePath, MODEL_ID, BenchmarkData.DIMENSION, false);
+        for (BioPhoto bioPhoto : bioPhotos) {
+            log.add(bioPhoto.getEmpresa(), bioPhoto.getEmpleado(), bioPhoto.getFeatures());
+        }
+        return log;
+    }
+
+    @Benchmark
+    public void saveJson() throws IOException {
+        try (Writer writer = Files.newBufferedWriter(jsonPath, StandardCharsets.UTF_8)) {
+            gson.toJson(bioPhotos, bioPhotoListType, writer);
+        }
+    }
+
+    @Benchmark
+    public List<BioPhoto> loadJson() throws IOException {
+        try (Reader reader = Files.newBufferedReader(jsonPath, StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, bioPhotoListType);
+        }
+    }
+
+    /**
+     * Every template as a log record, into a fresh log.
+     */
+    @Benchmark
+    public void saveLog() throws IOException {
+        Files.deleteIfExists(directory.resolve("saved.log"));
+        Files.deleteIfExists(directory.resolve("saved.snapshot"));
+        writeLog(savedLogPath).close();
+    }
+
+    @Benchmark
+    public List<BioPhoto> loadLog() throws IOException {
+        try (EnrollmentLog log = EnrollmentLog.open(logOnlyPath, MODEL_ID, BenchmarkData.DIMENSION, false)) {
+            return log.getBioPhotos();
+        }
+    }
+
+    @Benchmark
+    public List<BioPhoto> loadSnapshot() throws IOException {
+        try (EnrollmentLog log = EnrollmentLog.open(snapshotPath, MODEL_ID, BenchmarkData.DIMENSION, false)) {
+            return log.getBioPhotos();
+        }
+    }
+}
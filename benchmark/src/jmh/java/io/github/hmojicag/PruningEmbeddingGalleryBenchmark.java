@@ -0,0 +1,104 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact EmbeddingGallery search against PruningEmbeddingGallery with and without dimension
+ * reordering, for isotropic and low rank templates (see {@link BenchmarkData#lowRankVector}).
+ * Half the queries are noisy copies of a template and half are strangers. The fraction of the
+ * dimensions skipped and the agreement with exact search are printed once per trial, since
+ * they don't depend on timing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PruningEmbeddingGalleryBenchmark {
+    private static final int RANK = 48;
+    // More than BenchmarkData.QUERIES, so the printed agreement is stable
+    private static final int QUERIES = 300;
+
+    @Param({"10000", "50000", "100000"})
+    public int gallerySize;
+
+    @Param({"false", "true"})
+    public boolean lowRank;
+
+    @Param({"false", "true"})
+    public boolean reorder;
+
+    @Param({"16", "32", "64"})
+    public int blockSize;
+
+    private EmbeddingGallery gallery;
+    private PruningEmbeddingGallery pruning;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.GALLERY_SEED);
+        float[][] factors = BenchmarkData.factors(random, RANK);
+        gallery = new EmbeddingGallery(BenchmarkData.DIMENSION, gallerySize);
+        for (int i = 0; i < gallerySize; i++) {
+            gallery.add(1, i, lowRank
+                    ? BenchmarkData.lowRankVector(factors, random, 0.3f)
+                    : BenchmarkData.randomVector(random));
+        }
+        random = new Random(BenchmarkData.QUERY_SEED);
+        queries = new float[QUERIES][];
+        float[] row = new float[BenchmarkData.DIMENSION];
+        for (int i = 0; i < QUERIES; i++) {
+            if (i % 2 == 0) {
+                System.arraycopy(gallery.getVectors(), random.nextInt(gallerySize) * BenchmarkData.DIMENSION,
+                        row, 0, BenchmarkData.DIMENSION);
+                queries[i] = BenchmarkData.noisyCopy(row, random, 0.02f);
+            } else {
+                queries[i] = lowRank
+                        ? BenchmarkData.lowRankVector(factors, random, 0.3f)
+                        : BenchmarkData.randomVector(random);
+            }
+        }
+        pruning = PruningEmbeddingGallery.fromGallery(gallery, blockSize, reorder);
+
+        long[] scored = new long[1];
+        int[] index = new int[1];
+        float[] score = new float[1];
+        int agree = 0;
+        for (float[] query : queries) {
+            int count = pruning.search(query, BenchmarkData.THRESHOLD, 1, index, score, scored);
+            if ((count == 0 ? -1 : index[0]) == gallery.findBest(query, BenchmarkData.THRESHOLD)) {
+                agree++;
+            }
+        }
+        double skipped = 1.0 - (double) scored[0] / ((double) QUERIES * gallerySize * BenchmarkData.DIMENSION);
+        System.out.printf("%ngallery=%d %s %s order b=%d skipped=%.3f agreement=%.3f%n",
+                gallerySize, lowRank ? "low rank" : "isotropic", reorder ? "energy" : "natural", blockSize,
+                skipped, (double) agree / QUERIES);
+    }
+
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % queries.length;
+        return query;
+    }
+
+    @Benchmark
+    public int exact() {
+        return gallery.findBest(nextQuery(), BenchmarkData.THRESHOLD);
+    }
+
+    @Benchmark
+    public int pruning() {
+        return pruning.findBest(nextQuery(), BenchmarkData.THRESHOLD);
+    }
+}
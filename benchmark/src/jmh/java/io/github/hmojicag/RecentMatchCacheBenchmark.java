@@ -0,0 +1,209 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching a synthetic few days of punches through the full company search with and without a
+ * RecentMatchCache in front, at several hit similitudes. Each invocation matches the next punch
+ * in time order, the cache starts over when the log wraps around. Lookup hits, verified
+ * shortcuts, shortcut answers that differ from the full search and false accepts against the
+ * true identity are printed once per trial, from one replay of the whole log.
+ * <p>
+ * Employees punch in bursts, a few punches seconds to minutes apart under the same conditions,
+ * several bursts a day. Each burst shares a capture offset, so punches of one burst are much
+ * closer to each other than to the templates or to other bursts. 2% of the employees have a
+ * lookalike enrolled, and strangers who aren't enrolled punch too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecentMatchCacheBenchmark {
+    private static final int EMPRESA = 1;
+    private static final int EMPLOYEES = 1000;
+    private static final int TEMPLATES = 3;
+    private static final int DAYS = 3;
+    private static final long TTL_MILLIS = 10 * 60 * 1000;
+    private static final int CACHE_SIZE = 256;
+    private static final PartitionedGallery.ScoreMode MODE = PartitionedGallery.ScoreMode.MAX;
+    // Offsets as a fraction of the unit identity: template/burst capture, punch within a burst
+    private static final float CAPTURE_NOISE = 0.6f;
+    private static final float PUNCH_NOISE = 0.25f;
+    private static final float LOOKALIKE_NOISE = 0.5f;
+
+    @Param({"0.80", "0.85", "0.90", "0.95"})
+    public float hitSimilitude;
+
+    private PartitionedGallery gallery;
+    private List<Punch> punches;
+    private RecentMatchCache cache;
+    private final int[] outEmpleado = new int[1];
+    private final float[] outScore = new float[1];
+    private int next;
+
+    private static class Punch {
+        final long millis;
+        // -1 for people who aren't enrolled
+        final int empleado;
+        final float[] features;
+
+        Punch(long millis, int empleado, float[] features) {
+            this.millis = millis;
+            this.empleado = empleado;
+            this.features = features;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.GALLERY_SEED);
+        float[][] identities = new float[EMPLOYEES][];
+        for (int i = 0; i < EMPLOYEES; i++) {
+            identities[i] = i > 0 && random.nextFloat() < 0.02f
+                    ? perturb(identities[i - 1], LOOKALIKE_NOISE, random)
+                    : Similarity.normalize(BenchmarkData.randomVector(random));
+        }
+        List<BioPhoto> bioPhotos = new ArrayList<>();
+        for (int i = 0; i < EMPLOYEES; i++) {
+            for (int t = 0; t < TEMPLATES; t++) {
+                bioPhotos.add(new BioPhoto(EMPRESA, i, null, null, perturb(identities[i], CAPTURE_NOISE, random)));
+            }
+        }
+        gallery = PartitionedGallery.fromBioPhotos(bioPhotos);
+        punches = punchLog(identities, new Random(BenchmarkData.QUERY_SEED));
+
+        int[] fullAnswers = new int[punches.size()];
+        for (int i = 0; i < punches.size(); i++) {
+            fullAnswers[i] = fullSearch(punches.get(i));
+        }
+        cache = new RecentMatchCache(CACHE_SIZE, TTL_MILLIS, hitSimilitude);
+        int shortcuts = 0;
+        int differ = 0;
+        int falseAccepts = 0;
+        int fullFalseAccepts = 0;
+        for (int i = 0; i < punches.size(); i++) {
+            Punch punch = punches.get(i);
+            long verifiedHits = cache.getVerifiedHits();
+            int answer = cachedSearch(punch);
+            if (cache.getVerifiedHits() > verifiedHits) {
+                shortcuts++;
+                differ += answer != fullAnswers[i] ? 1 : 0;
+            }
+            falseAccepts += answer >= 0 && answer != punch.empleado ? 1 : 0;
+            fullFalseAccepts += fullAnswers[i] >= 0 && fullAnswers[i] != punch.empleado ? 1 : 0;
+        }
+        System.out.printf("%n%d templates, %d punches over %d days | hit>=%.2f lookup hits=%.3f shortcuts=%.3f"
+                        + " differ from full=%d | false accepts: full %d cached %d%n",
+                gallery.size(), punches.size(), DAYS, hitSimilitude,
+                (double) cache.getHits() / punches.size(), (double) shortcuts / punches.size(),
+                differ, fullFalseAccepts, falseAccepts);
+        cache.clear();
+    }
+
+    /**
+     * Unit vector at cosine 1 / sqrt(1 + noise^2) from the unit vector src.
+     */
+    private static float[] perturb(float[] src, float noise, Random random) {
+        float[] direction = Similarity.normalize(BenchmarkData.randomVector(random));
+        float[] vector = new float[BenchmarkData.DIMENSION];
+        for (int i = 0; i < BenchmarkData.DIMENSION; i++) {
+            vector[i] = src[i] + noise * direction[i];
+        }
+        return Similarity.normalize(vector);
+    }
+
+    /**
+     * Punches in time order.
+     */
+    private static List<Punch> punchLog(float[][] identities, Random random) {
+        List<Punch> punches = new ArrayList<>();
+        long day = 24L * 60 * 60 * 1000;
+        long workday = 9L * 60 * 60 * 1000;
+        for (int d = 0; d < DAYS; d++) {
+            for (int i = 0; i < EMPLOYEES; i++) {
+                int bursts = 1 + random.nextInt(3);
+                for (int b = 0; b < bursts; b++) {
+                    float[] capture = perturb(identities[i], CAPTURE_NOISE, random);
+                    long millis = d * day + (long) (random.nextDouble() * workday);
+                    int repeats = 1 + random.nextInt(4);
+                    for (int r = 0; r < repeats; r++) {
+                        punches.add(new Punch(millis, i, perturb(capture, PUNCH_NOISE, random)));
+                        millis += 10_000 + random.nextInt(110_000);
+                    }
+                }
+            }
+            int strangers = EMPLOYEES / 4;
+            for (int s = 0; s < strangers; s++) {
+                float[] stranger = Similarity.normalize(BenchmarkData.randomVector(random));
+                punches.add(new Punch(d * day + (long) (random.nextDouble() * workday), -1,
+                        perturb(stranger, CAPTURE_NOISE, random)));
+            }
+        }
+        Collections.sort(punches, new Comparator<Punch>() {
+            @Override
+            public int compare(Punch a, Punch b) {
+                return Long.compare(a.millis, b.millis);
+            }
+        });
+        return punches;
+    }
+
+    /**
+     * @return the accepted employee, -1 if none
+     */
+    private int fullSearch(Punch punch) {
+        if (gallery.searchCompany(EMPRESA, punch.features, BenchmarkData.THRESHOLD, 1, MODE, outEmpleado,
+                outScore) == 1) {
+            return outEmpleado[0];
+        }
+        return -1;
+    }
+
+    /**
+     * Like DjlFaceRecognitionTest.getBestCandidate with the cache on.
+     * @return the accepted employee, -1 if none
+     */
+    private int cachedSearch(Punch punch) {
+        if (cache.lookup(EMPRESA, punch.features, punch.millis, gallery, MODE, BenchmarkData.THRESHOLD,
+                outEmpleado, outScore)) {
+            return outEmpleado[0];
+        }
+        int empleado = fullSearch(punch);
+        if (empleado >= 0) {
+            cache.put(EMPRESA, empleado, punch.features, gallery, punch.millis);
+        }
+        return empleado;
+    }
+
+    private Punch nextPunch() {
+        Punch punch = punches.get(next);
+        next = (next + 1) % punches.size();
+        if (next == 0) {
+            cache.clear();
+        }
+        return punch;
+    }
+
+    @Benchmark
+    public int full() {
+        return fullSearch(nextPunch());
+    }
+
+    @Benchmark
+    public int cached() {
+        return cachedSearch(nextPunch());
+    }
+}
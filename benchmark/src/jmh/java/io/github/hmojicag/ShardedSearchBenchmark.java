@@ -0,0 +1,68 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries/sec of a batch of BenchmarkData.QUERIES top-1 searches, sequentially through
+ * EmbeddingGallery and through ShardedGallerySearch on 1 to N worker threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ShardedSearchBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int gallerySize;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private EmbeddingGallery gallery;
+    private float[][] queries;
+    private ForkJoinPool pool;
+    private ShardedGallerySearch search;
+    private int[][] outIndices;
+    private float[][] outScores;
+
+    @Setup
+    public void setUp() {
+        gallery = EmbeddingGallery.fromBioPhotos(BenchmarkData.bioPhotos(gallerySize));
+        queries = BenchmarkData.queries(BenchmarkData.bioPhotos(Math.min(gallerySize, 1000)));
+        pool = new ForkJoinPool(parallelism);
+        search = new ShardedGallerySearch(gallery, pool);
+        outIndices = new int[queries.length][1];
+        outScores = new float[queries.length][1];
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.QUERIES)
+    public int sequential() {
+        int sink = 0;
+        for (int q = 0; q < queries.length; q++) {
+            sink += gallery.search(queries[q], BenchmarkData.THRESHOLD, 1, outIndices[q], outScores[q]);
+        }
+        return sink;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.QUERIES)
+    public int[] sharded() {
+        return search.search(queries, BenchmarkData.THRESHOLD, 1, outIndices, outScores);
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.hmojicag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scoring one pair of 512-d embeddings with each similitude variant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SimilarityBenchmark {
+    private float[] a;
+    private float[] b;
+    private float[] normalizedA;
+    private float[] normalizedB;
+    private byte[] codesA;
+    private byte[] codesB;
+    private float scaleA;
+    private float scaleB;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.GALLERY_SEED);
+        a = BenchmarkData.randomVector(random);
+        b = BenchmarkData.randomVector(random);
+        normalizedA = Similarity.normalize(a);
+        normalizedB = Similarity.normalize(b);
+        codesA = new byte[BenchmarkData.DIMENSION];
+        codesB = new byte[BenchmarkData.DIMENSION];
+        scaleA = Similarity.quantize(normalizedA, codesA, 0);
+        scaleB = Similarity.quantize(normalizedB, codesB, 0);
+    }
+
+    /** Original path: dot product and both norms on every comparison. */
+    @Benchmark
+    public float calculateSimilitude() {
+        return Similarity.calculateSimilitude(a, b);
+    }
+
+    /** Gallery path: rows are normalized up front, so scoring is a single dot product. */
+    @Benchmark
+    public float normalizedDot() {
+        return Similarity.toSimilitude(Similarity.dot(normalizedA, 0, normalizedB, 0, BenchmarkData.DIMENSION));
+    }
+
+    /** Quantized gallery path: integer dot product of int8 codes. */
+    @Benchmark
+    public float int8Dot() {
+        int dot = Similarity.dot(codesA, 0, codesB, 0, BenchmarkData.DIMENSION);
+        return Similarity.toSimilitude(dot * scaleA * scaleB);
+    }
+}
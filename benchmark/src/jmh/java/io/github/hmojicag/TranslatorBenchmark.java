@@ -0,0 +1,80 @@
+package io.github.hmojicag;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FaceFeatureTranslator.processOutput on one unbatched [512] model output, against the
+ * original slice-per-element implementation. Run with the gc profiler (the jmh task does)
+ * to compare gc.alloc.rate.norm, the bytes allocated per call.
+ * Runs on the desktop PyTorch engine, DJL downloads its native library on first use.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TranslatorBenchmark {
+    private NDManager manager;
+    private NDList output;
+    private FaceFeatureTranslator translator;
+    private FaceFeatureTranslator normalizingTranslator;
+
+    @Setup
+    public void setUp() {
+        manager = NDManager.newBaseManager();
+        output = new NDList(manager.create(BenchmarkData.randomVector(new Random(BenchmarkData.GALLERY_SEED))));
+        translator = new FaceFeatureTranslator();
+        normalizingTranslator = new FaceFeatureTranslator(true);
+        // Arrays.equals compares floats bit by bit
+        if (!Arrays.equals(legacyProcessOutput(), processOutput())) {
+            throw new IllegalStateException("processOutput differs from the original implementation");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Benchmark
+    public float[] processOutput() {
+        // processOutput doesn't use the TranslatorContext
+        return translator.processOutput(null, output);
+    }
+
+    @Benchmark
+    public float[] processOutputNormalized() {
+        return normalizingTranslator.processOutput(null, output);
+    }
+
+    /** The original processOutput, kept verbatim as the baseline. */
+    @Benchmark
+    public float[] legacyProcessOutput() {
+        NDList result = new NDList();
+        long numOutputs = output.singletonOrThrow().getShape().get(0);
+        for (int i = 0; i < numOutputs; i++) {
+            result.add(output.singletonOrThrow().get(i));
+        }
+        float[][] embeddings =
+                result.stream().map(NDArray::toFloatArray).toArray(float[][]::new);
+        float[] feature = new float[embeddings.length];
+        for (int i = 0; i < embeddings.length; i++) {
+            feature[i] = embeddings[i][0];
+        }
+        // The slices are attached to the manager, close them like the predictor's context would
+        result.close();
+        return feature;
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.hmojicag;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exact FaceIndex, a linear scan over normalized rows in a flat float[].
+ * Removal moves the last row into the freed slot so the scan stays dense.
+ * Not thread-safe for writes.
+ */
+public class BruteForceFaceIndex implements FaceIndex {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final int dimension;
+    private final Map<Integer, Integer> rowById = new HashMap<>();
+    private float[] vectors;
+    private int[] ids;
+    private int size;
+
+    public BruteForceFaceIndex(int dimension) {
+        this(dimension, DEFAULT_CAPACITY);
+    }
+
+    public BruteForceFaceIndex(int dimension, int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        this.dimension = dimension;
+        this.vectors = new float[capacity * dimension];
+        this.ids = new int[capacity];
+    }
+
+    @Override
+    public void add(int id, float[] features) {
+        if (features.length != dimension) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d features but got %d", dimension, features.length));
+        }
+        Integer existing = rowById.get(id);
+        int row;
+        if (existing != null) {
+            row = existing;
+        } else {
+            ensureCapacity(size + 1);
+            row = size++;
+            ids[row] = id;
+            rowById.put(id, row);
+        }
+        Similarity.normalize(features, vectors, row * dimension);
+    }
+
+    @Override
+    public boolean remove(int id) {
+        Integer row = rowById.remove(id);
+        if (row == null) {
+            return false;
+        }
+        int last = --size;
+        if (row != last) {
+            System.arraycopy(vectors, last * dimension, vectors, row * dimension, dimension);
+            ids[row] = ids[last];
+            rowById.put(ids[row], row);
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int search(float[] query, float threshold, int k, int[] outIds, float[] outScores) {
+        int limit = Math.min(k, Math.min(outIds.length, outScores.length));
+        float queryNorm = Similarity.norm(query);
+        if (limit <= 0 || queryNorm == 0.0f) {
+            return 0;
+        }
+        float cutoff = Similarity.toCosine(threshold) * queryNorm;
+        int count = 0;
+        for (int i = 0, offset = 0; i < size; i++, offset += dimension) {
+            float score = Similarity.dot(query, 0, vectors, offset, dimension);
+            if (score < cutoff) {
+                continue;
+            }
+            int pos = count < limit ? count++ : limit - 1;
+            while (pos > 0 && outScores[pos - 1] < score) {
+                outScores[pos] = outScores[pos - 1];
+                outIds[pos] = outIds[pos - 1];
+                pos--;
+            }
+            outScores[pos] = score;
+            outIds[pos] = ids[i];
+            if (count == limit) {
+                cutoff = Math.max(cutoff, outScores[limit - 1]);
+            }
+        }
+        float invNorm = 1.0f / queryNorm;
+        for (int i = 0; i < count; i++) {
+            outScores[i] = Similarity.toSimilitude(outScores[i] * invNorm);
+        }
+        return count;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length + (ids.length >> 1));
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        ids = Arrays.copyOf(ids, capacity);
+    }
+}
@@ -0,0 +1,343 @@
+package io.github.hmojicag;
+
+import java.util.Random;
+
+/**
+ * Two-stage search over an {@link EmbeddingGallery}: a first pass scores every row projected
+ * to a few dimensions (64 by default) and keeps the best getCandidates() rows, a second pass
+ * re-scores only those at full dimension. Scores are therefore exact and the threshold applies
+ * as usual, but a true best row the first pass ranks below the candidate cut is missed.
+ * <p>
+ * The projection is an orthonormal basis trained offline from the enrolled rows, either the top
+ * principal directions ({@link #trainPca}) or a seeded random one ({@link #randomProjection}).
+ * A trained basis can be kept and reused for later galleries of the same model.
+ * <p>
+ * The projected rows are a snapshot of the gallery when built, rebuild after enrollment changes.
+ * Immutable once built, safe to search from several threads.
+ */
+public class CascadeGallery {
+    public static final int DEFAULT_REDUCED_DIMENSION = 64;
+    public static final int DEFAULT_CANDIDATES = 64;
+    // Rows sampled to estimate the second moment matrix, enough for 512-d
+    private static final int TRAINING_SAMPLE = 5000;
+    private static final int POWER_ITERATIONS = 20;
+
+    private final EmbeddingGallery gallery;
+    private final int dimension;
+    private final int reducedDimension;
+    private final float[] basis;
+    private final float[] reduced;
+    private final int size;
+    private final int candidates;
+    private final ThreadLocal<float[]> projectedQuery;
+    private final ThreadLocal<int[]> candidateIndices;
+    private final ThreadLocal<float[]> candidateScores;
+
+    /**
+     * @param basis reducedDimension orthonormal rows of gallery.getDimension() floats, row-major
+     * @param candidates First pass rows re-scored at full dimension, at least 1
+     */
+    public CascadeGallery(EmbeddingGallery gallery, float[] basis, int candidates) {
+        int dimension = gallery.getDimension();
+        if (basis.length == 0 || basis.length % dimension != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected a multiple of %d basis floats but got %d", dimension, basis.length));
+        }
+        if (candidates < 1) {
+            throw new IllegalArgumentException("candidates must be at least 1");
+        }
+        this.gallery = gallery;
+        this.dimension = dimension;
+        this.reducedDimension = basis.length / dimension;
+        this.basis = basis;
+        this.size = gallery.size();
+        this.candidates = candidates;
+        this.reduced = new float[size * reducedDimension];
+        float[] vectors = gallery.getVectors();
+        for (int i = 0; i < size; i++) {
+            project(vectors, i * dimension, reduced, i * reducedDimension);
+        }
+        this.projectedQuery = ThreadLocal.withInitial(() -> new float[reducedDimension]);
+        this.candidateIndices = ThreadLocal.withInitial(() -> new int[candidates]);
+        this.candidateScores = ThreadLocal.withInitial(() -> new float[candidates]);
+    }
+
+    /**
+     * Trains a PCA basis on the gallery and builds the cascade with default sizes.
+     * Returns null for a null gallery, like {@link EmbeddingGallery#fromBioPhotos}.
+     */
+    public static CascadeGallery fromGallery(EmbeddingGallery gallery) {
+        if (gallery == null) {
+            return null;
+        }
+        int reducedDimension = Math.min(DEFAULT_REDUCED_DIMENSION, gallery.getDimension());
+        return new CascadeGallery(gallery, trainPca(gallery, reducedDimension, 1), DEFAULT_CANDIDATES);
+    }
+
+    /**
+     * Top reducedDimension eigenvectors of the uncentered second moment matrix of the gallery
+     * rows, by subspace iteration from a random start. Uncentered since the cascade ranks by raw
+     * dot products, which that subspace preserves best.
+     * At most TRAINING_SAMPLE rows are used, picked with the seed.
+     */
+    public static float[] trainPca(EmbeddingGallery gallery, int reducedDimension, long seed) {
+        int dimension = gallery.getDimension();
+        checkReducedDimension(reducedDimension, dimension);
+        if (gallery.size() == 0) {
+            throw new IllegalArgumentException("Can't train on an empty gallery");
+        }
+        Random random = new Random(seed);
+        int rows = Math.min(gallery.size(), TRAINING_SAMPLE);
+        int[] sample = sampleRows(gallery.size(), rows, random);
+        float[] vectors = gallery.getVectors();
+        // Upper triangle of X^T X, mirrored afterwards
+        double[] moment = new double[dimension * dimension];
+        for (int row : sample) {
+            int offset = row * dimension;
+            for (int i = 0; i < dimension; i++) {
+                double xi = vectors[offset + i];
+                int base = i * dimension;
+                for (int j = i; j < dimension; j++) {
+                    moment[base + j] += xi * vectors[offset + j];
+                }
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < i; j++) {
+                moment[i * dimension + j] = moment[j * dimension + i];
+            }
+        }
+
+        double[] basis = gaussianBasis(reducedDimension, dimension, random);
+        double[] product = new double[reducedDimension * dimension];
+        for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++) {
+            for (int k = 0; k < reducedDimension; k++) {
+                int kOffset = k * dimension;
+                for (int i = 0; i < dimension; i++) {
+                    double sum = 0;
+                    int base = i * dimension;
+                    for (int j = 0; j < dimension; j++) {
+                        sum += moment[base + j] * basis[kOffset + j];
+                    }
+                    product[kOffset + i] = sum;
+                }
+            }
+            double[] swap = basis;
+            basis = product;
+            product = swap;
+            orthonormalize(basis, reducedDimension, dimension);
+        }
+        return toFloats(basis);
+    }
+
+    /**
+     * Orthonormalized Gaussian basis, the same for the same seed. Needs no training data.
+     */
+    public static float[] randomProjection(int dimension, int reducedDimension, long seed) {
+        checkReducedDimension(reducedDimension, dimension);
+        double[] basis = gaussianBasis(reducedDimension, dimension, new Random(seed));
+        return toFloats(basis);
+    }
+
+    /**
+     * Returns the row with the highest similitude at or above threshold among the candidates,
+     * or -1 if none.
+     * @param query Raw (not necessarily normalized) features
+     * @param threshold Minimum similitude in the (cos + 1) / 2 scale
+     */
+    public int findBest(float[] query, float threshold) {
+        int[] index = new int[1];
+        return search(query, threshold, 1, index, new float[1]) == 0 ? -1 : index[0];
+    }
+
+    /**
+     * Top-k search like {@link EmbeddingGallery#search}, over the first pass candidates only.
+     * Does not allocate.
+     */
+    public int search(float[] query, float threshold, int k, int[] outIndices, float[] outScores) {
+        int limit = Math.min(k, Math.min(outIndices.length, outScores.length));
+        float queryNorm = Similarity.norm(query);
+        if (limit <= 0 || queryNorm == 0.0f) {
+            return 0;
+        }
+        int[] indices = candidateIndices.get();
+        int candidateCount = candidates(query, indices, candidateScores.get());
+        float[] vectors = gallery.getVectors();
+        float cutoff = Similarity.toCosine(threshold) * queryNorm;
+        int count = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int row = indices[c];
+            float score = Similarity.dot(query, 0, vectors, row * dimension, dimension);
+            if (score < cutoff) {
+                continue;
+            }
+            count = insert(row, score, count, limit, outIndices, outScores);
+            if (count == limit) {
+                cutoff = Math.max(cutoff, outScores[limit - 1]);
+            }
+        }
+        float invNorm = 1.0f / queryNorm;
+        for (int i = 0; i < count; i++) {
+            outScores[i] = Similarity.toSimilitude(outScores[i] * invNorm);
+        }
+        return count;
+    }
+
+    /**
+     * First pass: the best min(getCandidates(), outIndices.length) rows by projected dot product,
+     * in descending order. outScores are projected raw dot products, not similitudes.
+     * @return how many were written
+     */
+    int candidates(float[] query, int[] outIndices, float[] outScores) {
+        int limit = Math.min(candidates, Math.min(outIndices.length, outScores.length));
+        float[] projected = projectedQuery.get();
+        project(query, 0, projected, 0);
+        int count = 0;
+        float cutoff = Float.NEGATIVE_INFINITY;
+        for (int i = 0, offset = 0; i < size; i++, offset += reducedDimension) {
+            float score = Similarity.dot(projected, 0, reduced, offset, reducedDimension);
+            if (score <= cutoff) {
+                continue;
+            }
+            count = insert(i, score, count, limit, outIndices, outScores);
+            if (count == limit) {
+                cutoff = outScores[limit - 1];
+            }
+        }
+        return count;
+    }
+
+    public EmbeddingGallery getGallery() {
+        return gallery;
+    }
+
+    public int getReducedDimension() {
+        return reducedDimension;
+    }
+
+    /**
+     * reducedDimension rows of the gallery's dimension, row-major. Don't modify.
+     */
+    public float[] getBasis() {
+        return basis;
+    }
+
+    public int getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Rows in the snapshot, rows added to the gallery afterwards are not searched.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void project(float[] src, int srcOffset, float[] dst, int dstOffset) {
+        for (int k = 0; k < reducedDimension; k++) {
+            dst[dstOffset + k] = Similarity.dot(src, srcOffset, basis, k * dimension, dimension);
+        }
+    }
+
+    /**
+     * Insertion into the small sorted prefix, dropping the tail when full.
+     * @return the new count
+     */
+    private static int insert(int index, float score, int count, int limit, int[] outIndices, float[] outScores) {
+        int pos = count < limit ? count++ : limit - 1;
+        while (pos > 0 && outScores[pos - 1] < score) {
+            outScores[pos] = outScores[pos - 1];
+            outIndices[pos] = outIndices[pos - 1];
+            pos--;
+        }
+        outScores[pos] = score;
+        outIndices[pos] = index;
+        return count;
+    }
+
+    private static void checkReducedDimension(int reducedDimension, int dimension) {
+        if (reducedDimension <= 0 || reducedDimension > dimension) {
+            throw new IllegalArgumentException(String.format(
+                    "reducedDimension must be in [1, %d] but got %d", dimension, reducedDimension));
+        }
+    }
+
+    /**
+     * count distinct rows out of size, a partial Fisher-Yates shuffle.
+     */
+    private static int[] sampleRows(int size, int count, Random random) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(size - i);
+            int swap = rows[i];
+            rows[i] = rows[j];
+            rows[j] = swap;
+        }
+        int[] sample = new int[count];
+        System.arraycopy(rows, 0, sample, 0, count);
+        return sample;
+    }
+
+    private static double[] gaussianBasis(int rows, int dimension, Random random) {
+        double[] basis = new double[rows * dimension];
+        for (int i = 0; i < basis.length; i++) {
+            basis[i] = random.nextGaussian();
+        }
+        orthonormalize(basis, rows, dimension);
+        return basis;
+    }
+
+    /**
+     * Modified Gram-Schmidt over the rows, in place.
+     */
+    private static void orthonormalize(double[] basis, int rows, int dimension) {
+        int fallback = 0;
+        for (int k = 0; k < rows; k++) {
+            int kOffset = k * dimension;
+            double before = norm(basis, kOffset, dimension);
+            for (int p = 0; p < k; p++) {
+                int pOffset = p * dimension;
+                double dot = 0;
+                for (int i = 0; i < dimension; i++) {
+                    dot += basis[kOffset + i] * basis[pOffset + i];
+                }
+                for (int i = 0; i < dimension; i++) {
+                    basis[kOffset + i] -= dot * basis[pOffset + i];
+                }
+            }
+            double norm = norm(basis, kOffset, dimension);
+            if (norm <= 1e-6 * before) {
+                // Fewer sample rows than reducedDimension: any unit vector orthogonal to the
+                // previous rows will do, try the axes in turn.
+                for (int i = 0; i < dimension; i++) {
+                    basis[kOffset + i] = i == fallback ? 1.0 : 0.0;
+                }
+                fallback++;
+                k--;
+                continue;
+            }
+            for (int i = 0; i < dimension; i++) {
+                basis[kOffset + i] /= norm;
+            }
+        }
+    }
+
+    private static double norm(double[] values, int offset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += values[offset + i] * values[offset + i];
+        }
+        return Math.sqrt(sum);
+    }
+
+    private static float[] toFloats(double[] values) {
+        float[] floats = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            floats[i] = (float) values[i];
+        }
+        return floats;
+    }
+}
@@ -0,0 +1,179 @@
+package io.github.hmojicag;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Enrolled templates stored as one contiguous row-major float[] of L2 normalized vectors,
+ * with empresa/empleado kept in parallel int[] columns.
+ * Since every row is unit length, cosine against a query is a single dot product and the
+ * query norm only has to be computed once per search.
+ * Not thread-safe for writes, concurrent searches are fine once the gallery is built.
+ */
+public class EmbeddingGallery {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final int dimension;
+    private float[] vectors;
+    private int[] empresas;
+    private int[] empleados;
+    private int size;
+
+    public EmbeddingGallery(int dimension) {
+        this(dimension, DEFAULT_CAPACITY);
+    }
+
+    public EmbeddingGallery(int dimension, int initialCapacity) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive");
+        }
+        int capacity = Math.max(initialCapacity, 1);
+        this.dimension = dimension;
+        this.vectors = new float[capacity * dimension];
+        this.empresas = new int[capacity];
+        this.empleados = new int[capacity];
+    }
+
+    /**
+     * Builds a gallery whose row i is bioPhotos.get(i).
+     * Returns null for an empty list since the dimension can't be inferred.
+     */
+    public static EmbeddingGallery fromBioPhotos(List<? extends BioPhoto> bioPhotos) {
+        if (bioPhotos == null || bioPhotos.isEmpty()) {
+            return null;
+        }
+        int dimension = bioPhotos.get(0).getFeatures().length;
+        EmbeddingGallery gallery = new EmbeddingGallery(dimension, bioPhotos.size());
+        for (BioPhoto bioPhoto : bioPhotos) {
+            gallery.add(bioPhoto.getEmpresa(), bioPhoto.getEmpleado(), bioPhoto.getFeatures());
+        }
+        return gallery;
+    }
+
+    /**
+     * Normalizes and copies features into the gallery.
+     * @return the row index assigned to the template
+     */
+    public int add(int empresa, int empleado, float[] features) {
+        if (features.length != dimension) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d features but got %d", dimension, features.length));
+        }
+        ensureCapacity(size + 1);
+        Similarity.normalize(features, vectors, size * dimension);
+        empresas[size] = empresa;
+        empleados[size] = empleado;
+        return size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the row with the highest similitude at or above threshold, or -1 if none.
+     * @param query Raw (not necessarily normalized) features
+     * @param threshold Minimum similitude in the (cos + 1) / 2 scale
+     */
+    public int findBest(float[] query, float threshold) {
+        float queryNorm = Similarity.norm(query);
+        if (queryNorm == 0.0f) {
+            return -1;
+        }
+        // Compare raw dot products against the threshold scaled by the query norm
+        // so the inner loop doesn't divide.
+        float best = Similarity.toCosine(threshold) * queryNorm;
+        int bestIndex = -1;
+        for (int i = 0, offset = 0; i < size; i++, offset += dimension) {
+            float score = Similarity.dot(query, 0, vectors, offset, dimension);
+            // Strictly better once a row is found, so the first of equal rows wins as in the
+            // stable sort of the original getBioPhotoMatch
+            if (score > best || (bestIndex < 0 && score == best)) {
+                best = score;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * Top-k search. Fills outIndices/outScores in descending score order and returns how
+     * many were written, at most min(k, outIndices.length). Scores are similitudes.
+     * Does not allocate.
+     */
+    public int search(float[] query, float threshold, int k, int[] outIndices, float[] outScores) {
+        int limit = Math.min(k, Math.min(outIndices.length, outScores.length));
+        float queryNorm = Similarity.norm(query);
+        if (limit <= 0 || queryNorm == 0.0f) {
+            return 0;
+        }
+        float cutoff = Similarity.toCosine(threshold) * queryNorm;
+        int count = 0;
+        for (int i = 0, offset = 0; i < size; i++, offset += dimension) {
+            float score = Similarity.dot(query, 0, vectors, offset, dimension);
+            // Once full, an equal score doesn't replace the tail, so the first of equal rows wins
+            // as in findBest
+            if (score < cutoff || count == limit && score <= cutoff) {
+                continue;
+            }
+            // Insertion into the small sorted prefix, dropping the tail when full.
+            int pos = count < limit ? count++ : limit - 1;
+            while (pos > 0 && outScores[pos - 1] < score) {
+                outScores[pos] = outScores[pos - 1];
+                outIndices[pos] = outIndices[pos - 1];
+                pos--;
+            }
+            outScores[pos] = score;
+            outIndices[pos] = i;
+            if (count == limit) {
+                cutoff = Math.max(cutoff, outScores[limit - 1]);
+            }
+        }
+        float invNorm = 1.0f / queryNorm;
+        for (int i = 0; i < count; i++) {
+            outScores[i] = Similarity.toSimilitude(outScores[i] * invNorm);
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getEmpresa(int index) {
+        checkIndex(index);
+        return empresas[index];
+    }
+
+    public int getEmpleado(int index) {
+        checkIndex(index);
+        return empleados[index];
+    }
+
+    /**
+     * Backing array, row i starts at i * getDimension(). Only the first size() rows are valid.
+     */
+    float[] getVectors() {
+        return vectors;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= empresas.length) {
+            return;
+        }
+        int capacity = Math.max(required, empresas.length + (empresas.length >> 1));
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        empresas = Arrays.copyOf(empresas, capacity);
+        empleados = Arrays.copyOf(empleados, capacity);
+    }
+}
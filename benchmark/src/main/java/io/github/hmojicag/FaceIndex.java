@@ -0,0 +1,47 @@
+package io.github.hmojicag;
+
+/**
+ * 1:N search structure over enrolled face templates.
+ * Templates are identified by a caller assigned id, re-adding an existing id replaces it.
+ * Scores are similitudes in the (cos + 1) / 2 scale used by featureThresholdForMatch.
+ */
+public interface FaceIndex {
+
+    void add(int id, float[] features);
+
+    /**
+     * @return true if the id was present
+     */
+    boolean remove(int id);
+
+    int size();
+
+    /**
+     * Fills outIds/outScores with up to k templates scoring at or above threshold,
+     * in descending score order.
+     * @return number of results written
+     */
+    int search(float[] query, float threshold, int k, int[] outIds, float[] outScores);
+
+    /**
+     * Fraction of queries for which candidate returns the same top-1 id as reference.
+     * Queries with no result in reference are skipped.
+     */
+    static double recallAt1(FaceIndex reference, FaceIndex candidate, float[][] queries, float threshold) {
+        int[] expectedId = new int[1];
+        int[] actualId = new int[1];
+        float[] score = new float[1];
+        int total = 0;
+        int hits = 0;
+        for (float[] query : queries) {
+            if (reference.search(query, threshold, 1, expectedId, score) == 0) {
+                continue;
+            }
+            total++;
+            if (candidate.search(query, threshold, 1, actualId, score) == 1 && actualId[0] == expectedId[0]) {
+                hits++;
+            }
+        }
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+}
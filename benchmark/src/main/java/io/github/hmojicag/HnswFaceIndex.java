@@ -0,0 +1,436 @@
+package io.github.hmojicag;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Approximate FaceIndex based on a Hierarchical Navigable Small World graph
+ * (Malkov &amp; Yashunin). Vectors are stored normalized so the graph is navigated
+ * by dot product.
+ * <p>
+ * Knobs:
+ * <ul>
+ *     <li>m: links per node on the upper layers, 2 * m on layer 0. Higher improves recall and costs memory/insert time.</li>
+ *     <li>efConstruction: candidate list size while inserting.</li>
+ *     <li>efSearch: candidate list size while querying, the main recall/latency trade-off. Can be changed at any time.</li>
+ * </ul>
+ * Removal marks the node deleted: it keeps routing queries but is never returned.
+ * Call {@link #compact()} once deleted nodes pile up.
+ * Not thread-safe.
+ */
+public class HnswFaceIndex implements FaceIndex {
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 100;
+    public static final int DEFAULT_EF_SEARCH = 64;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+    private final Map<Integer, Integer> nodeById = new HashMap<>();
+    private int efSearch;
+
+    private float[] vectors;
+    private int[] ids;
+    private boolean[] deleted;
+    // links[node][level][0] is the neighbour count, followed by the neighbours
+    private int[][][] links;
+    private int nodeCount;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    // Reused between calls, see class comment about thread-safety
+    private int[] visited;
+    private int visitedGeneration;
+    private final ScoreHeap candidates = new ScoreHeap(false);
+    private final ScoreHeap results = new ScoreHeap(true);
+
+    public HnswFaceIndex(int dimension) {
+        this(dimension, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH, 42L);
+    }
+
+    public HnswFaceIndex(int dimension, int m, int efConstruction, int efSearch, long seed) {
+        if (m < 2) {
+            throw new IllegalArgumentException("m must be at least 2");
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.random = new Random(seed);
+        this.vectors = new float[DEFAULT_CAPACITY * dimension];
+        this.ids = new int[DEFAULT_CAPACITY];
+        this.deleted = new boolean[DEFAULT_CAPACITY];
+        this.links = new int[DEFAULT_CAPACITY][][];
+        this.visited = new int[DEFAULT_CAPACITY];
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    @Override
+    public void add(int id, float[] features) {
+        if (features.length != dimension) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d features but got %d", dimension, features.length));
+        }
+        remove(id);
+        ensureCapacity(nodeCount + 1);
+        int node = nodeCount++;
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        Similarity.normalize(features, vectors, node * dimension);
+        ids[node] = id;
+        deleted[node] = false;
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        nodeById.put(id, node);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int offset = node * dimension;
+        int current = greedyDescend(vectors, offset, entryPoint, maxLevel, level);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            searchLayer(vectors, offset, current, efConstruction, l, false);
+            int[] selected = selectNeighbors(offset, drainDescending(), l == 0 ? maxM0 : m);
+            int[] nodeLinks = links[node][l];
+            nodeLinks[0] = selected.length;
+            System.arraycopy(selected, 0, nodeLinks, 1, selected.length);
+            for (int neighbour : selected) {
+                connect(neighbour, node, l);
+            }
+            current = selected.length > 0 ? selected[0] : current;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    @Override
+    public boolean remove(int id) {
+        Integer node = nodeById.remove(id);
+        if (node == null) {
+            return false;
+        }
+        deleted[node] = true;
+        deletedCount++;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return nodeCount - deletedCount;
+    }
+
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    @Override
+    public int search(float[] query, float threshold, int k, int[] outIds, float[] outScores) {
+        int limit = Math.min(k, Math.min(outIds.length, outScores.length));
+        float queryNorm = Similarity.norm(query);
+        if (limit <= 0 || queryNorm == 0.0f || size() == 0) {
+            return 0;
+        }
+        int current = greedyDescend(query, 0, entryPoint, maxLevel, 0);
+        searchLayer(query, 0, current, Math.max(efSearch, limit), 0, true);
+
+        // results is a min-heap, pop everything and keep the best `limit` in descending order
+        int resultCount = results.size();
+        int[] nodes = new int[resultCount];
+        float[] scores = new float[resultCount];
+        for (int i = resultCount - 1; i >= 0; i--) {
+            scores[i] = results.topScore();
+            nodes[i] = results.pop();
+        }
+        float cutoff = Similarity.toCosine(threshold) * queryNorm;
+        float invNorm = 1.0f / queryNorm;
+        int count = 0;
+        for (int i = 0; i < resultCount && count < limit; i++) {
+            if (scores[i] < cutoff) {
+                break;
+            }
+            outIds[count] = ids[nodes[i]];
+            outScores[count] = Similarity.toSimilitude(scores[i] * invNorm);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Rebuilds the graph from the live nodes, dropping the deleted ones.
+     */
+    public void compact() {
+        if (deletedCount == 0) {
+            return;
+        }
+        float[] oldVectors = vectors;
+        int[] oldIds = ids;
+        boolean[] oldDeleted = deleted;
+        int oldCount = nodeCount;
+        int capacity = Math.max(size(), DEFAULT_CAPACITY);
+        vectors = new float[capacity * dimension];
+        ids = new int[capacity];
+        deleted = new boolean[capacity];
+        links = new int[capacity][][];
+        visited = new int[capacity];
+        visitedGeneration = 0;
+        nodeById.clear();
+        nodeCount = 0;
+        deletedCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        float[] features = new float[dimension];
+        for (int node = 0; node < oldCount; node++) {
+            if (!oldDeleted[node]) {
+                System.arraycopy(oldVectors, node * dimension, features, 0, dimension);
+                add(oldIds[node], features);
+            }
+        }
+    }
+
+    private int greedyDescend(float[] query, int queryOffset, int start, int fromLevel, int toLevel) {
+        int current = start;
+        float currentScore = score(query, queryOffset, current);
+        for (int l = fromLevel; l > toLevel; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] nodeLinks = links[current][l];
+                for (int i = 1; i <= nodeLinks[0]; i++) {
+                    int candidate = nodeLinks[i];
+                    float candidateScore = score(query, queryOffset, candidate);
+                    if (candidateScore > currentScore) {
+                        currentScore = candidateScore;
+                        current = candidate;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search on one layer. Leaves the best ef nodes in {@link #results}.
+     * When skipDeleted is set, deleted nodes are traversed but not collected.
+     */
+    private void searchLayer(float[] query, int queryOffset, int entry, int ef, int level, boolean skipDeleted) {
+        int generation = nextVisitedGeneration();
+        candidates.clear();
+        results.clear();
+        float entryScore = score(query, queryOffset, entry);
+        visited[entry] = generation;
+        candidates.push(entry, entryScore);
+        if (!(skipDeleted && deleted[entry])) {
+            results.push(entry, entryScore);
+        }
+        while (candidates.size() > 0) {
+            float candidateScore = candidates.topScore();
+            if (results.size() >= ef && candidateScore < results.topScore()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            int[] nodeLinks = links[candidate][level];
+            for (int i = 1; i <= nodeLinks[0]; i++) {
+                int neighbour = nodeLinks[i];
+                if (visited[neighbour] == generation) {
+                    continue;
+                }
+                visited[neighbour] = generation;
+                float neighbourScore = score(query, queryOffset, neighbour);
+                if (results.size() < ef || neighbourScore > results.topScore()) {
+                    candidates.push(neighbour, neighbourScore);
+                    if (!(skipDeleted && deleted[neighbour])) {
+                        results.push(neighbour, neighbourScore);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Empties {@link #results} into an array ordered from best to worst.
+     */
+    private int[] drainDescending() {
+        int[] nodes = new int[results.size()];
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            nodes[i] = results.pop();
+        }
+        return nodes;
+    }
+
+    /**
+     * Neighbour selection heuristic: keep a candidate only if it is closer to the base node
+     * than to every neighbour already kept, which spreads links across clusters.
+     * @param sortedCandidates best first
+     */
+    private int[] selectNeighbors(int baseOffset, int[] sortedCandidates, int max) {
+        int[] selected = new int[Math.min(max, sortedCandidates.length)];
+        int count = 0;
+        for (int i = 0; i < sortedCandidates.length && count < selected.length; i++) {
+            int candidate = sortedCandidates[i];
+            int candidateOffset = candidate * dimension;
+            float toBase = Similarity.dot(vectors, baseOffset, vectors, candidateOffset, dimension);
+            boolean keep = true;
+            for (int j = 0; j < count; j++) {
+                float toSelected = Similarity.dot(vectors, selected[j] * dimension, vectors, candidateOffset, dimension);
+                if (toSelected > toBase) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int node, int neighbour, int level) {
+        int[] nodeLinks = links[node][level];
+        int max = nodeLinks.length - 1;
+        if (nodeLinks[0] < max) {
+            nodeLinks[++nodeLinks[0]] = neighbour;
+            return;
+        }
+        // Full, replace the weakest link if the new one is closer. Re-running the selection
+        // heuristic here is O(m^2) dot products per link and dominated insert time.
+        int nodeOffset = node * dimension;
+        int weakest = -1;
+        float weakestScore = Similarity.dot(vectors, nodeOffset, vectors, neighbour * dimension, dimension);
+        for (int i = 1; i <= max; i++) {
+            float score = Similarity.dot(vectors, nodeOffset, vectors, nodeLinks[i] * dimension, dimension);
+            if (score < weakestScore) {
+                weakestScore = score;
+                weakest = i;
+            }
+        }
+        if (weakest > 0) {
+            nodeLinks[weakest] = neighbour;
+        }
+    }
+
+    private float score(float[] query, int queryOffset, int node) {
+        return Similarity.dot(query, queryOffset, vectors, node * dimension, dimension);
+    }
+
+    private int nextVisitedGeneration() {
+        if (++visitedGeneration == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            visitedGeneration = 1;
+        }
+        return visitedGeneration;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length + (ids.length >> 1));
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        ids = Arrays.copyOf(ids, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+        links = Arrays.copyOf(links, capacity);
+        visited = Arrays.copyOf(visited, capacity);
+    }
+
+    /**
+     * Binary heap of (node, score) pairs, min-heap or max-heap on score.
+     */
+    private static final class ScoreHeap {
+        private final boolean minHeap;
+        private int[] nodes = new int[64];
+        private float[] scores = new float[64];
+        private int size;
+
+        ScoreHeap(boolean minHeap) {
+            this.minHeap = minHeap;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            int lastNode = nodes[--size];
+            float lastScore = scores[size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && before(scores[child + 1], scores[child])) {
+                    child++;
+                }
+                if (!before(scores[child], lastScore)) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = lastNode;
+            scores[i] = lastScore;
+            return top;
+        }
+
+        private boolean before(float a, float b) {
+            return minHeap ? a < b : a > b;
+        }
+    }
+}
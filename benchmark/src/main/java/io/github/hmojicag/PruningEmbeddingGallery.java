@@ -0,0 +1,224 @@
+package io.github.hmojicag;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Exact search over a copy of an {@link EmbeddingGallery} that scores each row a block of
+ * dimensions at a time and abandons it as soon as it can no longer reach the cutoff, the
+ * threshold or the worst of the current top-k, whichever is higher.
+ * <p>
+ * After scoring the first blocks, Cauchy-Schwarz bounds the rest of the dot product by
+ * |query rest| * |row rest|. Row rest norms are precomputed at every block boundary, the
+ * query's once per search. Dimensions are reordered by decreasing mean square over the gallery
+ * so most of the energy is scored first and the bound tightens fast.
+ * <p>
+ * Results are the same rows as the exact search; scores can differ from it in the last float
+ * bits since the sum is taken in another order. Row indices are the gallery's.
+ * The rows are a snapshot of the gallery when built, rebuild after enrollment changes.
+ * Immutable once built, safe to search from several threads.
+ */
+public class PruningEmbeddingGallery {
+    public static final int DEFAULT_BLOCK_SIZE = 32;
+    // Cosine slack on the bound so float rounding never prunes a row the exact search keeps
+    private static final float BOUND_SLACK = 1e-5f;
+
+    private final int dimension;
+    private final int blockSize;
+    private final int blocks;
+    private final int[] order;
+    private final float[] vectors;
+    private final float[] restNorms;
+    private final int size;
+    private final ThreadLocal<float[]> queryScratch;
+
+    private PruningEmbeddingGallery(int dimension, int blockSize, int[] order, float[] vectors, int size) {
+        this.dimension = dimension;
+        this.blockSize = blockSize;
+        this.blocks = (dimension + blockSize - 1) / blockSize;
+        this.order = order;
+        this.vectors = vectors;
+        this.size = size;
+        this.restNorms = new float[size * blocks];
+        for (int i = 0; i < size; i++) {
+            restNorms(vectors, i * dimension, restNorms, i * blocks);
+        }
+        // Permuted query followed by its rest norms
+        this.queryScratch = ThreadLocal.withInitial(() -> new float[dimension + blocks]);
+    }
+
+    /**
+     * Copies the gallery's rows with dimensions in decreasing mean square order.
+     * Returns null for a null gallery, like {@link EmbeddingGallery#fromBioPhotos}.
+     */
+    public static PruningEmbeddingGallery fromGallery(EmbeddingGallery gallery) {
+        return gallery == null ? null : fromGallery(gallery, DEFAULT_BLOCK_SIZE, true);
+    }
+
+    /**
+     * @param blockSize Dimensions scored between two bound checks
+     * @param reorder false keeps the gallery's dimension order
+     */
+    public static PruningEmbeddingGallery fromGallery(EmbeddingGallery gallery, int blockSize, boolean reorder) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be at least 1");
+        }
+        int dimension = gallery.getDimension();
+        int size = gallery.size();
+        float[] source = gallery.getVectors();
+        int[] order = reorder ? energyOrder(source, size, dimension) : identity(dimension);
+        float[] vectors = new float[size * dimension];
+        for (int i = 0, offset = 0; i < size; i++, offset += dimension) {
+            for (int d = 0; d < dimension; d++) {
+                vectors[offset + d] = source[offset + order[d]];
+            }
+        }
+        return new PruningEmbeddingGallery(dimension, Math.min(blockSize, dimension), order, vectors, size);
+    }
+
+    /**
+     * Dimensions sorted by decreasing mean square over the rows.
+     */
+    static int[] energyOrder(float[] vectors, int size, int dimension) {
+        final double[] energy = new double[dimension];
+        for (int i = 0, offset = 0; i < size; i++, offset += dimension) {
+            for (int d = 0; d < dimension; d++) {
+                energy[d] += vectors[offset + d] * vectors[offset + d];
+            }
+        }
+        Integer[] sorted = new Integer[dimension];
+        for (int d = 0; d < dimension; d++) {
+            sorted[d] = d;
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(energy[b], energy[a]);
+            }
+        });
+        int[] order = new int[dimension];
+        for (int d = 0; d < dimension; d++) {
+            order[d] = sorted[d];
+        }
+        return order;
+    }
+
+    private static int[] identity(int dimension) {
+        int[] order = new int[dimension];
+        for (int d = 0; d < dimension; d++) {
+            order[d] = d;
+        }
+        return order;
+    }
+
+    /**
+     * Returns the row with the highest similitude at or above threshold, or -1 if none.
+     * @param query Raw (not necessarily normalized) features
+     * @param threshold Minimum similitude in the (cos + 1) / 2 scale
+     */
+    public int findBest(float[] query, float threshold) {
+        int[] index = new int[1];
+        return search(query, threshold, 1, index, new float[1]) == 0 ? -1 : index[0];
+    }
+
+    /**
+     * Top-k search like {@link EmbeddingGallery#search}. Does not allocate.
+     */
+    public int search(float[] query, float threshold, int k, int[] outIndices, float[] outScores) {
+        return search(query, threshold, k, outIndices, outScores, null);
+    }
+
+    /**
+     * @param outScored if not null, outScored[0] is increased by the dimensions actually scored,
+     *                  out of size() * getDimension() for an exhaustive search
+     */
+    int search(float[] query, float threshold, int k, int[] outIndices, float[] outScores, long[] outScored) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d features but got %d", dimension, query.length));
+        }
+        int limit = Math.min(k, Math.min(outIndices.length, outScores.length));
+        float queryNorm = Similarity.norm(query);
+        if (limit <= 0 || queryNorm == 0.0f) {
+            return 0;
+        }
+        float[] scratch = queryScratch.get();
+        for (int d = 0; d < dimension; d++) {
+            scratch[d] = query[order[d]];
+        }
+        restNorms(scratch, 0, scratch, dimension);
+        float slack = BOUND_SLACK * queryNorm;
+        float cutoff = Similarity.toCosine(threshold) * queryNorm;
+        long scored = 0;
+        int count = 0;
+        for (int i = 0, offset = 0, normOffset = 0; i < size; i++, offset += dimension, normOffset += blocks) {
+            float score = Similarity.dot(scratch, 0, vectors, offset, blockSize);
+            int end = blockSize;
+            for (int b = 1; b < blocks; b++) {
+                if (score + scratch[dimension + b] * restNorms[normOffset + b] + slack < cutoff) {
+                    break;
+                }
+                int start = end;
+                end = Math.min(start + blockSize, dimension);
+                score += Similarity.dot(scratch, start, vectors, offset + start, end - start);
+            }
+            scored += end;
+            // Once full, an equal score doesn't replace the tail, ties keep the earlier row
+            if (end < dimension || score < cutoff || count == limit && score <= cutoff) {
+                continue;
+            }
+            // Insertion into the small sorted prefix, dropping the tail when full.
+            int pos = count < limit ? count++ : limit - 1;
+            while (pos > 0 && outScores[pos - 1] < score) {
+                outScores[pos] = outScores[pos - 1];
+                outIndices[pos] = outIndices[pos - 1];
+                pos--;
+            }
+            outScores[pos] = score;
+            outIndices[pos] = i;
+            if (count == limit) {
+                cutoff = Math.max(cutoff, outScores[limit - 1]);
+            }
+        }
+        if (outScored != null) {
+            outScored[0] += scored;
+        }
+        float invNorm = 1.0f / queryNorm;
+        for (int i = 0; i < count; i++) {
+            outScores[i] = Similarity.toSimilitude(outScores[i] * invNorm);
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * order[d] is the gallery dimension stored at position d.
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    /**
+     * Writes into dst, for each block b, the norm of src from the start of block b to the end.
+     */
+    private void restNorms(float[] src, int srcOffset, float[] dst, int dstOffset) {
+        float sum = 0.0f;
+        for (int b = blocks - 1; b >= 0; b--) {
+            int start = b * blockSize;
+            int length = Math.min(blockSize, dimension - start);
+            sum += Similarity.dot(src, srcOffset + start, src, srcOffset + start, length);
+            dst[dstOffset + b] = (float) Math.sqrt(sum);
+        }
+    }
+}
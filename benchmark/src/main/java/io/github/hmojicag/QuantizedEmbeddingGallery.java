@@ -0,0 +1,274 @@
+package io.github.hmojicag;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Enrolled templates stored as int8 codes, one byte per dimension plus a per-vector scale,
+ * so a 512-d template takes 524 bytes with its ids instead of the 2056 of {@link EmbeddingGallery}.
+ * Rows are L2 normalized before quantization and scored with integer dot products.
+ * <p>
+ * When built with keepFullPrecision the normalized float rows are kept as well, and searches
+ * re-rank the best getRerankDepth() int8 candidates with exact float scores. Scores and the
+ * threshold are then exact, at the cost of the float rows' memory.
+ * Without it, scores carry the quantization error (around 1e-4 in cosine for 512-d).
+ * <p>
+ * The attendance pipeline matches through {@link PartitionedGallery} and doesn't use this
+ * class, it lives in the benchmark module for MatchingBenchmark to measure.
+ * Not thread-safe for writes, concurrent searches are fine once the gallery is built.
+ */
+public class QuantizedEmbeddingGallery {
+    public static final int DEFAULT_RERANK_DEPTH = 32;
+    private static final int DEFAULT_CAPACITY = 64;
+    // Cosine slack on the int8 pass so candidates just under the threshold still get re-ranked
+    private static final float RERANK_MARGIN = 0.02f;
+
+    private final int dimension;
+    private final boolean keepFullPrecision;
+    private byte[] codes;
+    private float[] scales;
+    private float[] vectors;
+    private int[] empresas;
+    private int[] empleados;
+    private int size;
+    private int rerankDepth = DEFAULT_RERANK_DEPTH;
+
+    public QuantizedEmbeddingGallery(int dimension, boolean keepFullPrecision) {
+        this(dimension, DEFAULT_CAPACITY, keepFullPrecision);
+    }
+
+    public QuantizedEmbeddingGallery(int dimension, int initialCapacity, boolean keepFullPrecision) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive");
+        }
+        int capacity = Math.max(initialCapacity, 1);
+        this.dimension = dimension;
+        this.keepFullPrecision = keepFullPrecision;
+        this.codes = new byte[capacity * dimension];
+        this.scales = new float[capacity];
+        this.vectors = keepFullPrecision ? new float[capacity * dimension] : null;
+        this.empresas = new int[capacity];
+        this.empleados = new int[capacity];
+    }
+
+    /**
+     * Builds a gallery whose row i is bioPhotos.get(i).
+     * Returns null for an empty list since the dimension can't be inferred.
+     */
+    public static QuantizedEmbeddingGallery fromBioPhotos(List<? extends BioPhoto> bioPhotos,
+                                                          boolean keepFullPrecision) {
+        if (bioPhotos == null || bioPhotos.isEmpty()) {
+            return null;
+        }
+        int dimension = bioPhotos.get(0).getFeatures().length;
+        QuantizedEmbeddingGallery gallery = new QuantizedEmbeddingGallery(dimension, bioPhotos.size(), keepFullPrecision);
+        for (BioPhoto bioPhoto : bioPhotos) {
+            gallery.add(bioPhoto.getEmpresa(), bioPhoto.getEmpleado(), bioPhoto.getFeatures());
+        }
+        return gallery;
+    }
+
+    /**
+     * Quantizes every row of a float gallery, keeping row indices.
+     */
+    public static QuantizedEmbeddingGallery fromGallery(EmbeddingGallery gallery, boolean keepFullPrecision) {
+        int dimension = gallery.getDimension();
+        QuantizedEmbeddingGallery quantized = new QuantizedEmbeddingGallery(dimension, gallery.size(), keepFullPrecision);
+        float[] row = new float[dimension];
+        for (int i = 0; i < gallery.size(); i++) {
+            System.arraycopy(gallery.getVectors(), i * dimension, row, 0, dimension);
+            quantized.add(gallery.getEmpresa(i), gallery.getEmpleado(i), row);
+        }
+        return quantized;
+    }
+
+    /**
+     * Normalizes, quantizes and copies features into the gallery.
+     * @return the row index assigned to the template
+     */
+    public int add(int empresa, int empleado, float[] features) {
+        if (features.length != dimension) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d features but got %d", dimension, features.length));
+        }
+        ensureCapacity(size + 1);
+        float[] normalized = Similarity.normalize(features);
+        scales[size] = Similarity.quantize(normalized, codes, size * dimension);
+        if (keepFullPrecision) {
+            System.arraycopy(normalized, 0, vectors, size * dimension, dimension);
+        }
+        empresas[size] = empresa;
+        empleados[size] = empleado;
+        return size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the row with the highest similitude at or above threshold, or -1 if none.
+     * @param query Raw (not necessarily normalized) features
+     * @param threshold Minimum similitude in the (cos + 1) / 2 scale
+     */
+    public int findBest(float[] query, float threshold) {
+        int[] index = new int[1];
+        return search(query, threshold, 1, index, new float[1]) == 0 ? -1 : index[0];
+    }
+
+    /**
+     * Top-k search. Fills outIndices/outScores in descending score order and returns how
+     * many were written, at most min(k, outIndices.length). Scores are similitudes.
+     * Allocates the quantized query and, when re-ranking, the candidate buffers.
+     */
+    public int search(float[] query, float threshold, int k, int[] outIndices, float[] outScores) {
+        int limit = Math.min(k, Math.min(outIndices.length, outScores.length));
+        float queryNorm = Similarity.norm(query);
+        if (limit <= 0 || queryNorm == 0.0f) {
+            return 0;
+        }
+        byte[] queryCodes = new byte[dimension];
+        float queryScale = Similarity.quantize(query, queryCodes, 0);
+        float cosine = Similarity.toCosine(threshold);
+        boolean rerank = keepFullPrecision && rerankDepth > 0;
+        if (!rerank) {
+            int count = scan(queryCodes, queryScale, cosine * queryNorm, limit, outIndices, outScores);
+            return toSimilitudes(count, queryNorm, outScores);
+        }
+
+        int depth = Math.max(limit, rerankDepth);
+        int[] candidates = new int[depth];
+        float[] candidateScores = new float[depth];
+        int candidateCount = scan(queryCodes, queryScale, (cosine - RERANK_MARGIN) * queryNorm,
+                depth, candidates, candidateScores);
+        float cutoff = cosine * queryNorm;
+        int count = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int row = candidates[c];
+            float score = Similarity.dot(query, 0, vectors, row * dimension, dimension);
+            if (score < cutoff) {
+                continue;
+            }
+            count = insert(row, score, count, limit, outIndices, outScores);
+            if (count == limit) {
+                cutoff = Math.max(cutoff, outScores[limit - 1]);
+            }
+        }
+        return toSimilitudes(count, queryNorm, outScores);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public boolean isKeepFullPrecision() {
+        return keepFullPrecision;
+    }
+
+    public int getRerankDepth() {
+        return rerankDepth;
+    }
+
+    /**
+     * How many int8 candidates are re-scored in full precision, 0 disables re-ranking.
+     * Ignored when the gallery doesn't keep full precision rows.
+     */
+    public void setRerankDepth(int rerankDepth) {
+        this.rerankDepth = Math.max(rerankDepth, 0);
+    }
+
+    public int getEmpresa(int index) {
+        checkIndex(index);
+        return empresas[index];
+    }
+
+    public int getEmpleado(int index) {
+        checkIndex(index);
+        return empleados[index];
+    }
+
+    /**
+     * Heap bytes used by one template: codes, scale, ids and the float row if kept.
+     */
+    public int getBytesPerTemplate() {
+        return dimension + 4 + 8 + (keepFullPrecision ? 4 * dimension : 0);
+    }
+
+    /**
+     * Writes the dequantized row index into dst.
+     */
+    void dequantize(int index, float[] dst) {
+        checkIndex(index);
+        float scale = scales[index];
+        for (int i = 0, offset = index * dimension; i < dimension; i++) {
+            dst[i] = codes[offset + i] * scale;
+        }
+    }
+
+    /**
+     * Top-limit rows by approximate raw dot product at or above cutoff.
+     */
+    private int scan(byte[] queryCodes, float queryScale, float cutoff, int limit,
+                     int[] outIndices, float[] outScores) {
+        int count = 0;
+        for (int i = 0, offset = 0; i < size; i++, offset += dimension) {
+            float score = Similarity.dot(queryCodes, 0, codes, offset, dimension) * (scales[i] * queryScale);
+            if (score < cutoff) {
+                continue;
+            }
+            count = insert(i, score, count, limit, outIndices, outScores);
+            if (count == limit) {
+                cutoff = Math.max(cutoff, outScores[limit - 1]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Insertion into the small sorted prefix, dropping the tail when full.
+     * @return the new count
+     */
+    private static int insert(int index, float score, int count, int limit, int[] outIndices, float[] outScores) {
+        int pos = count < limit ? count++ : limit - 1;
+        while (pos > 0 && outScores[pos - 1] < score) {
+            outScores[pos] = outScores[pos - 1];
+            outIndices[pos] = outIndices[pos - 1];
+            pos--;
+        }
+        outScores[pos] = score;
+        outIndices[pos] = index;
+        return count;
+    }
+
+    private static int toSimilitudes(int count, float queryNorm, float[] outScores) {
+        float invNorm = 1.0f / queryNorm;
+        for (int i = 0; i < count; i++) {
+            outScores[i] = Similarity.toSimilitude(outScores[i] * invNorm);
+        }
+        return count;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= empresas.length) {
+            return;
+        }
+        int capacity = Math.max(required, empresas.length + (empresas.length >> 1));
+        codes = Arrays.copyOf(codes, capacity * dimension);
+        scales = Arrays.copyOf(scales, capacity);
+        if (keepFullPrecision) {
+            vectors = Arrays.copyOf(vectors, capacity * dimension);
+        }
+        empresas = Arrays.copyOf(empresas, capacity);
+        empleados = Arrays.copyOf(empleados, capacity);
+    }
+}
@@ -0,0 +1,196 @@
+package io.github.hmojicag;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Brute-force top-k search of an {@link EmbeddingGallery} spread over a ForkJoinPool.
+ * <p>
+ * The gallery is cut into blocks of rows small enough to stay in the L2 cache, and every
+ * task scores a whole batch of queries against one block before moving to the next, so each
+ * block is read from memory once per batch instead of once per query. Each task keeps its
+ * own top-k per query, and the lists are merged pairwise as the tasks join.
+ * Results are the same as {@link EmbeddingGallery#search(float[], float, int, int[], float[])}'s,
+ * ties included, since earlier rows win in both.
+ * The gallery must not be modified while a search runs.
+ */
+public class ShardedGallerySearch {
+    // 256 KB of rows, a common L2 size per core
+    private static final int BLOCK_BYTES = 256 * 1024;
+    // Tasks per worker thread, a few more than one so uneven workers can steal
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final EmbeddingGallery gallery;
+    private final ForkJoinPool pool;
+    private final int blockRows;
+
+    public ShardedGallerySearch(EmbeddingGallery gallery) {
+        this(gallery, ForkJoinPool.commonPool());
+    }
+
+    public ShardedGallerySearch(EmbeddingGallery gallery, ForkJoinPool pool) {
+        this(gallery, pool, Math.max(1, BLOCK_BYTES / (4 * gallery.getDimension())));
+    }
+
+    public ShardedGallerySearch(EmbeddingGallery gallery, ForkJoinPool pool, int blockRows) {
+        if (blockRows < 1) {
+            throw new IllegalArgumentException("blockRows must be at least 1");
+        }
+        this.gallery = gallery;
+        this.pool = pool;
+        this.blockRows = blockRows;
+    }
+
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    public int search(float[] query, float threshold, int k, int[] outIndices, float[] outScores) {
+        return search(new float[][] {query}, threshold, k, new int[][] {outIndices}, new float[][] {outScores})[0];
+    }
+
+    /**
+     * Top-k search of every query. Fills outIndices[q]/outScores[q] in descending score order,
+     * like {@link EmbeddingGallery#search(float[], float, int, int[], float[])}.
+     * @return how many results were written for each query
+     */
+    public int[] search(float[][] queries, float threshold, int k, int[][] outIndices, float[][] outScores) {
+        int[] counts = new int[queries.length];
+        float[] cutoffs = new float[queries.length];
+        int[] limits = new int[queries.length];
+        int maxLimit = 0;
+        for (int q = 0; q < queries.length; q++) {
+            float queryNorm = Similarity.norm(queries[q]);
+            cutoffs[q] = Similarity.toCosine(threshold) * queryNorm;
+            limits[q] = queryNorm == 0.0f ? 0 : Math.min(k, Math.min(outIndices[q].length, outScores[q].length));
+            maxLimit = Math.max(maxLimit, limits[q]);
+        }
+        int blocks = (gallery.size() + blockRows - 1) / blockRows;
+        if (maxLimit == 0 || blocks == 0) {
+            return counts;
+        }
+        int leafBlocks = Math.max(1, blocks / (pool.getParallelism() * TASKS_PER_THREAD));
+        TopK result = pool.invoke(new BlockTask(queries, cutoffs, limits, maxLimit, 0, blocks, leafBlocks));
+
+        for (int q = 0; q < queries.length; q++) {
+            counts[q] = result.counts[q];
+            float invNorm = 1.0f / Similarity.norm(queries[q]);
+            for (int i = 0; i < counts[q]; i++) {
+                outIndices[q][i] = result.indices[q][i];
+                outScores[q][i] = Similarity.toSimilitude(result.scores[q][i] * invNorm);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Per-query top-k lists of raw dot products, sorted in descending order.
+     */
+    private static final class TopK {
+        final int[] counts;
+        final int[][] indices;
+        final float[][] scores;
+        final int[] limits;
+
+        TopK(int[] limits, int maxLimit) {
+            this.limits = limits;
+            this.counts = new int[limits.length];
+            this.indices = new int[limits.length][maxLimit];
+            this.scores = new float[limits.length][maxLimit];
+        }
+
+        /**
+         * Insertion into the small sorted prefix, dropping the tail when full.
+         * Equal scores keep the earlier entry first.
+         */
+        void offer(int q, int index, float score) {
+            int limit = limits[q];
+            int count = counts[q];
+            if (count == limit && score <= scores[q][limit - 1]) {
+                return;
+            }
+            int pos = count < limit ? counts[q]++ : limit - 1;
+            float[] s = scores[q];
+            int[] ix = indices[q];
+            while (pos > 0 && s[pos - 1] < score) {
+                s[pos] = s[pos - 1];
+                ix[pos] = ix[pos - 1];
+                pos--;
+            }
+            s[pos] = score;
+            ix[pos] = index;
+        }
+
+        /**
+         * Merges the lists of a task that covered later rows.
+         */
+        TopK merge(TopK later) {
+            for (int q = 0; q < counts.length; q++) {
+                for (int i = 0; i < later.counts[q]; i++) {
+                    offer(q, later.indices[q][i], later.scores[q][i]);
+                }
+            }
+            return this;
+        }
+    }
+
+    // Never serialized, ForkJoinTask is only Serializable for remote execution frameworks
+    @SuppressWarnings("serial")
+    private final class BlockTask extends RecursiveTask<TopK> {
+        private final float[][] queries;
+        private final float[] cutoffs;
+        private final int[] limits;
+        private final int maxLimit;
+        private final int fromBlock;
+        private final int toBlock;
+        private final int leafBlocks;
+
+        BlockTask(float[][] queries, float[] cutoffs, int[] limits, int maxLimit,
+                  int fromBlock, int toBlock, int leafBlocks) {
+            this.queries = queries;
+            this.cutoffs = cutoffs;
+            this.limits = limits;
+            this.maxLimit = maxLimit;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+            this.leafBlocks = leafBlocks;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (toBlock - fromBlock <= leafBlocks) {
+                return scan();
+            }
+            int middle = (fromBlock + toBlock) >>> 1;
+            BlockTask later = new BlockTask(queries, cutoffs, limits, maxLimit, middle, toBlock, leafBlocks);
+            later.fork();
+            TopK earlier = new BlockTask(queries, cutoffs, limits, maxLimit, fromBlock, middle, leafBlocks).compute();
+            return earlier.merge(later.join());
+        }
+
+        private TopK scan() {
+            TopK topK = new TopK(limits, maxLimit);
+            float[] vectors = gallery.getVectors();
+            int dimension = gallery.getDimension();
+            int size = gallery.size();
+            for (int block = fromBlock; block < toBlock; block++) {
+                int start = block * blockRows;
+                int end = Math.min(start + blockRows, size);
+                for (int q = 0; q < queries.length; q++) {
+                    if (limits[q] == 0) {
+                        continue;
+                    }
+                    float[] query = queries[q];
+                    float cutoff = cutoffs[q];
+                    for (int row = start, offset = start * dimension; row < end; row++, offset += dimension) {
+                        float score = Similarity.dot(query, 0, vectors, offset, dimension);
+                        if (score >= cutoff) {
+                            topK.offer(q, row, score);
+                        }
+                    }
+                }
+            }
+            return topK;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BruteForceFaceIndexTest {
+    private static final int DIMENSION = 512;
+
+    @Test
+    public void search_findsNoisyCopyOfTemplate() {
+        Random random = new Random(3);
+        BruteForceFaceIndex index = new BruteForceFaceIndex(DIMENSION);
+        float[][] templates = new float[300][];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = HnswFaceIndexTest.randomVector(random);
+            index.add(1000 + i, templates[i]);
+        }
+        int[] ids = new int[1];
+        float[] scores = new float[1];
+        float[] query = HnswFaceIndexTest.noisyCopy(templates[123], random, 0.3f);
+        assertEquals(1, index.search(query, 0.70f, 1, ids, scores));
+        assertEquals(1123, ids[0]);
+        assertEquals(Similarity.calculateSimilitude(query, templates[123]), scores[0], 1e-5f);
+    }
+
+    @Test
+    public void remove_movesLastRowAndKeepsIdsConsistent() {
+        BruteForceFaceIndex index = new BruteForceFaceIndex(2);
+        index.add(10, new float[] {1f, 0f});
+        index.add(20, new float[] {0f, 1f});
+        index.add(30, new float[] {-1f, 0f});
+        assertTrue(index.remove(10));
+        assertFalse(index.remove(10));
+        assertEquals(2, index.size());
+
+        int[] ids = new int[1];
+        float[] scores = new float[1];
+        assertEquals(1, index.search(new float[] {-1f, 0f}, 0.9f, 1, ids, scores));
+        assertEquals(30, ids[0]);
+        assertEquals(0, index.search(new float[] {1f, 0f}, 0.9f, 1, ids, scores));
+
+        // The moved row must still be removable by id
+        assertTrue(index.remove(30));
+        assertEquals(0, index.search(new float[] {-1f, 0f}, 0.9f, 1, ids, scores));
+    }
+
+    @Test
+    public void add_existingIdReplacesTemplate() {
+        BruteForceFaceIndex index = new BruteForceFaceIndex(2);
+        index.add(1, new float[] {1f, 0f});
+        index.add(1, new float[] {0f, 1f});
+        assertEquals(1, index.size());
+        int[] ids = new int[1];
+        float[] scores = new float[1];
+        assertEquals(0, index.search(new float[] {1f, 0f}, 0.9f, 1, ids, scores));
+        assertEquals(1, index.search(new float[] {0f, 1f}, 0.9f, 1, ids, scores));
+    }
+}
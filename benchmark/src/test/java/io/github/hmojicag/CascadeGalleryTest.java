@@ -0,0 +1,148 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CascadeGalleryTest {
+    private static final int DIMENSION = 512;
+
+    /**
+     * Random directions with decaying spread, the structure PCA is meant to find.
+     * Face embeddings concentrate most of their energy in a few dozen directions,
+     * unlike {@link HnswFaceIndexTest#randomVector}.
+     */
+    static float[][] factors(Random random, int rank) {
+        float[][] factors = new float[rank][];
+        for (int k = 0; k < rank; k++) {
+            factors[k] = HnswFaceIndexTest.randomVector(random);
+            float scale = (float) (Math.pow(0.95, k) / Similarity.norm(factors[k]));
+            for (int i = 0; i < DIMENSION; i++) {
+                factors[k][i] *= scale;
+            }
+        }
+        return factors;
+    }
+
+    /**
+     * Random mix of the factors plus isotropic noise of the given total norm.
+     */
+    static float[] lowRankVector(float[][] factors, Random random, float noise) {
+        float[] vector = new float[DIMENSION];
+        for (float[] factor : factors) {
+            float weight = (float) random.nextGaussian();
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] += weight * factor[i];
+            }
+        }
+        float[] normalized = Similarity.normalize(vector);
+        float[] isotropic = Similarity.normalize(HnswFaceIndexTest.randomVector(random));
+        for (int i = 0; i < DIMENSION; i++) {
+            normalized[i] += noise * isotropic[i];
+        }
+        return normalized;
+    }
+
+    private static void assertOrthonormal(float[] basis, int rows) {
+        for (int a = 0; a < rows; a++) {
+            for (int b = a; b < rows; b++) {
+                float dot = Similarity.dot(basis, a * DIMENSION, basis, b * DIMENSION, DIMENSION);
+                assertEquals(a == b ? 1.0f : 0.0f, dot, 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void randomProjection_isOrthonormalAndSeeded() {
+        float[] basis = CascadeGallery.randomProjection(DIMENSION, 32, 3);
+        assertEquals(32 * DIMENSION, basis.length);
+        assertOrthonormal(basis, 32);
+        assertArrayEquals(basis, CascadeGallery.randomProjection(DIMENSION, 32, 3), 0.0f);
+    }
+
+    @Test
+    public void trainPca_findsTheSpannedSubspace() {
+        Random random = new Random(1);
+        float[][] factors = factors(random, 16);
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION);
+        for (int i = 0; i < 300; i++) {
+            gallery.add(1, i, lowRankVector(factors, random, 0.0f));
+        }
+        float[] basis = CascadeGallery.trainPca(gallery, 16, 2);
+        assertOrthonormal(basis, 16);
+        // Every row lies in the span of the factors, so projecting keeps its whole norm
+        CascadeGallery cascade = new CascadeGallery(gallery, basis, 1);
+        float[] projected = new float[16];
+        for (int i = 0; i < 20; i++) {
+            float[] row = lowRankVector(factors, random, 0.0f);
+            for (int k = 0; k < 16; k++) {
+                projected[k] = Similarity.dot(row, 0, basis, k * DIMENSION, DIMENSION);
+            }
+            assertEquals(Similarity.norm(row), Similarity.norm(projected), 1e-3f);
+        }
+        assertEquals(16, cascade.getReducedDimension());
+    }
+
+    @Test
+    public void trainPca_fewerRowsThanDimensionsStaysOrthonormal() {
+        Random random = new Random(4);
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION);
+        for (int i = 0; i < 5; i++) {
+            gallery.add(1, i, HnswFaceIndexTest.randomVector(random));
+        }
+        CascadeGallery cascade = CascadeGallery.fromGallery(gallery);
+        assertOrthonormal(cascade.getBasis(), CascadeGallery.DEFAULT_REDUCED_DIMENSION);
+        float[] row = new float[DIMENSION];
+        System.arraycopy(gallery.getVectors(), 3 * DIMENSION, row, 0, DIMENSION);
+        assertEquals(3, cascade.findBest(row, 0.70f));
+    }
+
+    @Test
+    public void search_agreesWithExactSearch() {
+        Random random = new Random(5);
+        float[][] factors = factors(random, 48);
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION);
+        for (int i = 0; i < 3000; i++) {
+            gallery.add(1, i, lowRankVector(factors, random, 0.3f));
+        }
+        CascadeGallery cascade = CascadeGallery.fromGallery(gallery);
+        int[] expectedIndices = new int[5];
+        float[] expectedScores = new float[5];
+        int[] indices = new int[5];
+        float[] scores = new float[5];
+        float[] row = new float[DIMENSION];
+        for (int q = 0; q < 50; q++) {
+            System.arraycopy(gallery.getVectors(), random.nextInt(gallery.size()) * DIMENSION, row, 0, DIMENSION);
+            float[] query = HnswFaceIndexTest.noisyCopy(row, random, 0.03f);
+            assertEquals(gallery.findBest(query, 0.70f), cascade.findBest(query, 0.70f));
+            int expectedCount = gallery.search(query, 0.0f, 5, expectedIndices, expectedScores);
+            assertEquals(expectedCount, cascade.search(query, 0.0f, 5, indices, scores));
+            // Scores come from the full dimension pass
+            assertEquals(expectedIndices[0], indices[0]);
+            assertEquals(expectedScores[0], scores[0], 1e-6f);
+        }
+    }
+
+    @Test
+    public void search_respectsThreshold() {
+        EmbeddingGallery gallery = new EmbeddingGallery(2);
+        gallery.add(1, 1, new float[] {1f, 0f});
+        gallery.add(1, 2, new float[] {0f, 1f});
+        gallery.add(1, 3, new float[] {1f, 1f});
+        CascadeGallery cascade = new CascadeGallery(gallery, CascadeGallery.randomProjection(2, 1, 6), 3);
+        int[] indices = new int[3];
+        float[] scores = new float[3];
+        int count = cascade.search(new float[] {1f, 0f}, 0.80f, 3, indices, scores);
+        assertEquals(2, count);
+        assertEquals(0, indices[0]);
+        assertEquals(2, indices[1]);
+        assertEquals(-1, cascade.findBest(new float[] {0f, 0f}, 0.0f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsBasisOfOtherDimension() {
+        new CascadeGallery(new EmbeddingGallery(DIMENSION), new float[DIMENSION - 1], 8);
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EmbeddingGalleryTest {
+    private static final int DIMENSION = 512;
+
+    @Test
+    public void add_storesNormalizedRows() {
+        EmbeddingGallery gallery = new EmbeddingGallery(3);
+        gallery.add(1, 10, new float[] {3f, 0f, 4f});
+        float[] vectors = gallery.getVectors();
+        assertEquals(0.6f, vectors[0], 1e-6f);
+        assertEquals(0.0f, vectors[1], 1e-6f);
+        assertEquals(0.8f, vectors[2], 1e-6f);
+        assertEquals(1, gallery.getEmpresa(0));
+        assertEquals(10, gallery.getEmpleado(0));
+    }
+
+    @Test
+    public void add_growsPastInitialCapacity() {
+        Random random = new Random(1);
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, 2);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, gallery.add(1, i, HnswFaceIndexTest.randomVector(random)));
+        }
+        assertEquals(100, gallery.size());
+        assertEquals(99, gallery.getEmpleado(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void add_rejectsWrongDimension() {
+        new EmbeddingGallery(DIMENSION).add(1, 1, new float[DIMENSION - 1]);
+    }
+
+    @Test
+    public void findBest_matchesLegacyScan() {
+        Random random = new Random(42);
+        float[][] templates = new float[500][];
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION);
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = HnswFaceIndexTest.randomVector(random);
+            gallery.add(1, i, templates[i]);
+        }
+        for (int q = 0; q < 50; q++) {
+            // Noisy copy of a template so there is a real match above threshold
+            float[] query = HnswFaceIndexTest.noisyCopy(templates[random.nextInt(templates.length)], random, 0.3f);
+            int expected = -1;
+            float expectedScore = 0.70f;
+            for (int i = 0; i < templates.length; i++) {
+                float score = Similarity.calculateSimilitude(query, templates[i]);
+                if (score > expectedScore || (expected < 0 && score == expectedScore)) {
+                    expectedScore = score;
+                    expected = i;
+                }
+            }
+            assertEquals(expected, gallery.findBest(query, 0.70f));
+        }
+    }
+
+    @Test
+    public void findBest_firstOfEqualRowsWins() {
+        EmbeddingGallery gallery = new EmbeddingGallery(2);
+        gallery.add(1, 1, new float[] {0f, 1f});
+        gallery.add(1, 2, new float[] {1f, 0f});
+        gallery.add(1, 3, new float[] {2f, 0f});
+        gallery.add(1, 4, new float[] {1f, 0f});
+        assertEquals(1, gallery.findBest(new float[] {1f, 0f}, 0.70f));
+    }
+
+    @Test
+    public void search_firstOfEqualRowsWins() {
+        EmbeddingGallery gallery = new EmbeddingGallery(2);
+        gallery.add(1, 1, new float[] {0f, 1f});
+        gallery.add(1, 2, new float[] {1f, 0f});
+        gallery.add(1, 3, new float[] {2f, 0f});
+        gallery.add(1, 4, new float[] {1f, 0f});
+        int[] indices = new int[2];
+        float[] scores = new float[2];
+        assertEquals(1, gallery.search(new float[] {1f, 0f}, 0.70f, 1, indices, scores));
+        assertEquals(gallery.findBest(new float[] {1f, 0f}, 0.70f), indices[0]);
+        assertEquals(2, gallery.search(new float[] {1f, 0f}, 0.70f, 2, indices, scores));
+        assertEquals(1, indices[0]);
+        assertEquals(2, indices[1]);
+    }
+
+    @Test
+    public void findBest_returnsMinusOneBelowThreshold() {
+        EmbeddingGallery gallery = new EmbeddingGallery(2);
+        gallery.add(1, 1, new float[] {1f, 0f});
+        // Orthogonal vectors have similitude 0.5
+        assertEquals(-1, gallery.findBest(new float[] {0f, 1f}, 0.70f));
+        assertEquals(0, gallery.findBest(new float[] {0f, 1f}, 0.50f));
+        assertEquals(-1, gallery.findBest(new float[] {0f, 0f}, 0.0f));
+    }
+
+    @Test
+    public void search_returnsTopKInDescendingOrder() {
+        Random random = new Random(7);
+        float[][] templates = new float[200][];
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION);
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = HnswFaceIndexTest.randomVector(random);
+            gallery.add(1, i, templates[i]);
+        }
+        float[] query = HnswFaceIndexTest.randomVector(random);
+        int[] indices = new int[5];
+        float[] scores = new float[5];
+        int count = gallery.search(query, 0.0f, 5, indices, scores);
+        assertEquals(5, count);
+
+        float[] all = new float[templates.length];
+        for (int i = 0; i < templates.length; i++) {
+            all[i] = Similarity.calculateSimilitude(query, templates[i]);
+        }
+        float[] sorted = all.clone();
+        java.util.Arrays.sort(sorted);
+        for (int i = 0; i < count; i++) {
+            assertEquals(sorted[sorted.length - 1 - i], scores[i], 1e-5f);
+            assertEquals(all[indices[i]], scores[i], 1e-5f);
+        }
+    }
+
+    @Test
+    public void search_respectsThreshold() {
+        EmbeddingGallery gallery = new EmbeddingGallery(2);
+        gallery.add(1, 1, new float[] {1f, 0f});
+        gallery.add(1, 2, new float[] {0f, 1f});
+        gallery.add(1, 3, new float[] {1f, 1f});
+        int[] indices = new int[3];
+        float[] scores = new float[3];
+        int count = gallery.search(new float[] {1f, 0f}, 0.80f, 3, indices, scores);
+        assertEquals(2, count);
+        assertEquals(0, indices[0]);
+        assertEquals(1.0f, scores[0], 1e-6f);
+        assertEquals(2, indices[1]);
+    }
+}
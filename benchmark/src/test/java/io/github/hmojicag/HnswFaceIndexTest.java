@@ -0,0 +1,116 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HnswFaceIndexTest {
+    private static final int DIMENSION = 512;
+    private static final float THRESHOLD = 0.70f;
+
+    @Test
+    public void recallAt1_closeToBruteForce() {
+        Random random = new Random(11);
+        float[][] templates = new float[2000][];
+        BruteForceFaceIndex exact = new BruteForceFaceIndex(DIMENSION);
+        HnswFaceIndex hnsw = new HnswFaceIndex(DIMENSION, 16, 64, 64, 1L);
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = randomVector(random);
+            exact.add(i, templates[i]);
+            hnsw.add(i, templates[i]);
+        }
+        float[][] queries = queries(templates, random, 200);
+        double recall = FaceIndex.recallAt1(exact, hnsw, queries, THRESHOLD);
+        assertTrue("recall@1 was " + recall, recall >= 0.98);
+    }
+
+    @Test
+    public void remove_deletedTemplatesAreNeverReturned() {
+        Random random = new Random(5);
+        float[][] templates = new float[1000][];
+        HnswFaceIndex hnsw = new HnswFaceIndex(DIMENSION, 8, 64, 32, 1L);
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = randomVector(random);
+            hnsw.add(i, templates[i]);
+        }
+        for (int i = 0; i < templates.length; i += 2) {
+            assertTrue(hnsw.remove(i));
+        }
+        assertEquals(500, hnsw.size());
+        assertEquals(500, hnsw.getDeletedCount());
+
+        int[] ids = new int[10];
+        float[] scores = new float[10];
+        for (int i = 0; i < templates.length; i++) {
+            int count = hnsw.search(templates[i], 0.0f, 10, ids, scores);
+            for (int j = 0; j < count; j++) {
+                assertEquals(1, ids[j] % 2);
+            }
+            if (i % 2 == 1) {
+                assertEquals(i, ids[0]);
+            }
+        }
+    }
+
+    @Test
+    public void add_afterRemoveAndCompact() {
+        Random random = new Random(9);
+        float[][] templates = new float[500][];
+        BruteForceFaceIndex exact = new BruteForceFaceIndex(DIMENSION);
+        HnswFaceIndex hnsw = new HnswFaceIndex(DIMENSION, 16, 64, 64, 1L);
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = randomVector(random);
+            exact.add(i, templates[i]);
+            hnsw.add(i, templates[i]);
+        }
+        // Re-enroll a third of the employees with new templates
+        for (int i = 0; i < templates.length; i += 3) {
+            templates[i] = randomVector(random);
+            exact.add(i, templates[i]);
+            hnsw.add(i, templates[i]);
+        }
+        assertEquals(500, hnsw.size());
+        float[][] queries = queries(templates, random, 100);
+        assertTrue(FaceIndex.recallAt1(exact, hnsw, queries, THRESHOLD) >= 0.98);
+
+        hnsw.compact();
+        assertEquals(0, hnsw.getDeletedCount());
+        assertEquals(500, hnsw.size());
+        assertTrue(FaceIndex.recallAt1(exact, hnsw, queries, THRESHOLD) >= 0.98);
+    }
+
+    @Test
+    public void search_emptyIndex() {
+        HnswFaceIndex hnsw = new HnswFaceIndex(DIMENSION);
+        assertEquals(0, hnsw.search(new float[DIMENSION], 0.0f, 1, new int[1], new float[1]));
+        hnsw.add(1, randomVector(new Random(1)));
+        hnsw.remove(1);
+        assertEquals(0, hnsw.search(randomVector(new Random(1)), 0.0f, 1, new int[1], new float[1]));
+    }
+
+    static float[][] queries(float[][] templates, Random random, int count) {
+        float[][] queries = new float[count][];
+        for (int i = 0; i < count; i++) {
+            queries[i] = noisyCopy(templates[random.nextInt(templates.length)], random, 0.3f);
+        }
+        return queries;
+    }
+
+    static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    static float[] noisyCopy(float[] source, Random random, float noise) {
+        float[] vector = new float[source.length];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = source[i] + noise * (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PruningEmbeddingGalleryTest {
+    private static final int DIMENSION = 512;
+
+    private static void assertSameResults(EmbeddingGallery gallery, PruningEmbeddingGallery pruning,
+                                          Random random, float noise) {
+        int[] expectedIndices = new int[5];
+        float[] expectedScores = new float[5];
+        int[] indices = new int[5];
+        float[] scores = new float[5];
+        float[] row = new float[DIMENSION];
+        for (int q = 0; q < 40; q++) {
+            float[] query;
+            if (q % 2 == 0) {
+                System.arraycopy(gallery.getVectors(), random.nextInt(gallery.size()) * DIMENSION, row, 0, DIMENSION);
+                query = HnswFaceIndexTest.noisyCopy(row, random, noise);
+            } else {
+                query = HnswFaceIndexTest.randomVector(random);
+            }
+            assertEquals(gallery.findBest(query, 0.70f), pruning.findBest(query, 0.70f));
+            int count = gallery.search(query, 0.0f, 5, expectedIndices, expectedScores);
+            assertEquals(count, pruning.search(query, 0.0f, 5, indices, scores));
+            for (int i = 0; i < count; i++) {
+                assertEquals(expectedIndices[i], indices[i]);
+                assertEquals(expectedScores[i], scores[i], 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void search_equalsExactSearch() {
+        Random random = new Random(1);
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION);
+        for (int i = 0; i < 1000; i++) {
+            gallery.add(1, i, HnswFaceIndexTest.randomVector(random));
+        }
+        for (int blockSize : new int[] {1, 24, 32, DIMENSION}) {
+            for (boolean reorder : new boolean[] {false, true}) {
+                assertSameResults(gallery, PruningEmbeddingGallery.fromGallery(gallery, blockSize, reorder),
+                        random, 0.02f);
+            }
+        }
+    }
+
+    @Test
+    public void search_equalsExactSearchOnLowRankGallery() {
+        Random random = new Random(2);
+        float[][] factors = CascadeGalleryTest.factors(random, 32);
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION);
+        for (int i = 0; i < 2000; i++) {
+            gallery.add(1, i, CascadeGalleryTest.lowRankVector(factors, random, 0.3f));
+        }
+        assertSameResults(gallery, PruningEmbeddingGallery.fromGallery(gallery), random, 0.02f);
+    }
+
+    @Test
+    public void search_skipsWorkOnceAMatchIsFound() {
+        Random random = new Random(3);
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION);
+        for (int i = 0; i < 1000; i++) {
+            gallery.add(1, i, HnswFaceIndexTest.randomVector(random));
+        }
+        PruningEmbeddingGallery pruning = PruningEmbeddingGallery.fromGallery(gallery);
+        float[] row = new float[DIMENSION];
+        System.arraycopy(gallery.getVectors(), 0, row, 0, DIMENSION);
+        long[] scored = new long[1];
+        int[] index = new int[1];
+        assertEquals(1, pruning.search(row, 0.70f, 1, index, new float[1], scored));
+        assertEquals(0, index[0]);
+        assertTrue(scored[0] < (long) gallery.size() * DIMENSION / 4);
+    }
+
+    @Test
+    public void energyOrder_putsHighEnergyDimensionsFirst() {
+        float[] vectors = {
+                0.1f, 0.9f, 0.0f, 0.3f,
+                0.2f, 0.8f, 0.1f, 0.4f,
+        };
+        assertArrayEquals(new int[] {1, 3, 0, 2}, PruningEmbeddingGallery.energyOrder(vectors, 2, 4));
+    }
+
+    @Test
+    public void search_respectsThreshold() {
+        EmbeddingGallery gallery = new EmbeddingGallery(2);
+        gallery.add(1, 1, new float[] {1f, 0f});
+        gallery.add(1, 2, new float[] {0f, 1f});
+        gallery.add(1, 3, new float[] {1f, 1f});
+        PruningEmbeddingGallery pruning = PruningEmbeddingGallery.fromGallery(gallery, 1, true);
+        int[] indices = new int[3];
+        float[] scores = new float[3];
+        int count = pruning.search(new float[] {1f, 0f}, 0.80f, 3, indices, scores);
+        assertEquals(2, count);
+        assertEquals(0, indices[0]);
+        assertEquals(2, indices[1]);
+        assertEquals(-1, pruning.findBest(new float[] {0f, 0f}, 0.0f));
+    }
+
+    @Test
+    public void search_keepsEarlierRowOnTies() {
+        EmbeddingGallery gallery = new EmbeddingGallery(2);
+        gallery.add(1, 1, new float[] {0f, 1f});
+        gallery.add(1, 2, new float[] {1f, 0f});
+        gallery.add(1, 3, new float[] {2f, 0f});
+        gallery.add(1, 4, new float[] {1f, 0f});
+        PruningEmbeddingGallery pruning = PruningEmbeddingGallery.fromGallery(gallery, 1, false);
+        int[] indices = new int[2];
+        float[] scores = new float[2];
+        assertEquals(2, pruning.search(new float[] {1f, 0f}, 0.0f, 2, indices, scores));
+        assertEquals(1, indices[0]);
+        assertEquals(2, indices[1]);
+        assertEquals(1, pruning.findBest(new float[] {1f, 0f}, 0.0f));
+    }
+}
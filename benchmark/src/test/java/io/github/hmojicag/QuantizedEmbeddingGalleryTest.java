@@ -0,0 +1,89 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantizedEmbeddingGalleryTest {
+    private static final int DIMENSION = 512;
+
+    @Test
+    public void add_quantizationErrorIsSmall() {
+        Random random = new Random(1);
+        QuantizedEmbeddingGallery gallery = new QuantizedEmbeddingGallery(DIMENSION, false);
+        float[] features = HnswFaceIndexTest.randomVector(random);
+        gallery.add(1, 10, features);
+        float[] normalized = Similarity.normalize(features);
+        float[] restored = new float[DIMENSION];
+        gallery.dequantize(0, restored);
+        float cosine = Similarity.dot(normalized, 0, restored, 0, DIMENSION) / Similarity.norm(restored);
+        assertEquals(1.0f, cosine, 1e-4f);
+        assertEquals(10, gallery.getEmpleado(0));
+    }
+
+    @Test
+    public void findBest_agreesWithFloatGallery() {
+        Random random = new Random(42);
+        EmbeddingGallery floatGallery = new EmbeddingGallery(DIMENSION);
+        for (int i = 0; i < 500; i++) {
+            floatGallery.add(1, i, HnswFaceIndexTest.randomVector(random));
+        }
+        QuantizedEmbeddingGallery quantized = QuantizedEmbeddingGallery.fromGallery(floatGallery, false);
+        QuantizedEmbeddingGallery reranked = QuantizedEmbeddingGallery.fromGallery(floatGallery, true);
+        float[] row = new float[DIMENSION];
+        for (int q = 0; q < 50; q++) {
+            System.arraycopy(floatGallery.getVectors(), random.nextInt(500) * DIMENSION, row, 0, DIMENSION);
+            float[] query = HnswFaceIndexTest.noisyCopy(row, random, 0.02f);
+            int expected = floatGallery.findBest(query, 0.70f);
+            assertEquals(expected, quantized.findBest(query, 0.70f));
+            assertEquals(expected, reranked.findBest(query, 0.70f));
+        }
+    }
+
+    @Test
+    public void search_rerankGivesExactScores() {
+        Random random = new Random(7);
+        float[][] templates = new float[200][];
+        QuantizedEmbeddingGallery gallery = new QuantizedEmbeddingGallery(DIMENSION, true);
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = HnswFaceIndexTest.randomVector(random);
+            gallery.add(1, i, templates[i]);
+        }
+        float[] query = HnswFaceIndexTest.randomVector(random);
+        int[] indices = new int[5];
+        float[] scores = new float[5];
+        int count = gallery.search(query, 0.0f, 5, indices, scores);
+        assertEquals(5, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(Similarity.calculateSimilitude(query, templates[indices[i]]), scores[i], 1e-5f);
+            if (i > 0) {
+                assertTrue(scores[i - 1] >= scores[i]);
+            }
+        }
+    }
+
+    @Test
+    public void search_respectsThreshold() {
+        for (boolean keepFullPrecision : new boolean[] {false, true}) {
+            QuantizedEmbeddingGallery gallery = new QuantizedEmbeddingGallery(2, keepFullPrecision);
+            gallery.add(1, 1, new float[] {1f, 0f});
+            gallery.add(1, 2, new float[] {0f, 1f});
+            gallery.add(1, 3, new float[] {1f, 1f});
+            int[] indices = new int[3];
+            float[] scores = new float[3];
+            int count = gallery.search(new float[] {1f, 0f}, 0.80f, 3, indices, scores);
+            assertEquals(2, count);
+            assertEquals(0, indices[0]);
+            assertEquals(2, indices[1]);
+            assertEquals(-1, gallery.findBest(new float[] {0f, 0f}, 0.0f));
+        }
+    }
+
+    @Test
+    public void getBytesPerTemplate_isQuarterOfFloat() {
+        assertEquals(DIMENSION + 12, new QuantizedEmbeddingGallery(DIMENSION, false).getBytesPerTemplate());
+        assertEquals(5 * DIMENSION + 12, new QuantizedEmbeddingGallery(DIMENSION, true).getBytesPerTemplate());
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.hmojicag;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ShardedGallerySearchTest {
+    private static final int DIMENSION = 512;
+
+    private static EmbeddingGallery gallery(int size, Random random) {
+        EmbeddingGallery gallery = new EmbeddingGallery(DIMENSION, size);
+        for (int i = 0; i < size; i++) {
+            gallery.add(1, i, HnswFaceIndexTest.randomVector(random));
+        }
+        return gallery;
+    }
+
+    @Test
+    public void search_matchesSequentialGallery() {
+        Random random = new Random(11);
+        EmbeddingGallery gallery = gallery(1000, random);
+        float[][] queries = new float[20][];
+        for (int q = 0; q < queries.length; q++) {
+            queries[q] = q % 2 == 0
+                    ? HnswFaceIndexTest.noisyCopy(rowOf(gallery, random.nextInt(1000)), random, 0.05f)
+                    : HnswFaceIndexTest.randomVector(random);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int blockRows : new int[] {7, 128, 5000}) {
+                ShardedGallerySearch search = new ShardedGallerySearch(gallery, pool, blockRows);
+                int[][] indices = new int[queries.length][5];
+                float[][] scores = new float[queries.length][5];
+                int[] counts = search.search(queries, 0.5f, 5, indices, scores);
+                for (int q = 0; q < queries.length; q++) {
+                    int[] expectedIndices = new int[5];
+                    float[] expectedScores = new float[5];
+                    int expectedCount = gallery.search(queries[q], 0.5f, 5, expectedIndices, expectedScores);
+                    assertEquals(expectedCount, counts[q]);
+                    for (int i = 0; i < expectedCount; i++) {
+                        assertEquals(expectedIndices[i], indices[q][i]);
+                        assertEquals(expectedScores[i], scores[q][i], 0.0f);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void search_singleQueryRespectsThreshold() {
+        EmbeddingGallery gallery = new EmbeddingGallery(2);
+        gallery.add(1, 1, new float[] {1f, 0f});
+        gallery.add(1, 2, new float[] {0f, 1f});
+        gallery.add(1, 3, new float[] {1f, 1f});
+        ShardedGallerySearch search = new ShardedGallerySearch(gallery, ForkJoinPool.commonPool(), 1);
+        int[] indices = new int[3];
+        float[] scores = new float[3];
+
+        assertEquals(2, search.search(new float[] {1f, 0f}, 0.80f, 3, indices, scores));
+        assertEquals(0, indices[0]);
+        assertEquals(2, indices[1]);
+        assertEquals(0, search.search(new float[] {0f, 0f}, 0.0f, 3, indices, scores));
+    }
+
+    @Test
+    public void search_emptyGallery() {
+        ShardedGallerySearch search = new ShardedGallerySearch(new EmbeddingGallery(DIMENSION));
+        assertEquals(0, search.search(new float[DIMENSION], 0.0f, 1, new int[1], new float[1]));
+    }
+
+    private static float[] rowOf(EmbeddingGallery gallery, int row) {
+        float[] vector = new float[DIMENSION];
+        System.arraycopy(gallery.getVectors(), row * DIMENSION, vector, 0, DIMENSION);
+        return vector;
+    }
+}
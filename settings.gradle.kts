@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "djltest"
 include(":app")
+include(":benchmark")